@@ -0,0 +1,127 @@
+package chess;
+
+import java.io.PrintStream;
+import model.*;
+
+/**
+ * Draws the board on an ANSI terminal and, after the first frame, repaints only the squares that
+ * changed since the last one.
+ * <p>
+ * The board stays at the top of the screen, with the prompts and messages underneath. Each square
+ * is two characters, like in <code>Board.printBoard</code>, and the last frame is kept as those
+ * characters. A new frame moves the cursor to each square that is different now, for example
+ * the starting and ending squares of a move, a castling rook or a pawn taken enpassant, and writes
+ * just that square. The frame is put together in one buffer that is reused, and written at once.
+ *
+ * @author  Bryle Tan
+ */
+public class AnsiRenderer {
+
+    /**
+     * escape sequence that starts every ANSI control code.
+     */
+    private static final String ESC = "\u001b[";
+
+    /**
+     * screen line the prompts start on, below the eight ranks and the file letters.
+     */
+    private static final int PROMPT_LINE = 11;
+
+    /**
+     * the two characters of each square in the last frame, indexed by rank * 8 + file.
+     */
+    private final char[] lastFrame = new char[128];
+
+    /**
+     * <code>true</code> once a whole frame has been drawn.
+     */
+    private boolean drawn;
+
+    /**
+     * buffer each frame is put together in.
+     */
+    private final StringBuilder frame = new StringBuilder(1024);
+
+    /**
+     * stream the frames are written to.
+     */
+    private final PrintStream out;
+
+    /**
+     * Constructor for a renderer.
+     *
+     * @param out   stream connected to the terminal.
+     */
+    public AnsiRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Draws the board. The first time, the screen is cleared and the whole board drawn; after that only
+     * the squares that changed are. The prompt area under the board is cleared either way.
+     *
+     * @param board     board to draw.
+     *
+     * @author          Bryle Tan
+     */
+    public void draw(Board board) {
+        frame.setLength(0);
+        if(!drawn) {
+            frame.append(ESC).append("2J");
+            moveTo(9, 1);
+            frame.append(" a  b  c  d  e  f  g  h");
+            for(int rank = 0; rank < 8; rank++) {
+                moveTo(8 - rank, 25);
+                frame.append(' ').append(rank + 1);
+            }
+        }
+
+        for(int rank = 0; rank < 8; rank++) {
+            for(int file = 0; file < 8; file++) {
+                Square square = board.board[file][rank];
+                char first;
+                char second;
+                if(square.getPiece() != null) {
+                    first = square.getColor().charAt(0);
+                    second = square.getType().charAt(0);
+                } else {
+                    first = square.isSquareBlack() ? '#' : ' ';
+                    second = first;
+                }
+
+                int cell = (rank * 8 + file) * 2;
+                if(drawn && lastFrame[cell] == first && lastFrame[cell + 1] == second) {
+                    continue;
+                }
+                lastFrame[cell] = first;
+                lastFrame[cell + 1] = second;
+                moveTo(8 - rank, file * 3 + 1);
+                frame.append(first).append(second);
+            }
+        }
+        drawn = true;
+
+        // the messages of the last move are cleared, and the next prompt goes under the board
+        moveTo(PROMPT_LINE, 1);
+        frame.append(ESC).append('J');
+
+        out.append(frame);
+    }
+
+    /**
+     * Forgets the last frame, so the next <code>draw</code> draws the whole board again.
+     */
+    public void reset() {
+        drawn = false;
+    }
+
+    /**
+     * Adds the code that moves the cursor to a screen position.
+     *
+     * @param line      screen line, 1 for the top line.
+     * @param column    screen column, 1 for the leftmost column.
+     */
+    private void moveTo(int line, int column) {
+        frame.append(ESC).append(line).append(';').append(column).append('H');
+    }
+}
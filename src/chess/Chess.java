@@ -1,7 +1,25 @@
 package chess;
 
 import model.*;
+import engine.Difficulty;
+import engine.Engine;
+import engine.MateSolver;
+import engine.Mcts;
+import engine.Moves;
+import engine.Network;
+import engine.Position;
+import engine.Search;
+import engine.See;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Scanner;
 
 /**
@@ -18,10 +36,38 @@ public class Chess {
     public static Board game;
 
     /**
-     * Scanner object used to take user input.
+     * Scanner object used to take user input, or the moves of a replay.
      */
     public static Scanner scan = new Scanner(System.in);
 
+    /**
+     * stream all of the game's output is written to. In a replay it is buffered and only written out
+     * once the replays are done.
+     */
+    public static PrintStream out = System.out;
+
+    /**
+     * <code>false</code> to leave out the boards, prompts and moves, so a replay only prints what goes
+     * wrong and how each game ends.
+     */
+    private static boolean verbose = true;
+
+    /**
+     * <code>true</code> while the moves are read from a file, so each one is printed after its prompt.
+     */
+    private static boolean replaying;
+
+    /**
+     * buffer the board is drawn into before it is written out, reused for every move.
+     */
+    private static StringBuilder boardText = new StringBuilder(256);
+
+    /**
+     * renderer that repaints only the changed squares of the board, <code>null</code> to print the whole
+     * board after every move.
+     */
+    private static AnsiRenderer renderer;
+
     /**
      * string to store the current user's raw input.
      */
@@ -39,79 +85,245 @@ public class Chess {
     private static boolean isWhiteTurn = true;
 
     /**
-     * Main method, calls the start method.
+     * engine copy of the game, kept in step with <code>game</code> so the computer can search it.
+     */
+    public static Position position;
+
+    /**
+     * legal moves of each position reached since the last capture or pawn move, keyed by
+     * <code>legalMovesKey</code>. Filled in from <code>Move.getNextLegalMoves</code> after every move, so a
+     * move typed in a known position is validated by looking it up.
+     */
+    private static HashMap<Long, HashSet<String>> legalMoves = new HashMap<Long, HashSet<String>>();
+
+    /**
+     * computer player, <code>null</code> if both teams are played by people.
+     */
+    private static Engine computer;
+
+    /**
+     * team the computer plays. <code>true</code> if the computer is white.
+     */
+    private static boolean computerIsWhite;
+
+    /**
+     * time left on each team's clock in milliseconds, white first. Empty if the game isn't timed.
+     */
+    private static long[] clocks = new long[0];
+
+    /**
+     * time added to a team's clock after each of its moves, in milliseconds.
+     */
+    private static long increment;
+
+    /**
+     * Main method, reads the options and calls the start method.
+     * <p>
+     * <code>-cpu white</code> or <code>-cpu black</code> lets the computer play that team, and
+     * <code>-depth n</code> sets how many plies it searches (5 by default). <code>-clock m</code> gives
+     * each team m minutes for the game and <code>-inc s</code> adds s seconds after every move; on a
+     * clock the computer searches as deep as its time allows.
+     * <p>
+     * <code>-replay file</code> plays the moves in the file, one per line, as if they were typed, and can
+     * be given more than once to replay several games; <code>-replay -</code> reads the moves from standard
+     * input. The output of a replay is buffered and written once at the end, and <code>-quiet</code> leaves
+     * out the boards and prompts so only illegal moves and the result of each game are printed.
+     * <code>-ansi</code> keeps the board at the top of an ANSI terminal and only repaints the squares
+     * that change, instead of printing the whole board after every move.
+     * <code>-nnue file</code> makes the computer evaluate with a network file, and <code>-nnue builtin</code>
+     * with the network built from the hand-written piece values.
+     * <code>-mcts n</code> makes the computer play with Monte Carlo tree search, n playouts a move on all
+     * processors, which plays a more casual game than the alpha-beta search.
+     * <code>-level name</code> makes the computer play at a difficulty level: beginner, casual, club,
+     * advanced or expert.
      * 
      * @param args  Standard Input
+     * @throws      IOException if a replay file can't be read.
      * @author      Bryle Tan
      */
-    public static void main(String[] args) {
-        start();
+    public static void main(String[] args) throws IOException {
+        String cpu = null;
+        int depth = -1;
+        ArrayList<String> replays = new ArrayList<String>();
+        boolean ansi = false;
+        String nnue = null;
+        long playouts = 0;
+        Difficulty level = null;
+
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("-quiet")) {
+                verbose = false;
+            } else if(args[i].equals("-ansi")) {
+                ansi = true;
+            } else if(i + 1 >= args.length) {
+                break;
+            } else if(args[i].equals("-cpu")) {
+                cpu = args[++i];
+            } else if(args[i].equals("-depth")) {
+                depth = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("-clock")) {
+                long millis = (long) (Double.parseDouble(args[++i]) * 60000);
+                clocks = new long[] {millis, millis};
+            } else if(args[i].equals("-inc")) {
+                increment = (long) (Double.parseDouble(args[++i]) * 1000);
+            } else if(args[i].equals("-replay")) {
+                replays.add(args[++i]);
+            } else if(args[i].equals("-nnue")) {
+                nnue = args[++i];
+            } else if(args[i].equals("-mcts")) {
+                playouts = Long.parseLong(args[++i]);
+            } else if(args[i].equals("-level")) {
+                level = Difficulty.parse(args[++i]);
+            }
+        }
+        if(depth < 0) {
+            depth = clocks.length > 0 ? Search.MAX_PLY - 1 : 5;
+        }
+
+        if(cpu != null) {
+            computer = new Engine(depth, 64);
+            computerIsWhite = cpu.equals("white");
+            if(nnue != null) {
+                computer.setNetwork(nnue.equals("builtin") ? Network.fromEvaluation() : Network.load(Paths.get(nnue)));
+            }
+            if(playouts > 0) {
+                Mcts mcts = new Mcts(128, Runtime.getRuntime().availableProcessors());
+                mcts.setPlayoutLimit(playouts);
+                computer.setMcts(mcts);
+            }
+            computer.setDifficulty(level);
+        }
+
+        if(replays.isEmpty()) {
+            if(ansi) {
+                renderer = new AnsiRenderer(out);
+            }
+            start();
+            return;
+        }
+
+        // the terminal is only written to once, however many moves are replayed
+        replaying = true;
+        out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        if(ansi) {
+            renderer = new AnsiRenderer(out);
+        }
+        for(String replay : replays) {
+            scan = replay.equals("-") ? new Scanner(System.in) : new Scanner(Paths.get(replay));
+            if(replays.size() > 1) {
+                out.println(replay + ":");
+            }
+            start();
+            out.println();
+        }
+        out.flush();
     }
 
     /**
      * Starts the chess game. Prints the board, takes in user input, and moves the pieces.
      * 
+     * @throws IllegalStateException if the board turns down a move of the computer's, which would
+     *                               otherwise be asked for again forever.
+     * 
      * @author Bryle Tan
      * @author Maanas Pimplikar
      */
     public static void start() {
         // keep scanning input until the game ends with checkmate, one player resigns, or the game draws
         game = new Board();
+        position = Position.fromBoard(game, true);
+        isWhiteTurn = true;
+        inCheck = false;
+        legalMoves.clear();
+        if(renderer != null) {
+            renderer.reset();
+        }
 
-        
         /*
          * The game needs to be running until it ends due to one of the following:
          * 1. a player loses to a checkmate
          * 2. a player resigns
-         * 3. a player draws
+         * 3. a player draws, by agreement, stalemate, threefold repetition or the fifty-move rule
          * 
          * If either of the three conditions are met, set running = false and print the goodbye message
          * (goodbye message is either one player winning or the game drawing)
          */
         boolean running = true;
         while(running) {
-            game.printBoard();
+            printBoard();
             
-            if(inCheck) {
-                System.out.println("Check");
+            if(inCheck && verbose) {
+                out.println("Check");
             }
             boolean valid = false;
+            long turnStart = System.currentTimeMillis();
             while(!valid) {
-                if(isWhiteTurn) {
-                    System.out.print("White's move: ");
+                if(verbose) {
+                    if(isWhiteTurn) {
+                        out.print("White's move" + clockText() + ": ");
+                    }
+                    else {
+                        out.print("Black's move" + clockText() + ": ");
+                    }
+                }
+
+                String rawInput;
+                if(isComputerTurn()) {
+                    rawInput = computerMove();
+                } else {
+                    rawInput = readLine();
+                }
+                if(rawInput == null) {
+                    // a replay, or the input, ran out of moves before the game ended
+                    out.print("Game unfinished");
+                    running = false;
+                    break;
                 }
-                else {
-                    System.out.print("Black's move: ");
+                if(verbose && (replaying || isComputerTurn())) {
+                    out.println(rawInput);
+                }
+                if(rawInput.equals("resign")) {
+                    running = false;
+                    if(isWhiteTurn) {
+                        out.print("Black wins");
+                    }
+                    else {
+                        out.print("White wins");
+                    }
+                    break;
+                }
+                if(rawInput.equals("hint")) {
+                    printHint();
+                    continue;
+                }
+                if(rawInput.matches("mate \\d+")) {
+                    printMate(Integer.parseInt(rawInput.substring(5)));
+                    continue;
                 }
 
-                String rawInput = scan.nextLine();
-                String[] nextInput = rawInput.split(" ");
-                
-                if(rawInput.equals("")) {
-                    System.out.println("illegal move, try again");
+                // the squares and promotion piece are read in one pass, the line is never split
+                int typed = Moves.parse(rawInput);
+                if(typed == Moves.NONE) {
+                    out.println("illegal move, try again");
                     continue;
                 }
 
-                if(nextInput.length == 1) {
-                    if(rawInput.equals("resign")) {
-                        running = false;
-                        if(isWhiteTurn) {
-                            System.out.print("Black wins");
+                if(rawInput.endsWith(" draw?")) {
+                    out.print("draw?: ");
+                    String response;
+                    if(computer != null) {
+                        // the computer takes the draw only if it thinks it's losing
+                        response = computer.getLastScore() < -100 ? "draw" : "no";
+                        out.println(response);
+                    } else {
+                        response = readLine();
+                        if(response == null) {
+                            response = "no";
                         }
-                        else {
-                            System.out.print("White wins");
+                        if(replaying && verbose) {
+                            out.println(response);
                         }
-                        break;
-                    }
-                    if(!rawInput.equals("resign")) {
-                        System.out.println("illegal move, try again");
-                        continue;
                     }
-                }
-
-                if(nextInput.length == 3 && nextInput[2].equals("draw?")) {
-                    System.out.print("draw?: ");
-                    String response = scan.nextLine();
 
                     if(response.equals("draw")) {
                         running = false;
@@ -119,34 +331,45 @@ public class Chess {
                     }
                 }
 
-                // if more information given, then
-                    // its either a promotion or draw
-
-                // positions of the piece
-                String starting = nextInput[0];
-                String ending = nextInput[1];
-
-
-                Move move = new Move(starting, ending, game, isWhiteTurn);
+                Move move = new Move(typed, game, isWhiteTurn);
+                move.setLegalMoves(legalMoves.get(legalMovesKey()));
 
                 String validation = move.validateMove();
     
                 if(validation.equals("invalid")) {
-                    System.out.println("illegal move, try again");
+                    if(isComputerTurn()) {
+                        // the engine would only give the same move again, so asking it again never ends
+                        out.flush();
+                        throw new IllegalStateException("the board turned down the computer's move " + rawInput);
+                    }
+                    out.println("illegal move, try again");
                 } else if(validation.equals("checkmate")) {
-                    Chess.makeMove(rawInput, starting, ending);
-                    System.out.println();
-                    game.printBoard();
+                    Chess.makeMove(typed);
+                    if(verbose) {
+                        out.println();
+                    }
+                    printBoard();
     
-                    System.out.println("Checkmate");
+                    out.println("Checkmate");
                     running = false;
                     if(isWhiteTurn) {
-                        System.out.print("White wins");
+                        out.print("White wins");
                     }
                     else {
-                        System.out.print("Black wins");
+                        out.print("Black wins");
                     }
                     break;
+                } else if(validation.equals("stalemate")) {
+                    Chess.makeMove(typed);
+                    if(verbose) {
+                        out.println();
+                    }
+                    printBoard();
+
+                    out.println("Stalemate");
+                    out.print("Draw");
+                    running = false;
+                    break;
                 } else {
                     if(validation.equals("check")) {
                         inCheck = true;
@@ -155,34 +378,279 @@ public class Chess {
                     }
                         
                     valid = true;
-                    Chess.makeMove(rawInput, starting, ending);
+                    Chess.makeMove(typed);
+                    rememberLegalMoves(move.getNextLegalMoves());
+
+                    if(!chargeClock(System.currentTimeMillis() - turnStart)) {
+                        running = false;
+                        if(isWhiteTurn) {
+                            out.print("Black wins on time");
+                        }
+                        else {
+                            out.print("White wins on time");
+                        }
+                        break;
+                    }
+
+                    String draw = drawReason();
+                    if(draw != null) {
+                        if(verbose) {
+                            out.println();
+                        }
+                        printBoard();
+
+                        out.println(draw);
+                        out.print("Draw");
+                        running = false;
+                        break;
+                    }
+
+                    // think on the other team's time while they decide on their move
+                    if(isComputerTurn()) {
+                        computer.ponder(position);
+                    }
                 }
             }
 
             // change the turn to be the other color's
             isWhiteTurn = !isWhiteTurn;
-            System.out.println();
+            if(verbose) {
+                out.println();
+            }
         }
     }
 
     /**
-     * Moves the piece located at <code>startingPosition</code> to <code>endingPosition</code>.
+     * Draws the board into <code>boardText</code> and writes it out in one go, unless the output is quiet.
+     * With <code>-ansi</code> the renderer repaints the squares that changed instead.
      * 
-     * @param raw               the raw input string of the user, read in the main method.
-     * @param startingPosition  string representating location of the piece to be moved, given in filerank notation.
-     *                          For example, c6.
-     * @param endingPosition    string representing location of where the piece is moving to, given in filerank notation.
+     * @author  Bryle Tan
+     */
+    private static void printBoard() {
+        if(!verbose) {
+            return;
+        }
+        if(renderer != null) {
+            renderer.draw(game);
+            return;
+        }
+        boardText.setLength(0);
+        game.render(boardText);
+        out.print(boardText);
+    }
+
+    /**
+     * Reads the next line of input, a typed move or a line of a replay.
+     * 
+     * @return  the line, <code>null</code> once the input has ended.
      * 
-     * @author                  Maanas Pimplikar
+     * @author  Bryle Tan
      */
-    public static void makeMove(String raw, String startingPosition, String endingPosition) {
-        int startingRow = Move.fileToRow.get(startingPosition.substring(0, 1));
-        int startingCol = Integer.parseInt(startingPosition.substring(1)) - 1;
+    private static String readLine() {
+        return scan.hasNextLine() ? scan.nextLine() : null;
+    }
 
-        int endingRow = Move.fileToRow.get(endingPosition.substring(0, 1));
-        int endingCol = Integer.parseInt(endingPosition.substring(1)) - 1;
+    /**
+     * Checks if it's the computer's turn.
+     * 
+     * @return  <code>true</code> if the computer plays the team whose turn it is.
+     * 
+     * @author  Bryle Tan
+     */
+    private static boolean isComputerTurn() {
+        return computer != null && computerIsWhite == isWhiteTurn;
+    }
+
+    /**
+     * Gets the computer's move in the same format a person would type it.
+     * 
+     * @return  the move, for example "e2 e4", or "resign" if the computer has no move.
+     * 
+     * @author  Bryle Tan
+     */
+    private static String computerMove() {
+        int move;
+        if(clocks.length > 0) {
+            move = computer.bestMove(position, clocks[isWhiteTurn ? 0 : 1], increment, 0);
+        } else {
+            move = computer.bestMove(position);
+        }
+        if(move == Moves.NONE) {
+            return "resign";
+        }
+        return Moves.toInput(move);
+    }
+
+    /**
+     * Keeps the legal moves of the position just reached. A capture or pawn move can't be undone, so the
+     * positions before it can never come back and their moves are forgotten.
+     * 
+     * @param moves     String hashset of the legal moves of the team to move, <code>null</code> if unknown.
+     * 
+     * @author          Bryle Tan
+     */
+    private static void rememberLegalMoves(HashSet<String> moves) {
+        if(position.halfmoveClock == 0) {
+            legalMoves.clear();
+        }
+        if(moves != null) {
+            legalMoves.put(legalMovesKey(), moves);
+        }
+    }
+
+    /**
+     * Gets the key the legal moves of the current position are kept under. The hash of <code>position</code>
+     * only knows of an enpassant capture right after the double step, but the moves are generated from
+     * <code>game</code>, where a pawn keeps its enpassant flag, so the squares of the flagged pawns are mixed in.
+     * 
+     * @return  the key.
+     * 
+     * @author  Bryle Tan
+     */
+    private static long legalMovesKey() {
+        long flagged = 0;
+        for(int row = 0; row < 8; row++) {
+            for(int col = 0; col < 8; col++) {
+                Piece piece = game.board[row][col].getPiece();
+                if(piece != null && piece.enpassant) {
+                    flagged |= 1L << (row * 8 + col);
+                }
+            }
+        }
+        return position.hash ^ flagged * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Checks if the game is drawn by threefold repetition or the fifty-move rule, using the hashes the
+     * engine's copy of the game keeps of every position since the last capture or pawn move.
+     * 
+     * @return  the reason for the draw, or <code>null</code> if the game goes on.
+     * 
+     * @author  Bryle Tan
+     */
+    private static String drawReason() {
+        if(position.repetitions() >= 2) {
+            return "Threefold repetition";
+        }
+        if(position.isFiftyMoveDraw()) {
+            return "Fifty-move rule";
+        }
+        return null;
+    }
+
+    /**
+     * Takes the time a move took off the clock of the team that made it, then adds the increment.
+     * 
+     * @param elapsed   milliseconds the team spent on the move.
+     * @return          <code>false</code> if the team ran out of time, <code>true</code> otherwise
+     *                  or if the game isn't timed.
+     * 
+     * @author          Bryle Tan
+     */
+    private static boolean chargeClock(long elapsed) {
+        if(clocks.length == 0) {
+            return true;
+        }
+        int side = isWhiteTurn ? 0 : 1;
+        clocks[side] -= elapsed;
+        if(clocks[side] <= 0) {
+            return false;
+        }
+        clocks[side] += increment;
+        return true;
+    }
+
+    /**
+     * Gets the time left on the clock of the team whose turn it is, to show in its prompt.
+     * 
+     * @return  the time as " (m:ss)", or an empty string if the game isn't timed.
+     * 
+     * @author  Bryle Tan
+     */
+    private static String clockText() {
+        if(clocks.length == 0) {
+            return "";
+        }
+        long seconds = clocks[isWhiteTurn ? 0 : 1] / 1000;
+        return String.format(" (%d:%02d)", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Prints the pieces of the team whose turn it is that the other team can win material by capturing.
+     * 
+     * @author Bryle Tan
+     */
+    private static void printHint() {
+        Position pos = Position.fromBoard(game, isWhiteTurn);
+        long hanging = See.hangingPieces(pos, isWhiteTurn ? Position.WHITE : Position.BLACK);
+
+        if(hanging == 0) {
+            out.println("no hanging pieces");
+            return;
+        }
+
+        String squares = "";
+        for(; hanging != 0; hanging &= hanging - 1) {
+            squares += " " + Moves.squareName(Long.numberOfTrailingZeros(hanging));
+        }
+        out.println("hanging:" + squares);
+    }
+
+    /**
+     * Prints a forced mate in at most the given number of moves for the team whose turn it is, if there is one.
+     * The solver gives up after a few million nodes, so the game doesn't hang on a hard position.
+     *
+     * @param moves largest number of moves of the mate.
+     *
+     * @author      Bryle Tan
+     */
+    private static void printMate(int moves) {
+        MateSolver solver = new MateSolver(16);
+        solver.setNodeLimit(2000000);
+        Position pos = position.copy();
+        int result = solver.solve(pos, moves);
+
+        if(result == MateSolver.NO_MATE) {
+            out.println("no mate in " + moves);
+            return;
+        } else if(result == MateSolver.UNKNOWN) {
+            out.println("no mate found in " + moves + " within " + solver.getNodes() + " nodes");
+            return;
+        }
+
+        int[] line = solver.getLine();
+        String text = "";
+        for(int move : line) {
+            text += " " + Moves.toSan(pos, move);
+            pos.makeMove(move);
+        }
+        out.println("mate in " + (line.length + 1) / 2 + ":" + text);
+    }
+
+    /**
+     * Moves the piece located at the move's starting square to its ending square.
+     * 
+     * @param move  packed move read by <code>Moves.parse</code>, with the piece a pawn promotes to,
+     *              0 if none was typed.
+     * 
+     * @author      Maanas Pimplikar
+     */
+    public static void makeMove(int move) {
+        int startingRow = Moves.from(move) & 7;
+        int startingCol = Moves.from(move) >> 3;
+
+        int endingRow = Moves.to(move) & 7;
+        int endingCol = Moves.to(move) >> 3;
 
         Piece movingPiece = game.board[startingRow][startingCol].getPiece();
+
+        // keep the engine's copy of the game in step
+        if(position != null) {
+            int from = startingCol * 8 + startingRow;
+            int to = endingCol * 8 + endingRow;
+            int promotion = Moves.promotion(move) == 0 ? Position.QUEEN : Moves.promotion(move);
+            position.makeMove(position.moveFor(from, to, promotion));
+        }
                     
         /*EMPASSANT CODE*/
         if(movingPiece.type.equals("pawn")) {
@@ -236,7 +704,7 @@ public class Chess {
 
         // handling promotion
         if((endingCol == 7 || endingCol == 0) && movingPiece.type.equals("pawn")) {
-            Pawn.promote(raw, game.board, movingPiece.isWhite(), endingRow, endingCol);
+            Pawn.promote(Position.PIECE_LETTERS.charAt(Moves.promotion(move)), game.board, movingPiece.isWhite(), endingRow, endingCol);
         }
     }
-}
\ No newline at end of file
+}
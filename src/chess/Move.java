@@ -2,6 +2,7 @@ package chess;
 import java.util.HashSet;
 import java.util.Map;
 import model.*;
+import engine.Moves;
 
 /**
  * This class handles move objects. Move objects are created when a user enters in a move,
@@ -40,6 +41,20 @@ public class Move {
         7, "h"
     );
 
+    /**
+     * row and col steps of a knight's jumps.
+     */
+    private static final int[][] KNIGHT_JUMPS = {
+        {1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}
+    };
+
+    /**
+     * row and col steps to the eight squares around a square, the first four along the files and ranks.
+     */
+    private static final int[][] KING_STEPS = {
+        {0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+
     /**
      * string that represents the piece's original position.
      * Given in filerank notation.
@@ -52,6 +67,11 @@ public class Move {
      */
     private String endingPosition;
 
+    /**
+     * row and col of the piece's original position, and of its ending position.
+     */
+    private int pieceRow, pieceCol, pieceEndingRow, pieceEndingCol;
+
     /**
      * Board object to keep track of the current state of the game.
      */
@@ -62,6 +82,17 @@ public class Move {
      */
     private boolean whiteTurn;
 
+    /**
+     * legal moves of the team making this move, if already known from an earlier turn.
+     * <code>null</code> if they have to be worked out.
+     */
+    private HashSet<String> legalMoves;
+
+    /**
+     * legal moves of the other team after this move, filled in by <code>validateMove</code>.
+     */
+    private HashSet<String> nextLegalMoves;
+
 
     /**
      * Class constructor for a move object.
@@ -78,6 +109,35 @@ public class Move {
         this.endingPosition = endingPosition;
         this.board = board;
         this.whiteTurn = whiteTurn;
+
+        this.pieceRow = Move.fileToRow.get(originalPosition.substring(0, 1));
+        this.pieceCol = Integer.parseInt(originalPosition.substring(1)) - 1;
+        this.pieceEndingRow = Move.fileToRow.get(endingPosition.substring(0, 1));
+        this.pieceEndingCol = Integer.parseInt(endingPosition.substring(1)) - 1;
+    }
+
+    /**
+     * Class constructor for a move object from a move read by <code>Moves.parse</code>, so the
+     * input doesn't have to be split and parsed again.
+     * 
+     * @param move          packed move, see <code>engine.Moves</code>.
+     * @param board         The board object representing the chess board.
+     * @param whiteTurn     A boolean, <code>true</code> if it's white team's turn, <code>false</code> if it's black team's turn.
+     * 
+     * @author              Bryle Tan
+     */
+    public Move(int move, Board board, boolean whiteTurn) {
+        this.board = board;
+        this.whiteTurn = whiteTurn;
+
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        this.pieceRow = from & 7;
+        this.pieceCol = from >> 3;
+        this.pieceEndingRow = to & 7;
+        this.pieceEndingCol = to >> 3;
+        this.originalPosition = Moves.squareName(from);
+        this.endingPosition = Moves.squareName(to);
     }
 
     // getter methods
@@ -111,6 +171,15 @@ public class Move {
      */
     public boolean isWhiteTurn() { return this.whiteTurn; }
 
+    /**
+     * Getter method to get the other team's legal moves after this move, so the next turn doesn't have
+     * to generate them again.
+     * 
+     * @return  String hashset of the moves, <code>null</code> if the move hasn't been validated, is invalid,
+     *          or is castling, enpassant, a promotion or a pawn's double step.
+     */
+    public HashSet<String> getNextLegalMoves() { return this.nextLegalMoves; }
+
     // setter methods
     /**
      * Sets the turn to the opposite team's turn.
@@ -120,84 +189,206 @@ public class Move {
      */
     public void setWhiteTurn() { this.whiteTurn = !this.whiteTurn; }
 
+    /**
+     * Gives this move the legal moves of its team, as returned by <code>getNextLegalMoves</code> of the move
+     * before, so <code>validateMove</code> only has to look the move up.
+     * 
+     * @param legalMoves    String hashset of the legal moves in the position this move is made in.
+     */
+    public void setLegalMoves(HashSet<String> legalMoves) { this.legalMoves = legalMoves; }
+
     /*
      * Utility methods
      */
 
     /**
-     * Gets all possible moves that can be made for the current team by calling <code>getPossibleMoves</code>.
-     * Gets all impossible moves, which are moves that put, or keep the king in check by calling <code>getImpossibleMoves</code>.
+     * Checks only this object's move. If the team's legal moves were given with <code>setLegalMoves</code>,
+     * the move is looked up in them. Otherwise the moving piece's own moves are generated with the piece's
+     * move method, and the move is made on the board to see if the team's king is attacked afterwards by
+     * calling <code>isSquareAttacked</code>.
+     * <p>
+     * When the move is valid, all of the other team's legal moves are generated to see if it has any left.
+     * They are kept for <code>getNextLegalMoves</code>, so the next turn's move can be looked up in them.
+     * After castling, enpassant, promotion or a pawn's double step they wouldn't be right to keep, so
+     * <code>hasLegalMove</code> only looks for the first one instead.
      * 
      * @return  string "invalid" if this object's move is an impossible move.
      *          string "check" if this object's move put the other team's king in check.
      *          string "checkmate" if this object's move put the other team in checkmate.
+     *          string "stalemate" if this object's move left the other team with no moves, but not in check.
      *          string "valid" if neither check or checkmate, and the move is a valid move.
      * 
      * @author Maanas Pimplikar
      */
     public String validateMove() {
-        HashSet<String> possibleMoves = getPossibleMoves(this.board);
+        int pieceRow = this.pieceRow;
+        int pieceCol = this.pieceCol;
 
-        // after getting possible moves, make the move in an auxillary board, and then check the other team's moves
-        // if the king's position is one of the ending squares in the other team's set, then that move is no longer valid
-        
-        HashSet<String> impossibleMoves = getImpossibleMoves(possibleMoves, this.board);
+        int pieceEndingRow = this.pieceEndingRow;
+        int pieceEndingCol = this.pieceEndingCol;
 
-        // set difference to remove all impossible moves
-        possibleMoves.removeAll(impossibleMoves);
+        Piece movingPiece = this.board.board[pieceRow][pieceCol].getPiece();
+        if(movingPiece == null || movingPiece.isWhite() != this.whiteTurn) {
+            return "invalid";
+        }
 
-        // The current move is valid if the set of possible moves contains this instance of move
-        if(possibleMoves.contains(this.toString())) {
-            
-            // the move is correct, make the move
-            int pieceRow = Move.fileToRow.get(this.originalPosition.substring(0, 1));
-            int pieceCol = Integer.parseInt(this.originalPosition.substring(1)) - 1;
+        if(this.legalMoves != null) {
+            if(!this.legalMoves.contains(this.toString())) {
+                return "invalid";
+            }
+        } else {
+            // only the moving piece's moves are needed to see if the move follows the rules of the piece
+            HashSet<String> pieceMoves = new HashSet<String>();
+            addPieceMoves(pieceRow, pieceCol, pieceMoves);
+            if(!pieceMoves.contains(this.toString())) {
+                return "invalid";
+            }
+        }
 
-            int pieceEndingRow = Move.fileToRow.get(this.endingPosition.substring(0, 1));
-            int pieceEndingCol = Integer.parseInt(this.endingPosition.substring(1)) - 1;
+        // make the move on the board, and make sure it doesn't leave the king attacked
+        this.board.board[pieceRow][pieceCol].setPiece(null);
+        
+        // CAN BE NULL
+        Piece capturedPiece = this.board.board[pieceEndingRow][pieceEndingCol].getPiece();
+        this.board.board[pieceEndingRow][pieceEndingCol].setPiece(movingPiece);
+
+        // enpassant takes the pawn beside the starting square, which may be the one giving check
+        Piece passedPawn = null;
+        if(movingPiece.getType().equals("pawn") && pieceRow != pieceEndingRow && capturedPiece == null) {
+            passedPawn = this.board.board[pieceEndingRow][pieceCol].getPiece();
+            this.board.board[pieceEndingRow][pieceCol].setPiece(null);
+        }
 
-            Piece movingPiece = this.board.board[pieceRow][pieceCol].getPiece();
-            this.board.board[pieceRow][pieceCol].setPiece(null);
-            
-            // CAN BE NULL
-            Piece capturedPiece = this.board.board[pieceEndingRow][pieceEndingCol].getPiece();
-            this.board.board[pieceEndingRow][pieceEndingCol].setPiece(movingPiece);
+        // a move from the legal moves is already known to leave the king safe
+        String kingPosition = this.getKingPosition(this.whiteTurn);
+        boolean kingAttacked = this.legalMoves == null && isSquareAttacked(kingPosition, !this.whiteTurn);
+
+        // CHECK IF YOU CAN NOW ATTACK THE OPPOSITE KING
+        boolean check = !kingAttacked && isSquareAttacked(this.getKingPosition(!this.whiteTurn), this.whiteTurn);
+
+        // CHECKING IF THE OTHER TEAM HAS ANY MOVES LEFT
+        boolean noMoves = false;
+        if(!kingAttacked) {
+            // castling, enpassant and promotion change more of the board than the move made here, and a
+            // pawn's double step only lets it be taken enpassant once the move is made, so the other team's
+            // moves are only right to keep after an ordinary move. Otherwise finding one of them is enough
+            boolean pawn = movingPiece.getType().equals("pawn");
+            boolean special = (pawn && (pieceEndingCol == 0 || pieceEndingCol == 7))
+                || (pawn && pieceRow != pieceEndingRow && capturedPiece == null)
+                || (pawn && Math.abs(pieceEndingCol - pieceCol) == 2)
+                || (movingPiece.getType().equals("king") && Math.abs(pieceEndingRow - pieceRow) == 2);
 
-            // CHECKING IF IT RESULTS IN A CHECKMATE
             this.setWhiteTurn();
-            HashSet<String> nextPossibleMoves = this.getPossibleMoves(this.board);
-            HashSet<String> nextImpossibleMoves = this.getImpossibleMoves(nextPossibleMoves, this.board);
-            nextPossibleMoves.removeAll(nextImpossibleMoves);
-
-            if(nextPossibleMoves.size() == 0) {
-                this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
-                this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
-                return "checkmate";
+            if(special) {
+                noMoves = !this.hasLegalMove();
+            } else {
+                this.nextLegalMoves = this.getLegalMoves();
+                noMoves = this.nextLegalMoves.isEmpty();
             }
             this.setWhiteTurn();
+        }
 
-            // CHECK IF YOU CAN NOW ATTACK THE OPPOSITE KING
-            String otherKingPosition = this.getKingPosition(!this.isWhiteTurn());
-            nextPossibleMoves = this.getPossibleMoves(this.board);
-
-            for(String nextMove : nextPossibleMoves) {
-                String ending = nextMove.substring(6);
-                if(ending.equals(otherKingPosition)) {
-                    // MEANS THEY'RE IN CHECK
-                    this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
-                    this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
-                    return "check";
-                }
+        this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
+        this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
+        if(passedPawn != null) {
+            this.board.board[pieceEndingRow][pieceCol].setPiece(passedPawn);
+        }
+
+        if(kingAttacked) {
+            return "invalid";
+        }
+        // no moves left is only a checkmate if the king is attacked, otherwise it's a stalemate
+        if(noMoves) {
+            return check ? "checkmate" : "stalemate";
+        }
+        if(check) {
+            return "check";
+        }
+        return "valid";
+    }
+
+    /**
+     * Checks if a square is attacked by any piece of a team, by looking outwards from the square
+     * for pawns, knights, kings, and sliding pieces along the lines, instead of generating the team's moves.
+     * 
+     * @param position  string representing the square, in filerank notation.
+     * @param byWhite   <code>true</code> to look for white attackers, <code>false</code> for black attackers.
+     * @return          <code>true</code> if a piece of the team attacks the square.
+     * 
+     * @author          Bryle Tan
+     */
+    public boolean isSquareAttacked(String position, boolean byWhite) {
+        if(position.isEmpty()) {
+            return false;
+        }
+        int row = Move.fileToRow.get(position.substring(0, 1));
+        int col = Integer.parseInt(position.substring(1)) - 1;
+        return isSquareAttacked(row, col, byWhite);
+    }
+
+    /**
+     * Checks if a square is attacked by any piece of a team.
+     * 
+     * @param row       row corresponding to the file of the square.
+     * @param col       col corresponding to the rank of the square.
+     * @param byWhite   <code>true</code> to look for white attackers, <code>false</code> for black attackers.
+     * @return          <code>true</code> if a piece of the team attacks the square.
+     */
+    public boolean isSquareAttacked(int row, int col, boolean byWhite) {
+        // a white pawn attacks the squares diagonally above it, so it attacks from the rank below
+        int pawnCol = byWhite ? col - 1 : col + 1;
+        if(isPieceAt(row - 1, pawnCol, "pawn", byWhite) || isPieceAt(row + 1, pawnCol, "pawn", byWhite)) {
+            return true;
+        }
+
+        for(int[] jump : KNIGHT_JUMPS) {
+            if(isPieceAt(row + jump[0], col + jump[1], "knight", byWhite)) {
+                return true;
             }
+        }
 
-            this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
-            this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
+        for(int[] step : KING_STEPS) {
+            if(isPieceAt(row + step[0], col + step[1], "king", byWhite)) {
+                return true;
+            }
+        }
 
-            return "valid";
+        // the first piece along each line is the only one that can attack along it
+        for(int[] step : KING_STEPS) {
+            boolean diagonal = step[0] != 0 && step[1] != 0;
+            for(int i = row + step[0], j = col + step[1]; i >= 0 && i < 8 && j >= 0 && j < 8; i += step[0], j += step[1]) {
+                Piece piece = this.board.board[i][j].getPiece();
+                if(piece == null) {
+                    continue;
+                }
+                if(piece.isWhite() == byWhite) {
+                    String type = piece.getType();
+                    if(type.equals("queen") || type.equals(diagonal ? "bishop" : "rook")) {
+                        return true;
+                    }
+                }
+                break;
+            }
         }
 
-        // System.out.println("invalid move");
-        return "invalid";
+        return false;
+    }
+
+    /**
+     * Checks if a square holds a certain piece.
+     * 
+     * @param row       row corresponding to the file of the square, may be off the board.
+     * @param col       col corresponding to the rank of the square, may be off the board.
+     * @param type      type of the piece, for example "knight".
+     * @param white     color of the piece.
+     * @return          <code>true</code> if the square is on the board and holds that piece.
+     */
+    private boolean isPieceAt(int row, int col, String type, boolean white) {
+        if(row < 0 || row >= 8 || col < 0 || col >= 8) {
+            return false;
+        }
+        Piece piece = this.board.board[row][col].getPiece();
+        return piece != null && piece.isWhite() == white && piece.getType().equals(type);
     }
 
     /*
@@ -205,96 +396,138 @@ public class Move {
      */
 
     /**
-     * Goes through all the possible moves and checks if they put the team's king in check after being made.
-     * If the king is at check after the move is made, then it's added to a set of all other impossible moves.
+     * Checks if the current team has at least one move that doesn't leave its king in check.
+     * Goes through the team's pieces one at a time, and stops at the first legal move found,
+     * so a position with moves left is usually decided after the first piece.
      * 
-     * @param possibleMoves     <code>HashSet</code> of strings containing all possible moves.
-     * @param board             board object representing the board.
-     * @return                  <code>HashSet</code> of strings containing all impossible moves.
+     * @return  <code>true</code> if the current team has a legal move.
      * 
-     * @author                  Maanas Pimplikar
+     * @author  Bryle Tan
      */
-    private HashSet<String> getImpossibleMoves(HashSet<String> possibleMoves, Board board) {
-        HashSet<String> impossibleMoves = new HashSet<String>();
+    private boolean hasLegalMove() {
+        String kingPosition = getKingPosition(this.isWhiteTurn());
+        HashSet<String> pieceMoves = new HashSet<String>();
 
-        for(String move : possibleMoves) {
-            int pieceRow = Move.fileToRow.get(move.substring(0, 1));
-            int pieceCol = Integer.parseInt(move.substring(1,2)) - 1;
-
-            int pieceEndingRow = Move.fileToRow.get(move.substring(6, 7));
-            int pieceEndingCol = Integer.parseInt(move.substring(7)) - 1;
-
-            Piece movingPiece = this.board.board[pieceRow][pieceCol].getPiece();
-            this.board.board[pieceRow][pieceCol].setPiece(null);
-
-            // CAN BE NULL
-            Piece capturedPiece = this.board.board[pieceEndingRow][pieceEndingCol].getPiece();
-            this.board.board[pieceEndingRow][pieceEndingCol].setPiece(movingPiece);
-            
-            String kingPosition = getKingPosition(this.isWhiteTurn());
-            
-            // temporarily change the turn to the next person's
-            this.setWhiteTurn();
-            HashSet<String> nextPossibleMoves = getPossibleMoves(this.board);
+        for(int file = 0; file < 8; file++) {
+            for(int rank = 0; rank < 8; rank++) {
+                Piece piece = this.board.board[file][rank].getPiece();
+                if(piece == null || piece.isWhite() != this.isWhiteTurn()) {
+                    continue;
+                }
 
-            // string = "** to **"
-            for(String nextMove : nextPossibleMoves) {
-                String tempEnding = nextMove.substring(6);
-                if(tempEnding.equals(kingPosition)) {
-                    impossibleMoves.add(move);
+                pieceMoves.clear();
+                addPieceMoves(file, rank, pieceMoves);
+                for(String move : pieceMoves) {
+                    if(leavesKingSafe(move, kingPosition)) {
+                        return true;
+                    }
                 }
             }
-
-            // revert back the changes
-            this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
-            this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
-            this.setWhiteTurn();
         }
 
-        return impossibleMoves;
+        return false;
     }
 
     /**
-     * Goes through all squares of the board, and gets the set of moves for each piece
-     * that has the same color as this move's team. Calls methods <code>pawnMoves</code>,
-     * <code>rookMoves</code>, <code>bishopMoves</code>, <code>knightMoves</code>, 
-     * <code>queenMoves</code>, <code>kingMoves</code>.
-     * <p>
-     * 
-     * The methods called make sure that the piece color matches this move's color.
+     * Gets the moves of the current team that don't leave its king in check, going through the team's
+     * pieces one at a time and testing each move with <code>leavesKingSafe</code>.
      * 
-     * @param board     board object representing the board.
-     * @return          <code>HashSet</code> of string containing all possible moves.
+     * @return  String hashset of the legal moves, empty on checkmate or stalemate.
      * 
-     * @author          Maanas Pimplikar
+     * @author  Bryle Tan
      */
-    private HashSet<String> getPossibleMoves(Board board) {
-        HashSet<String> possibleMoves = new HashSet<String>();
+    private HashSet<String> getLegalMoves() {
+        String kingPosition = getKingPosition(this.isWhiteTurn());
+        HashSet<String> legalMoves = new HashSet<String>();
+        HashSet<String> pieceMoves = new HashSet<String>();
 
-        // go through all positions of the board
         for(int file = 0; file < 8; file++) {
             for(int rank = 0; rank < 8; rank++) {
-                // check which type of piece is at the square
-                if(board.board[file][rank].getPiece() != null) {
-                    String type = board.board[file][rank].getType();
-                    if(type.equals("P")) {
-                        pawnMoves(file, rank, possibleMoves);
-                    } else if(type.equals("R")) {
-                        rookMoves(file, rank, possibleMoves);
-                    } else if(type.equals("B")) {
-                        bishopMoves(file, rank, possibleMoves);
-                    } else if(type.equals("N")) {
-                        knightMoves(file, rank, possibleMoves);
-                    } else if(type.equals("Q")) {
-                        queenMoves(file, rank, possibleMoves);
-                    } else if(type.equals("K")) {
-                        kingMoves(file, rank, possibleMoves);
+                Piece piece = this.board.board[file][rank].getPiece();
+                if(piece == null || piece.isWhite() != this.isWhiteTurn()) {
+                    continue;
+                }
+
+                pieceMoves.clear();
+                addPieceMoves(file, rank, pieceMoves);
+                for(String move : pieceMoves) {
+                    if(leavesKingSafe(move, kingPosition)) {
+                        legalMoves.add(move);
                     }
                 }
             }
         }
 
-        return possibleMoves;
+        return legalMoves;
+    }
+
+    /**
+     * Makes a move of the current team on the board, checks if its king is attacked, and takes the move back.
+     * 
+     * @param move          string representing the move, for example "e2 to e4".
+     * @param kingPosition  position of the team's king before the move, in filerank notation.
+     * @return              <code>true</code> if the king isn't attacked after the move.
+     */
+    private boolean leavesKingSafe(String move, String kingPosition) {
+        int pieceRow = Move.fileToRow.get(move.substring(0, 1));
+        int pieceCol = Integer.parseInt(move.substring(1,2)) - 1;
+
+        int pieceEndingRow = Move.fileToRow.get(move.substring(6, 7));
+        int pieceEndingCol = Integer.parseInt(move.substring(7)) - 1;
+
+        Piece movingPiece = this.board.board[pieceRow][pieceCol].getPiece();
+        this.board.board[pieceRow][pieceCol].setPiece(null);
+
+        // CAN BE NULL
+        Piece capturedPiece = this.board.board[pieceEndingRow][pieceEndingCol].getPiece();
+        this.board.board[pieceEndingRow][pieceEndingCol].setPiece(movingPiece);
+
+        // enpassant takes the pawn beside the starting square
+        Piece passedPawn = null;
+        if(movingPiece.getType().equals("pawn") && pieceRow != pieceEndingRow && capturedPiece == null) {
+            passedPawn = this.board.board[pieceEndingRow][pieceCol].getPiece();
+            this.board.board[pieceEndingRow][pieceCol].setPiece(null);
+        }
+
+        // the king only changes square if it's the piece moving
+        if(move.startsWith(kingPosition)) {
+            kingPosition = move.substring(6);
+        }
+        boolean safe = !isSquareAttacked(kingPosition, !this.isWhiteTurn());
+
+        // revert back the changes
+        this.board.board[pieceRow][pieceCol].setPiece(movingPiece);
+        this.board.board[pieceEndingRow][pieceEndingCol].setPiece(capturedPiece);
+        if(passedPawn != null) {
+            this.board.board[pieceEndingRow][pieceCol].setPiece(passedPawn);
+        }
+
+        return safe;
+    }
+
+    /**
+     * Adds the moves of the piece at <code>row</code>, <code>col</code> by calling the move method for its type.
+     * 
+     * @param row       row corresponding to the file of the piece.
+     * @param col       col corresponding to the rank of the piece.
+     * @param moves     String hashset the moves are added to.
+     */
+    private void addPieceMoves(int row, int col, HashSet<String> moves) {
+        // check which type of piece is at the square
+        String type = this.board.board[row][col].getType();
+        if(type.equals("P")) {
+            pawnMoves(row, col, moves);
+        } else if(type.equals("R")) {
+            rookMoves(row, col, moves);
+        } else if(type.equals("B")) {
+            bishopMoves(row, col, moves);
+        } else if(type.equals("N")) {
+            knightMoves(row, col, moves);
+        } else if(type.equals("Q")) {
+            queenMoves(row, col, moves);
+        } else if(type.equals("K")) {
+            kingMoves(row, col, moves);
+        }
     }
 
     /**
@@ -1105,38 +1338,49 @@ public class Move {
             }
         }
 
-        //castling logic
-        Piece king = this.board.board[row][col].getPiece();
-        
-        //white king
-        Square rightWhiteRook = this.board.board[7][0];
-        Square leftWhiteRook = this.board.board[0][0];
-
-        //black king
-        Square rightBlackRook = this.board.board[7][7];
-        Square leftBlackRook = this.board.board[0][7];
-
-        //if the bottom right corner is a white rook and has not moved, and there are no pieces in between them
-        if(!Chess.inCheck && !king.hasMoved && rightWhiteRook.getPiece() != null && rightWhiteRook.getPiece().isWhite && rightWhiteRook.getPiece().type.equals("rook") && !rightWhiteRook.getPiece().hasMoved && this.board.board[5][0].getPiece() == null && this.board.board[6][0].getPiece() == null) {
-            
+        //castling logic, the rook is on the far right or far left of the king's rank
+        if(canCastle(row, col, 7)) {
             String ending = Move.rowToFile.get(row + 2) + (col + 1);
             moves.add(position + " to " + ending);
         }
-        //top right corner
-        if(!Chess.inCheck && !king.hasMoved && rightBlackRook.getPiece() != null && !rightBlackRook.getPiece().isWhite && rightBlackRook.getPiece().type.equals("rook") && !rightBlackRook.getPiece().hasMoved && this.board.board[5][7].getPiece() == null && this.board.board[6][7].getPiece() == null) {
-            String ending = Move.rowToFile.get(row + 2) + (col + 1);
-            moves.add(position + " to " + ending);
-        }
-        //bottom left corner
-        if(!Chess.inCheck && !king.hasMoved && leftWhiteRook.getPiece() != null && leftWhiteRook.getPiece().isWhite && leftWhiteRook.getPiece().type.equals("rook") && !leftWhiteRook.getPiece().hasMoved && this.board.board[1][0].getPiece() == null && this.board.board[2][0].getPiece() == null && this.board.board[3][0].getPiece() == null) {
+        if(canCastle(row, col, 0)) {
             String ending = Move.rowToFile.get(row - 2) + (col + 1);
             moves.add(position + " to " + ending);
         }
-        //top left corner
-        if(!Chess.inCheck && !king.hasMoved && leftBlackRook.getPiece() != null && !leftBlackRook.getPiece().isWhite && leftBlackRook.getPiece().type.equals("rook") && !leftBlackRook.getPiece().hasMoved && this.board.board[1][7].getPiece() == null && this.board.board[2][7].getPiece() == null && this.board.board[3][7].getPiece() == null) {
-        String ending = Move.rowToFile.get(row - 2) + (col + 1);
-            moves.add(position + " to " + ending);
+    }
+
+    /**
+     * Checks if the king at <code>row</code>, <code>col</code> can castle with the rook at <code>rookRow</code>:
+     * neither has moved, the squares between them are empty, and the king isn't in check,
+     * doesn't pass over an attacked square and doesn't end up on one.
+     * 
+     * @param row       row corressponding to the file of the king.
+     * @param col       col corresponding to the rank of the king.
+     * @param rookRow   row of the rook, 7 for kingside or 0 for queenside.
+     * @return          <code>true</code> if the king can castle.
+     * 
+     * @author          Bryle Tan
+     */
+    private boolean canCastle(int row, int col, int rookRow) {
+        Piece king = this.board.board[row][col].getPiece();
+        Piece rook = this.board.board[rookRow][col].getPiece();
+        if(king.hasMoved || rook == null || !rook.type.equals("rook") || rook.isWhite != king.isWhite || rook.hasMoved) {
+            return false;
+        }
+
+        int step = rookRow > row ? 1 : -1;
+        for(int i = row + step; i != rookRow; i += step) {
+            if(this.board.board[i][col].getPiece() != null) {
+                return false;
+            }
+        }
+
+        for(int i = 0; i <= 2; i++) {
+            if(isSquareAttacked(row + i * step, col, !king.isWhite)) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
@@ -0,0 +1,118 @@
+package engine;
+
+/**
+ * First layer of a <code>Network</code> for both sides of a position, kept up to date as pieces are
+ * added, removed and moved, so evaluating a position only takes the output layer.
+ * <p>
+ * <code>Position</code> calls <code>push</code> when a move is made, which copies the neurons to the
+ * next level of a stack, and then updates them for each piece the move changes. Unmaking a move only
+ * calls <code>pop</code>. The stack is a ring of <code>DEPTH</code> levels, deeper than any search,
+ * since a game can make many more moves than it unmakes.
+ *
+ * @author  Bryle Tan
+ */
+public class Accumulator {
+
+    /**
+     * number of levels of the stack, a power of two.
+     */
+    private static final int DEPTH = 256;
+
+    /**
+     * network the neurons belong to.
+     */
+    final Network network;
+
+    /**
+     * neurons of every level: white's <code>HIDDEN</code> neurons, then black's.
+     */
+    private final short[] values = new short[DEPTH * 2 * Network.HIDDEN];
+
+    /**
+     * index of the current level.
+     */
+    private int level;
+
+    /**
+     * Constructor for the accumulator of a position.
+     *
+     * @param network   network to evaluate with.
+     * @param pos       position whose pieces are added up.
+     */
+    public Accumulator(Network network, Position pos) {
+        this.network = network;
+        refresh(pos);
+    }
+
+    /**
+     * Works out the neurons of the current level from scratch, from the biases and every piece.
+     *
+     * @param pos   position whose pieces are added up.
+     */
+    public void refresh(Position pos) {
+        int white = offset(Position.WHITE);
+        int black = offset(Position.BLACK);
+        System.arraycopy(network.featureBias, 0, values, white, Network.HIDDEN);
+        System.arraycopy(network.featureBias, 0, values, black, Network.HIDDEN);
+        for(long bb = pos.occupied; bb != 0; bb &= bb - 1) {
+            int sq = Long.numberOfTrailingZeros(bb);
+            add(pos.board[sq], sq);
+        }
+    }
+
+    /**
+     * Starts the level of a new move with a copy of the current neurons.
+     */
+    public void push() {
+        int from = offset(Position.WHITE);
+        level = (level + 1) & (DEPTH - 1);
+        System.arraycopy(values, from, values, offset(Position.WHITE), 2 * Network.HIDDEN);
+    }
+
+    /**
+     * Goes back to the neurons before the last move.
+     */
+    public void pop() {
+        level = (level - 1) & (DEPTH - 1);
+    }
+
+    /**
+     * Adds a piece to the neurons of both sides.
+     *
+     * @param piece piece code.
+     * @param sq    square of the piece.
+     */
+    public void add(int piece, int sq) {
+        network.update(values, offset(Position.WHITE), Network.feature(Position.WHITE, piece, sq), 1);
+        network.update(values, offset(Position.BLACK), Network.feature(Position.BLACK, piece, sq), 1);
+    }
+
+    /**
+     * Takes a piece away from the neurons of both sides.
+     *
+     * @param piece piece code.
+     * @param sq    square of the piece.
+     */
+    public void remove(int piece, int sq) {
+        network.update(values, offset(Position.WHITE), Network.feature(Position.WHITE, piece, sq), -1);
+        network.update(values, offset(Position.BLACK), Network.feature(Position.BLACK, piece, sq), -1);
+    }
+
+    /**
+     * Scores the current level.
+     *
+     * @param sideToMove    side whose neurons are weighed first.
+     * @return              score in centipawns for the side to move.
+     */
+    public int evaluate(int sideToMove) {
+        return network.evaluate(values, offset(sideToMove), offset(sideToMove ^ 1));
+    }
+
+    /**
+     * @param side  side the neurons belong to.
+     * @return      index of the side's first neuron on the current level.
+     */
+    private int offset(int side) {
+        return (level * 2 + side) * Network.HIDDEN;
+    }
+}
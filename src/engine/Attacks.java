@@ -0,0 +1,181 @@
+package engine;
+
+/**
+ * Precomputed attack tables for the engine. All tables work on <code>long</code> bitboards,
+ * where bit 0 is a1, bit 7 is h1 and bit 63 is h8.
+ * <p>
+ * Sliding attacks are found with the classical ray approach: the ray in a direction is cut
+ * off after the first blocker, which is found with a single bit scan.
+ *
+ * @author  Bryle Tan
+ */
+public final class Attacks {
+
+    /**
+     * knight attacks from every square.
+     */
+    public static final long[] KNIGHT = new long[64];
+
+    /**
+     * king attacks from every square.
+     */
+    public static final long[] KING = new long[64];
+
+    /**
+     * pawn capture targets from every square, indexed by color then square.
+     */
+    public static final long[][] PAWN = new long[2][64];
+
+    /**
+     * squares reachable in each of the eight directions on an empty board, indexed by direction then square.
+     * Directions are north, north-east, east, south-east, south, south-west, west and north-west.
+     */
+    private static final long[][] RAYS = new long[8][64];
+
+    /**
+     * squares strictly between two squares on the same rank, file or diagonal, indexed by both squares.
+     * Empty if the squares aren't lined up.
+     */
+    public static final long[][] BETWEEN = new long[64][64];
+
+    /**
+     * whole rank, file or diagonal through two squares, including both, indexed by both squares.
+     * Empty if the squares aren't lined up.
+     */
+    public static final long[][] LINE = new long[64][64];
+
+    /**
+     * file step of each direction.
+     */
+    private static final int[] DIRECTION_FILE = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    /**
+     * rank step of each direction.
+     */
+    private static final int[] DIRECTION_RANK = {1, 1, 0, -1, -1, -1, 0, 1};
+
+    static {
+        int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+
+        for(int sq = 0; sq < 64; sq++) {
+            int file = sq & 7;
+            int rank = sq >> 3;
+
+            for(int[] step : knightSteps) {
+                KNIGHT[sq] |= bit(file + step[0], rank + step[1]);
+            }
+
+            for(int dir = 0; dir < 8; dir++) {
+                KING[sq] |= bit(file + DIRECTION_FILE[dir], rank + DIRECTION_RANK[dir]);
+
+                for(int f = file + DIRECTION_FILE[dir], r = rank + DIRECTION_RANK[dir]; f >= 0 && f < 8 && r >= 0 && r < 8; f += DIRECTION_FILE[dir], r += DIRECTION_RANK[dir]) {
+                    RAYS[dir][sq] |= 1L << (r * 8 + f);
+                }
+            }
+
+            PAWN[Position.WHITE][sq] = bit(file - 1, rank + 1) | bit(file + 1, rank + 1);
+            PAWN[Position.BLACK][sq] = bit(file - 1, rank - 1) | bit(file + 1, rank - 1);
+        }
+
+        // needs every ray, so it is filled in once all squares are done
+        for(int sq = 0; sq < 64; sq++) {
+            for(int dir = 0; dir < 8; dir++) {
+                int opposite = (dir + 4) & 7;
+                for(long ray = RAYS[dir][sq]; ray != 0; ray &= ray - 1) {
+                    int to = Long.numberOfTrailingZeros(ray);
+                    BETWEEN[sq][to] = RAYS[dir][sq] & RAYS[opposite][to];
+                    LINE[sq][to] = RAYS[dir][sq] | RAYS[opposite][sq] | (1L << sq);
+                }
+            }
+        }
+    }
+
+    /**
+     * Not instantiable, all lookups are static.
+     */
+    private Attacks() {
+    }
+
+    /**
+     * Gets the bitboard for a single square, or an empty bitboard if the square is off the board.
+     *
+     * @param file  file of the square, 0 for the a file.
+     * @param rank  rank of the square, 0 for the first rank.
+     * @return      bitboard with only that square set.
+     */
+    private static long bit(int file, int rank) {
+        if(file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return 0L;
+        }
+        return 1L << (rank * 8 + file);
+    }
+
+    /**
+     * Gets the squares attacked along a ray that runs towards higher square indexes.
+     *
+     * @param dir       direction of the ray.
+     * @param sq        starting square.
+     * @param occupied  bitboard of all occupied squares.
+     * @return          attacked squares, including the first blocker.
+     */
+    private static long positiveRay(int dir, int sq, long occupied) {
+        long attacks = RAYS[dir][sq];
+        long blockers = attacks & occupied;
+        if(blockers != 0) {
+            attacks ^= RAYS[dir][Long.numberOfTrailingZeros(blockers)];
+        }
+        return attacks;
+    }
+
+    /**
+     * Gets the squares attacked along a ray that runs towards lower square indexes.
+     *
+     * @param dir       direction of the ray.
+     * @param sq        starting square.
+     * @param occupied  bitboard of all occupied squares.
+     * @return          attacked squares, including the first blocker.
+     */
+    private static long negativeRay(int dir, int sq, long occupied) {
+        long attacks = RAYS[dir][sq];
+        long blockers = attacks & occupied;
+        if(blockers != 0) {
+            attacks ^= RAYS[dir][63 - Long.numberOfLeadingZeros(blockers)];
+        }
+        return attacks;
+    }
+
+    /**
+     * Gets the squares a rook on <code>sq</code> attacks.
+     *
+     * @param sq        square of the rook.
+     * @param occupied  bitboard of all occupied squares.
+     * @return          bitboard of attacked squares.
+     */
+    public static long rook(int sq, long occupied) {
+        return positiveRay(0, sq, occupied) | positiveRay(2, sq, occupied)
+            | negativeRay(4, sq, occupied) | negativeRay(6, sq, occupied);
+    }
+
+    /**
+     * Gets the squares a bishop on <code>sq</code> attacks.
+     *
+     * @param sq        square of the bishop.
+     * @param occupied  bitboard of all occupied squares.
+     * @return          bitboard of attacked squares.
+     */
+    public static long bishop(int sq, long occupied) {
+        return positiveRay(1, sq, occupied) | positiveRay(7, sq, occupied)
+            | negativeRay(3, sq, occupied) | negativeRay(5, sq, occupied);
+    }
+
+    /**
+     * Gets the squares a queen on <code>sq</code> attacks.
+     *
+     * @param sq        square of the queen.
+     * @param occupied  bitboard of all occupied squares.
+     * @return          bitboard of attacked squares.
+     */
+    public static long queen(int sq, long occupied) {
+        return rook(sq, occupied) | bishop(sq, occupied);
+    }
+}
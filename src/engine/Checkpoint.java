@@ -0,0 +1,18 @@
+package engine;
+
+/**
+ * Asked by a <code>Search</code> at regular node counts whether to give up the thread, so one worker
+ * can share its time between the searches of several games.
+ *
+ * @author  Bryle Tan
+ */
+public interface Checkpoint {
+
+    /**
+     * Called on the searching thread every checkpoint interval.
+     *
+     * @param nodes nodes visited so far by the search.
+     * @return      <code>true</code> to stop the search, keeping the iterations it completed.
+     */
+    boolean shouldYield(long nodes);
+}
@@ -0,0 +1,278 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Difficulty level of the computer player, cheap enough to serve many casual games at once.
+ * <p>
+ * Every move of a level is searched with a hard node budget and a hard time budget, whichever runs
+ * out first, so no move costs more than the level allows however complicated the position. Instead of
+ * always playing the best move, the lower levels choose among the few best: the search scores every
+ * root move within the level's margin of the best exactly, and one of the top moves is picked at
+ * random, the closer to the best the likelier. The margin keeps blunders out, and a margin of 0 or a
+ * single candidate plays the best move.
+ * <p>
+ * A level doesn't own a search, so one <code>Search</code> per worker thread can play the moves of
+ * any number of games. The CPU time, nodes and number of moves played are added up per level, from
+ * every thread, to work out how many games a core can serve at each level.
+ *
+ * @author  Bryle Tan
+ */
+public class Difficulty {
+
+    /**
+     * plays almost at random among reasonable moves, looking a couple of plies ahead.
+     */
+    public static final Difficulty BEGINNER = new Difficulty("beginner", 300, 10, 6, 250);
+
+    /**
+     * a relaxed opponent that misses tactics.
+     */
+    public static final Difficulty CASUAL = new Difficulty("casual", 1500, 20, 4, 120);
+
+    /**
+     * a club player, who usually finds one of the best moves.
+     */
+    public static final Difficulty CLUB = new Difficulty("club", 8000, 50, 3, 50);
+
+    /**
+     * a strong player with the odd inaccuracy.
+     */
+    public static final Difficulty ADVANCED = new Difficulty("advanced", 40000, 150, 2, 20);
+
+    /**
+     * always the best move the search finds in its budget.
+     */
+    public static final Difficulty EXPERT = new Difficulty("expert", 200000, 500, 1, 0);
+
+    /**
+     * every level, from the weakest.
+     */
+    public static final Difficulty[] LEVELS = {BEGINNER, CASUAL, CLUB, ADVANCED, EXPERT};
+
+    /**
+     * used to measure the CPU time of a move.
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * name of the level, as read by <code>parse</code>.
+     */
+    public final String name;
+
+    /**
+     * largest number of nodes searched per move.
+     */
+    public final long nodes;
+
+    /**
+     * longest time searched per move, in milliseconds.
+     */
+    public final long millis;
+
+    /**
+     * number of the best moves chosen among.
+     */
+    public final int candidates;
+
+    /**
+     * how far below the best score, in centipawns, a move can be and still be chosen.
+     */
+    public final int margin;
+
+    /**
+     * number of moves played at this level.
+     */
+    private final AtomicLong moves = new AtomicLong();
+
+    /**
+     * CPU time of those moves, in nanoseconds.
+     */
+    private final AtomicLong cpuNanos = new AtomicLong();
+
+    /**
+     * CPU time of the most expensive move, in nanoseconds.
+     */
+    private final AtomicLong maxCpuNanos = new AtomicLong();
+
+    /**
+     * nodes searched for those moves.
+     */
+    private final AtomicLong totalNodes = new AtomicLong();
+
+    /**
+     * Constructor for a level.
+     *
+     * @param name          name of the level.
+     * @param nodes         largest number of nodes per move.
+     * @param millis        longest time per move, in milliseconds.
+     * @param candidates    number of the best moves chosen among, 1 to always play the best.
+     * @param margin        how far below the best score a chosen move can be, in centipawns.
+     */
+    public Difficulty(String name, long nodes, long millis, int candidates, int margin) {
+        this.name = name;
+        this.nodes = nodes;
+        this.millis = millis;
+        this.candidates = Math.max(1, candidates);
+        this.margin = candidates > 1 ? Math.max(0, margin) : 0;
+    }
+
+    /**
+     * Chooses a move at this level, and adds its cost to the level's usage.
+     *
+     * @param search    search to use, which no other thread may be using. Its node limit and root
+     *                  margin are changed.
+     * @param pos       position with the computer to move. It is left unchanged.
+     * @param timer     time manager to use for the time budget.
+     * @param random    source of the move choice.
+     * @return          the chosen move, <code>Moves.NONE</code> if there are no legal moves.
+     *
+     * @author          Bryle Tan
+     */
+    public int chooseMove(Search search, Position pos, TimeManager timer, Random random) {
+        long cpuStart = cpuTime();
+        search.setNodeLimit(nodes);
+        search.setRootMargin(margin);
+        timer.startFixed(millis);
+        int best = search.think(pos, Search.MAX_PLY - 1, timer);
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] scores = new int[MoveGenerator.MAX_MOVES];
+        int move = choose(best, moves, scores, search.getCandidates(moves, scores), random);
+        addUsage(cpuTime() - cpuStart, search.getNodes());
+        return move;
+    }
+
+    /**
+     * Chooses the move to play among the best moves of a finished search.
+     *
+     * @param best      best move of the search, <code>Moves.NONE</code> if there are no legal moves.
+     * @param moves     moves scored within this level's margin, best first, from <code>Search.getCandidates</code>.
+     * @param scores    their scores.
+     * @param count     number of those moves.
+     * @param random    source of the move choice.
+     * @return          the chosen move.
+     */
+    int choose(int best, int[] moves, int[] scores, int count, Random random) {
+        if(candidates == 1 || best == Moves.NONE || count == 0) {
+            return best;
+        }
+        return pick(moves, scores, Math.min(count, candidates), random);
+    }
+
+    /**
+     * Adds the cost of one move to the level's usage.
+     *
+     * @param cpu   CPU time of the move, in nanoseconds.
+     * @param nodes nodes searched for the move.
+     */
+    void addUsage(long cpu, long nodes) {
+        moves.incrementAndGet();
+        cpuNanos.addAndGet(cpu);
+        maxCpuNanos.accumulateAndGet(cpu, Math::max);
+        totalNodes.addAndGet(nodes);
+    }
+
+    /**
+     * Picks one of the candidate moves, each weighted by how far it is inside the margin, so the
+     * best is the likeliest and one right at the margin is hardly ever played.
+     *
+     * @param moves     candidate moves, best first.
+     * @param scores    their scores.
+     * @param count     number of candidates.
+     * @param random    source of the choice.
+     * @return          the move.
+     */
+    private int pick(int[] moves, int[] scores, int count, Random random) {
+        int[] weights = new int[count];
+        int total = 0;
+        for(int i = 0; i < count; i++) {
+            weights[i] = margin + 1 - (scores[0] - scores[i]);
+            total += weights[i];
+        }
+        int r = random.nextInt(total);
+        for(int i = 0; i < count; i++) {
+            r -= weights[i];
+            if(r < 0) {
+                return moves[i];
+            }
+        }
+        return moves[0];
+    }
+
+    /**
+     * @return  CPU time used by the current thread, or the wall clock where that can't be measured,
+     *          in nanoseconds.
+     */
+    static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Finds a level by name.
+     *
+     * @param name  name of one of the <code>LEVELS</code>.
+     * @return      the level.
+     * @throws      IllegalArgumentException on an unknown name.
+     */
+    public static Difficulty parse(String name) {
+        for(Difficulty level : LEVELS) {
+            if(level.name.equals(name)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("unknown difficulty level: " + name);
+    }
+
+    /**
+     * @return  number of moves played at this level.
+     */
+    public long getMoves() { return moves.get(); }
+
+    /**
+     * @return  average CPU time of a move at this level in microseconds, 0 before any move.
+     */
+    public long getAverageCpuMicros() {
+        long count = moves.get();
+        return count == 0 ? 0 : cpuNanos.get() / count / 1000;
+    }
+
+    /**
+     * @return  CPU time of the most expensive move at this level, in microseconds.
+     */
+    public long getMaxCpuMicros() { return maxCpuNanos.get() / 1000; }
+
+    /**
+     * @return  average nodes searched per move at this level, 0 before any move.
+     */
+    public long getAverageNodes() {
+        long count = moves.get();
+        return count == 0 ? 0 : totalNodes.get() / count;
+    }
+
+    /**
+     * Works out how many games one core can keep up with at this level, from the CPU time of the
+     * moves played so far.
+     *
+     * @param secondsPerMove    average time between two moves of the computer in one game, mostly the
+     *                          person thinking.
+     * @return                  the number of games, 0 before any move.
+     */
+    public long gamesPerCore(double secondsPerMove) {
+        long micros = getAverageCpuMicros();
+        return micros == 0 ? 0 : (long) (secondsPerMove * 1_000_000 / micros);
+    }
+
+    /**
+     * Forgets the usage added up so far.
+     */
+    public void resetUsage() {
+        moves.set(0);
+        cpuNanos.set(0);
+        maxCpuNanos.set(0);
+        totalNodes.set(0);
+    }
+}
@@ -0,0 +1,259 @@
+package engine;
+
+import java.util.Random;
+
+/**
+ * Computer player. Wraps a <code>Search</code> and its transposition table for the length of a game,
+ * and keeps searching in the background while the opponent is thinking (pondering).
+ * <p>
+ * After the computer moves, the opponent's most likely reply is taken from the transposition table
+ * and the position after it is searched on a background thread. If there is no likely reply, the
+ * position with the opponent to move is searched instead, which fills the table for every reply.
+ * When the opponent's move comes in, the background search is stopped. If the opponent played the
+ * predicted reply and the background search already reached the wanted depth, its move is played
+ * straight away; otherwise the search starts over with the warmed table.
+ * <p>
+ * On a clock, the search runs until the <code>TimeManager</code> stops it, with the depth as a cap.
+ * <p>
+ * With <code>setMcts</code> the computer plays with Monte Carlo tree search instead, which keeps its
+ * tree between moves in place of pondering. With <code>setDifficulty</code> it plays at a
+ * difficulty level, within the level's budget and without pondering.
+ *
+ * @author  Bryle Tan
+ */
+public class Engine {
+
+    /**
+     * transposition table kept for the whole game.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * search used for both thinking and pondering, never by two threads at once.
+     */
+    private final Search search;
+
+    /**
+     * depth the computer searches to on its own turn.
+     */
+    private final int depth;
+
+    /**
+     * time limits of the computer's moves on a clock.
+     */
+    private final TimeManager timer = new TimeManager();
+
+    /**
+     * background thread running the ponder search, <code>null</code> if not pondering.
+     */
+    private Thread ponderThread;
+
+    /**
+     * hash of the position being pondered on, with the computer to move.
+     * 0 if the whole set of opponent moves is being pondered on instead.
+     */
+    private long ponderHash;
+
+    /**
+     * number of turns where the ponder result was played without searching again.
+     */
+    private int ponderHits;
+
+    /**
+     * score of the computer's last move, in centipawns for the computer.
+     */
+    private int lastScore;
+
+    /**
+     * tree search played with instead of <code>search</code>, <code>null</code> to use the search.
+     */
+    private Mcts mcts;
+
+    /**
+     * level the computer plays at, <code>null</code> to play at full strength.
+     */
+    private Difficulty difficulty;
+
+    /**
+     * source of the move choices of a difficulty level.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Constructor for a computer player.
+     *
+     * @param depth         depth to search to on the computer's turn, the largest depth on a clock.
+     * @param tableMegabytes size of the transposition table.
+     */
+    public Engine(int depth, int tableMegabytes) {
+        this.depth = depth;
+        this.table = new TranspositionTable(tableMegabytes);
+        this.search = new Search(table);
+    }
+
+    /**
+     * Finds the computer's move. Stops pondering first, and reuses the ponder result if it was
+     * searched on this position.
+     *
+     * @param pos   position with the computer to move. It is not changed.
+     * @return      the best move, <code>Moves.NONE</code> if there are no legal moves.
+     *
+     * @author      Bryle Tan
+     */
+    public int bestMove(Position pos) {
+        return think(pos, null);
+    }
+
+    /**
+     * Finds the computer's move on a clock. Stops pondering first, and reuses the ponder result if it
+     * was searched on this position.
+     *
+     * @param pos       position with the computer to move. It is not changed.
+     * @param remaining time left on the computer's clock, in milliseconds.
+     * @param increment time added to the clock after each move, in milliseconds.
+     * @param movesToGo moves until the next time control, 0 if the clock has to last the whole game.
+     * @return          the best move, <code>Moves.NONE</code> if there are no legal moves.
+     *
+     * @author          Bryle Tan
+     */
+    public int bestMove(Position pos, long remaining, long increment, int movesToGo) {
+        timer.start(remaining, increment, movesToGo);
+        return think(pos, timer);
+    }
+
+    /**
+     * Plays the ponder result or runs the search for the computer's move.
+     *
+     * @param pos   position with the computer to move.
+     * @param limit time limits, <code>null</code> to search to the full depth.
+     * @return      the best move, <code>Moves.NONE</code> if there are no legal moves.
+     */
+    private int think(Position pos, TimeManager limit) {
+        stopPondering();
+
+        if(difficulty != null) {
+            int move = difficulty.chooseMove(search, pos.copy(), timer, random);
+            lastScore = search.getBestScore();
+            return move;
+        }
+        if(mcts != null) {
+            int move = mcts.think(pos, limit);
+            lastScore = mcts.getBestScore();
+            return move;
+        }
+
+        if(ponderHash != 0 && ponderHash == pos.hash && search.getCompletedDepth() >= depth
+                && search.getBestMove() != Moves.NONE) {
+            ponderHits++;
+            ponderHash = 0;
+            lastScore = search.getBestScore();
+            return search.getBestMove();
+        }
+        ponderHash = 0;
+
+        int move = search.think(pos.copy(), depth, limit);
+        lastScore = search.getBestScore();
+        return move;
+    }
+
+    /**
+     * Starts pondering in the background. Call right after the computer's move is made. Does nothing
+     * when playing with Monte Carlo tree search or at a difficulty level.
+     *
+     * @param pos   position with the opponent to move. A copy is searched, so the caller may keep using it.
+     *
+     * @author      Bryle Tan
+     */
+    public void ponder(Position pos) {
+        stopPondering();
+        if(mcts != null || difficulty != null) {
+            return;
+        }
+
+        Position copy = pos.copy();
+        int predicted = TranspositionTable.move(table.probe(copy.hash));
+        if(MoveGenerator.isPseudoLegal(copy, predicted) && MoveGenerator.isLegal(copy, predicted)) {
+            copy.makeMove(predicted);
+            ponderHash = copy.hash;
+        } else {
+            ponderHash = 0;
+        }
+
+        search.clearStop();
+        ponderThread = new Thread(() -> search.think(copy, Search.MAX_PLY - 1), "ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * Stops the background search, if there is one, and waits for it to finish.
+     */
+    public void stopPondering() {
+        if(ponderThread == null) {
+            return;
+        }
+
+        search.stop();
+        try {
+            ponderThread.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        search.clearStop();
+        ponderThread = null;
+    }
+
+    /**
+     * @return  number of turns where the ponder result was played without searching again.
+     */
+    public int getPonderHits() { return ponderHits; }
+
+    /**
+     * @return  score of the computer's last search, in centipawns for the computer.
+     */
+    public int getLastScore() { return lastScore; }
+
+    /**
+     * Makes the computer evaluate with a neural network. Only call this while it isn't pondering.
+     *
+     * @param network   the network, <code>null</code> for the hand-written evaluation.
+     */
+    public void setNetwork(Network network) {
+        search.setNetwork(network);
+    }
+
+    /**
+     * Makes the computer play with Monte Carlo tree search. Without a clock it searches until the
+     * playout limit of the tree search, so one must be set.
+     *
+     * @param mcts  the tree search, <code>null</code> to play with the alpha-beta search again.
+     */
+    public void setMcts(Mcts mcts) {
+        stopPondering();
+        this.mcts = mcts;
+    }
+
+    /**
+     * @return  the tree search the computer plays with, <code>null</code> if it uses the alpha-beta search.
+     */
+    public Mcts getMcts() { return mcts; }
+
+    /**
+     * Makes the computer play at a difficulty level, whose budget replaces the depth and the clock.
+     *
+     * @param difficulty    the level, <code>null</code> to play at full strength again.
+     */
+    public void setDifficulty(Difficulty difficulty) {
+        stopPondering();
+        this.difficulty = difficulty;
+        if(difficulty == null) {
+            search.setNodeLimit(0);
+            search.setRootMargin(0);
+        }
+    }
+
+    /**
+     * @return  the level the computer plays at, <code>null</code> at full strength.
+     */
+    public Difficulty getDifficulty() { return difficulty; }
+}
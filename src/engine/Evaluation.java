@@ -0,0 +1,604 @@
+package engine;
+
+/**
+ * Static evaluation of a position, used to score the leaves of the search.
+ * <p>
+ * The score is made up of material, piece-square tables, mobility, king safety and pawn structure,
+ * each with a middlegame and an endgame weight. The two are blended by the game phase, which goes from 24 with
+ * all pieces on the board down to 0 when only kings and pawns are left.
+ * <p>
+ * Material and piece-square scores are kept up to date by <code>Position</code> as moves are made
+ * and unmade, so only mobility and king safety are worked out here. Pawn structure terms (passed,
+ * doubled, isolated and backward pawns, and the pawn shield) only depend on the pawns and kings, so
+ * they are cached in a <code>PawnTable</code> and only worked out for pawn structures not seen yet.
+ *
+ * @author  Bryle Tan
+ */
+public class Evaluation {
+
+    /**
+     * phase value of each piece type, indexed by <code>Position.PAWN</code> to <code>Position.KING</code>.
+     */
+    public static final int[] PHASE_WEIGHT = {0, 1, 1, 2, 4, 0};
+
+    /**
+     * phase of the starting position.
+     */
+    public static final int TOTAL_PHASE = 24;
+
+    /**
+     * bitboard of the a file.
+     */
+    public static final long FILE_A = 0x0101010101010101L;
+
+    /**
+     * bitboard of the h file.
+     */
+    public static final long FILE_H = FILE_A << 7;
+
+    /**
+     * middlegame value of each piece type.
+     */
+    public static final int[] MATERIAL_MG = {82, 337, 365, 477, 1025, 0};
+
+    /**
+     * endgame value of each piece type.
+     */
+    public static final int[] MATERIAL_EG = {94, 281, 297, 512, 936, 0};
+
+    /**
+     * middlegame bonus per square a piece attacks, indexed by piece type.
+     */
+    public static final int[] MOBILITY_MG = {0, 4, 5, 2, 1, 0};
+
+    /**
+     * endgame bonus per square a piece attacks, indexed by piece type.
+     */
+    public static final int[] MOBILITY_EG = {0, 4, 5, 4, 2, 0};
+
+    /**
+     * weight of an attack on the squares around the enemy king, indexed by piece type.
+     */
+    public static final int[] KING_ATTACK_WEIGHT = {0, 2, 2, 3, 5, 0};
+
+    /**
+     * middlegame bonus for each pawn directly in front of a castled king.
+     */
+    public static final int SHIELD_NEAR = 12;
+
+    /**
+     * middlegame bonus for each pawn two squares in front of a castled king.
+     */
+    public static final int SHIELD_FAR = 6;
+
+    /**
+     * middlegame bonus for a passed pawn, indexed by its rank from its own side.
+     */
+    public static final int[] PASSED_MG = {0, 5, 10, 15, 30, 50, 80, 0};
+
+    /**
+     * endgame bonus for a passed pawn, indexed by its rank from its own side.
+     */
+    public static final int[] PASSED_EG = {0, 10, 15, 25, 45, 75, 120, 0};
+
+    /**
+     * middlegame and endgame penalty for each pawn behind another pawn of the same side on its file.
+     */
+    public static final int[] DOUBLED = {10, 20};
+
+    /**
+     * middlegame and endgame penalty for a pawn with no pawns of its side on the files next to it.
+     */
+    public static final int[] ISOLATED = {10, 15};
+
+    /**
+     * middlegame and endgame penalty for a pawn that can't be protected by its neighbours and whose
+     * square in front is covered by an enemy pawn.
+     */
+    public static final int[] BACKWARD = {8, 10};
+
+    /**
+     * bitboard of each file.
+     */
+    private static final long[] FILES = new long[8];
+
+    /**
+     * bitboard of the files next to each file.
+     */
+    private static final long[] ADJACENT_FILES = new long[8];
+
+    /**
+     * squares in front of a pawn on its own file, indexed by color then square.
+     */
+    private static final long[][] FRONT_SPAN = new long[2][64];
+
+    /**
+     * squares in front of a pawn on its own and the next files. A pawn is passed if no enemy pawn is
+     * on them. Indexed by color then square.
+     */
+    private static final long[][] PASSED_MASK = new long[2][64];
+
+    /**
+     * squares on the next files level with or behind a pawn, where pawns that could protect it stand
+     * or can come from. Indexed by color then square.
+     */
+    private static final long[][] SUPPORT_MASK = new long[2][64];
+
+    /**
+     * middlegame penalty for the attack units on a king's zone, capped at the last entry.
+     */
+    private static final int[] KING_DANGER = new int[64];
+
+    /**
+     * piece-square tables for the middlegame, indexed by piece type then square.
+     * Tables are written from white's point of view with the eighth rank on top, as on the printed board.
+     */
+    public static final int[][] PST_MG = {
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+        },
+        {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+        },
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0
+        },
+        {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20
+        },
+        {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20
+        }
+    };
+
+    /**
+     * piece-square tables for the endgame, laid out the same way as <code>PST_MG</code>.
+     */
+    public static final int[][] PST_EG = {
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             20,  20,  20,  20,  20,  20,  20,  20,
+             10,  10,  10,  10,  10,  10,  10,  10,
+             10,  10,  10,  10,  10,  10,  10,  10,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+        },
+        {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+        },
+        {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0
+        },
+        {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20
+        },
+        {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+        }
+    };
+
+    /**
+     * combined material and piece-square middlegame score of every piece on every square,
+     * indexed by the piece code from <code>Position.piece</code> then square. Black entries are negated,
+     * so the scores always add up from white's point of view.
+     */
+    public static final int[][] MG = new int[12][64];
+
+    /**
+     * combined material and piece-square endgame score, laid out the same way as <code>MG</code>.
+     */
+    public static final int[][] EG = new int[12][64];
+
+    /**
+     * scratch space for the middlegame and endgame terms of one side, reused so evaluating doesn't allocate.
+     */
+    private final int[] terms = new int[2];
+
+    /**
+     * cache of the pawn structure terms.
+     */
+    private final PawnTable pawnTable = new PawnTable();
+
+    /**
+     * network used instead of the hand-written terms, <code>null</code> to use the terms.
+     */
+    private Network network;
+
+    static {
+        rebuildTables();
+
+        for(int file = 0; file < 8; file++) {
+            FILES[file] = FILE_A << file;
+        }
+        for(int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0) | (file < 7 ? FILES[file + 1] : 0);
+        }
+        for(int sq = 0; sq < 64; sq++) {
+            int file = sq & 7;
+            int rank = sq >> 3;
+            long above = rank == 7 ? 0 : -1L << ((rank + 1) * 8);
+            long below = rank == 0 ? 0 : -1L >>> ((8 - rank) * 8);
+            long levelOrAbove = -1L << (rank * 8);
+            long levelOrBelow = -1L >>> ((7 - rank) * 8);
+
+            FRONT_SPAN[Position.WHITE][sq] = FILES[file] & above;
+            FRONT_SPAN[Position.BLACK][sq] = FILES[file] & below;
+            PASSED_MASK[Position.WHITE][sq] = (FILES[file] | ADJACENT_FILES[file]) & above;
+            PASSED_MASK[Position.BLACK][sq] = (FILES[file] | ADJACENT_FILES[file]) & below;
+            SUPPORT_MASK[Position.WHITE][sq] = ADJACENT_FILES[file] & levelOrBelow;
+            SUPPORT_MASK[Position.BLACK][sq] = ADJACENT_FILES[file] & levelOrAbove;
+        }
+
+        for(int units = 0; units < KING_DANGER.length; units++) {
+            KING_DANGER[units] = Math.min(units * units * 2, 500);
+        }
+    }
+
+    /**
+     * Rebuilds <code>MG</code> and <code>EG</code> from the material values and the piece-square tables.
+     * Must be called again if any of those weights are changed.
+     *
+     * @author  Bryle Tan
+     */
+    public static void rebuildTables() {
+        for(int type = Position.PAWN; type <= Position.KING; type++) {
+            for(int sq = 0; sq < 64; sq++) {
+                // tables are drawn with a8 first, so flipping the rank gives white's entry
+                int whiteIndex = sq ^ 56;
+                int blackIndex = sq;
+
+                MG[Position.piece(Position.WHITE, type)][sq] = MATERIAL_MG[type] + PST_MG[type][whiteIndex];
+                EG[Position.piece(Position.WHITE, type)][sq] = MATERIAL_EG[type] + PST_EG[type][whiteIndex];
+                MG[Position.piece(Position.BLACK, type)][sq] = -(MATERIAL_MG[type] + PST_MG[type][blackIndex]);
+                EG[Position.piece(Position.BLACK, type)][sq] = -(MATERIAL_EG[type] + PST_EG[type][blackIndex]);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the position.
+     *
+     * @param pos   position to evaluate.
+     * @return      score in centipawns from the point of view of the side to move.
+     *
+     * @author      Bryle Tan
+     */
+    public int evaluate(Position pos) {
+        if(network != null) {
+            if(pos.accumulator == null || pos.accumulator.network != network) {
+                pos.accumulator = new Accumulator(network, pos);
+            }
+            return pos.accumulator.evaluate(pos.sideToMove);
+        }
+
+        int mg = pos.mgScore;
+        int eg = pos.egScore;
+
+        terms[0] = 0;
+        terms[1] = 0;
+        pieceTerms(pos, Position.WHITE, terms);
+        mg += terms[0];
+        eg += terms[1];
+
+        terms[0] = 0;
+        terms[1] = 0;
+        pieceTerms(pos, Position.BLACK, terms);
+        mg -= terms[0];
+        eg -= terms[1];
+
+        int entry = pawnTable.probe(pos.pawnKey);
+        if(entry >= 0) {
+            mg += pawnTable.mg(entry);
+            eg += pawnTable.eg(entry);
+        } else {
+            terms[0] = 0;
+            terms[1] = 0;
+            pawnTerms(pos, Position.WHITE, terms);
+            int pawnMg = terms[0];
+            int pawnEg = terms[1];
+
+            terms[0] = 0;
+            terms[1] = 0;
+            pawnTerms(pos, Position.BLACK, terms);
+            pawnMg -= terms[0];
+            pawnEg -= terms[1];
+
+            pawnTable.store(pos.pawnKey, pawnMg, pawnEg);
+            mg += pawnMg;
+            eg += pawnEg;
+        }
+
+        int score = taper(mg, eg, pos.phase);
+        return pos.sideToMove == Position.WHITE ? score : -score;
+    }
+
+    /**
+     * @return  the pawn structure cache, for its hit rate.
+     */
+    public PawnTable getPawnTable() { return pawnTable; }
+
+    /**
+     * Sets up the network's first layer for the position a search starts from. The search unmakes its
+     * moves back to this position, so its level of the accumulator has to be filled in before the
+     * first move is made, rather than when the first leaf deep in the tree is evaluated.
+     *
+     * @param pos   root position of the search.
+     *
+     * @author      Bryle Tan
+     */
+    public void prepare(Position pos) {
+        if(network == null) {
+            // nothing reads the neurons, so the moves made don't need to update them
+            pos.accumulator = null;
+        } else if(pos.accumulator == null || pos.accumulator.network != network) {
+            pos.accumulator = new Accumulator(network, pos);
+        } else {
+            pos.accumulator.refresh(pos);
+        }
+    }
+
+    /**
+     * Switches between the network and the hand-written terms.
+     *
+     * @param network   network to evaluate with, <code>null</code> for the hand-written terms.
+     */
+    public void setNetwork(Network network) { this.network = network; }
+
+    /**
+     * @return  the network evaluated with, <code>null</code> if it's the hand-written terms.
+     */
+    public Network getNetwork() { return network; }
+
+    /**
+     * Blends a middlegame and an endgame score by the game phase.
+     *
+     * @param mg    middlegame score.
+     * @param eg    endgame score.
+     * @param phase game phase, <code>TOTAL_PHASE</code> for a full board.
+     * @return      the blended score.
+     */
+    public static int taper(int mg, int eg, int phase) {
+        int p = Math.min(phase, TOTAL_PHASE);
+        return (mg * p + eg * (TOTAL_PHASE - p)) / TOTAL_PHASE;
+    }
+
+    /**
+     * Adds the mobility and king safety terms of one side to <code>terms</code>.
+     *
+     * @param pos   position to evaluate.
+     * @param us    color of the side being scored.
+     * @param terms array of length 2 holding the middlegame and endgame scores.
+     *
+     * @author      Bryle Tan
+     */
+    private void pieceTerms(Position pos, int us, int[] terms) {
+        int them = us ^ 1;
+        long occupied = pos.occupied;
+        long available = mobilityArea(pos, us);
+
+        int enemyKing = Long.numberOfTrailingZeros(pos.pieces[Position.piece(them, Position.KING)]);
+        long kingZone = Attacks.KING[enemyKing] | (1L << enemyKing);
+        int attackUnits = 0;
+        int attackers = 0;
+
+        for(int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+            for(long bb = pos.pieces[Position.piece(us, type)]; bb != 0; bb &= bb - 1) {
+                int sq = Long.numberOfTrailingZeros(bb);
+                long attacks = pieceAttacks(type, sq, occupied);
+
+                int mobility = Long.bitCount(attacks & available);
+                terms[0] += MOBILITY_MG[type] * mobility;
+                terms[1] += MOBILITY_EG[type] * mobility;
+
+                long zoneHits = attacks & kingZone;
+                if(zoneHits != 0) {
+                    attackers++;
+                    attackUnits += KING_ATTACK_WEIGHT[type] * Long.bitCount(zoneHits);
+                }
+            }
+        }
+
+        // a lone attacker is rarely dangerous
+        if(attackers >= 2) {
+            terms[0] += KING_DANGER[Math.min(attackUnits, KING_DANGER.length - 1)];
+        }
+    }
+
+    /**
+     * Gets the squares that count towards a side's mobility: those not taken by its own pieces or
+     * covered by enemy pawns.
+     *
+     * @param pos   position to evaluate.
+     * @param us    color of the side being scored.
+     * @return      bitboard of the squares.
+     */
+    public static long mobilityArea(Position pos, int us) {
+        long enemyPawns = pos.pieces[Position.piece(us ^ 1, Position.PAWN)];
+        long pawnAttacks = us == Position.BLACK
+            ? ((enemyPawns << 7) & ~FILE_H) | ((enemyPawns << 9) & ~FILE_A)
+            : ((enemyPawns >>> 9) & ~FILE_H) | ((enemyPawns >>> 7) & ~FILE_A);
+        return ~pos.colors[us] & ~pawnAttacks;
+    }
+
+    /**
+     * Gets the squares a knight, bishop, rook or queen attacks.
+     *
+     * @param type      piece type, <code>Position.KNIGHT</code> to <code>Position.QUEEN</code>.
+     * @param sq        square of the piece.
+     * @param occupied  bitboard of all pieces.
+     * @return          bitboard of the attacked squares.
+     */
+    public static long pieceAttacks(int type, int sq, long occupied) {
+        if(type == Position.KNIGHT) {
+            return Attacks.KNIGHT[sq];
+        } else if(type == Position.BISHOP) {
+            return Attacks.bishop(sq, occupied);
+        } else if(type == Position.ROOK) {
+            return Attacks.rook(sq, occupied);
+        }
+        return Attacks.queen(sq, occupied);
+    }
+
+    /**
+     * Adds the pawn structure terms of one side to <code>terms</code>: passed, doubled, isolated and
+     * backward pawns, and the pawn shield. These only depend on the pawns and kings.
+     *
+     * @param pos   position to evaluate.
+     * @param us    color of the side being scored.
+     * @param terms array of length 2 holding the middlegame and endgame scores.
+     *
+     * @author      Bryle Tan
+     */
+    private void pawnTerms(Position pos, int us, int[] terms) {
+        long pawns = pos.pieces[Position.piece(us, Position.PAWN)];
+        long enemyPawns = pos.pieces[Position.piece(us ^ 1, Position.PAWN)];
+        int forward = us == Position.WHITE ? 8 : -8;
+
+        for(long bb = pawns; bb != 0; bb &= bb - 1) {
+            int sq = Long.numberOfTrailingZeros(bb);
+            int file = sq & 7;
+
+            // only the front pawn of a doubled pair can be passed
+            if((enemyPawns & PASSED_MASK[us][sq]) == 0 && (pawns & FRONT_SPAN[us][sq]) == 0) {
+                int rank = us == Position.WHITE ? sq >> 3 : 7 - (sq >> 3);
+                terms[0] += PASSED_MG[rank];
+                terms[1] += PASSED_EG[rank];
+            }
+
+            if((pawns & ADJACENT_FILES[file]) == 0) {
+                terms[0] -= ISOLATED[0];
+                terms[1] -= ISOLATED[1];
+            } else if((pawns & SUPPORT_MASK[us][sq]) == 0
+                    && (Attacks.PAWN[us][sq + forward] & enemyPawns) != 0) {
+                terms[0] -= BACKWARD[0];
+                terms[1] -= BACKWARD[1];
+            }
+        }
+
+        for(int file = 0; file < 8; file++) {
+            int count = Long.bitCount(pawns & FILES[file]);
+            if(count > 1) {
+                terms[0] -= DOUBLED[0] * (count - 1);
+                terms[1] -= DOUBLED[1] * (count - 1);
+            }
+        }
+
+        terms[0] += pawnShield(pos, us);
+    }
+
+    /**
+     * Scores the pawns in front of a side's king while it is on its first two ranks.
+     *
+     * @param pos   position to evaluate.
+     * @param us    color of the king.
+     * @return      middlegame bonus for the pawn shield.
+     */
+    private int pawnShield(Position pos, int us) {
+        int king = Long.numberOfTrailingZeros(pos.pieces[Position.piece(us, Position.KING)]);
+        int relativeRank = us == Position.WHITE ? king >> 3 : 7 - (king >> 3);
+        if(relativeRank > 1) {
+            return 0;
+        }
+
+        long pawns = pos.pieces[Position.piece(us, Position.PAWN)];
+        int file = king & 7;
+        int forward = us == Position.WHITE ? 8 : -8;
+        int bonus = 0;
+
+        for(int f = Math.max(0, file - 1); f <= Math.min(7, file + 1); f++) {
+            int near = (king & ~7) + f + forward;
+            int far = near + forward;
+            if((pawns & (1L << near)) != 0) {
+                bonus += SHIELD_NEAR;
+            } else if((pawns & (1L << far)) != 0) {
+                bonus += SHIELD_FAR;
+            }
+        }
+        return bonus;
+    }
+}
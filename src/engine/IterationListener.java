@@ -0,0 +1,19 @@
+package engine;
+
+/**
+ * Told by a <code>Search</code> every time it completes an iteration of iterative deepening.
+ *
+ * @author  Bryle Tan
+ */
+public interface IterationListener {
+
+    /**
+     * Called on the searching thread after an iteration completes.
+     *
+     * @param depth depth of the iteration.
+     * @param move  best move found by the iteration.
+     * @param score score of the move, in centipawns for the side to move.
+     * @param nodes nodes visited so far by the whole search.
+     */
+    void iterationDone(int depth, int move, int score, long nodes);
+}
@@ -0,0 +1,392 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Mate-in-N solver using depth-first proof-number search (df-pn), for puzzles.
+ * <p>
+ * The side to move at the root is the attacker. A node where the attacker is to move is proven
+ * (a forced mate) if any move proves it, and a node where the defender is to move is proven if every
+ * move does. Instead of scoring positions, each node keeps a proof number, how many leaves would at
+ * least still have to be proven to prove it, and a disproof number, the same for disproving it. The
+ * search always goes down to the most proving node: the child of an attacker node that is cheapest to
+ * prove, the child of a defender node that is cheapest to disprove. Forcing lines such as checks
+ * are proven after a handful of nodes, however deep, where alpha-beta would search every move to the
+ * full depth.
+ * <p>
+ * The numbers are kept as phi and delta: at an attacker node phi is the proof number and delta the
+ * disproof number, and at a defender node the other way round, so both kinds of node work out their
+ * numbers from their children the same way. A node is only searched until its numbers reach the
+ * thresholds its parent gave it, then its numbers are stored in a hash table and the parent picks
+ * again. The table is keyed by position and remaining plies, since a position with fewer plies left
+ * can be a disproof where one with more is a proof.
+ * <p>
+ * Mates are looked for with 1 move, then 2 and so on up to N, so the mate found is the shortest one.
+ * A proven node also stores how many plies its mate takes and the move towards it: the quickest mate
+ * for the attacker, the longest defence for the defender, from which the mating line is read back.
+ *
+ * @author  Bryle Tan
+ */
+public class MateSolver {
+
+    /**
+     * a forced mate was found.
+     */
+    public static final int MATE = 1;
+
+    /**
+     * there is no forced mate within the moves given.
+     */
+    public static final int NO_MATE = 2;
+
+    /**
+     * the node limit was reached before either was proven.
+     */
+    public static final int UNKNOWN = 3;
+
+    /**
+     * proof or disproof number of a node that is disproven or proven, larger than any sum of numbers.
+     */
+    private static final int INFINITE = 100000000;
+
+    /**
+     * deepest ply the search can reach, so mates of up to 63 moves can be looked for.
+     */
+    private static final int MAX_PLY = 128;
+
+    /**
+     * stored position hashes.
+     */
+    private final long[] keys;
+
+    /**
+     * stored phi of each node.
+     */
+    private final int[] phis;
+
+    /**
+     * stored delta of each node.
+     */
+    private final int[] deltas;
+
+    /**
+     * stored remaining plies in bits 0-7, and plies to mate of a proven node in bits 8-15.
+     */
+    private final int[] data;
+
+    /**
+     * stored move towards the mate of each proven node. Kept apart from <code>data</code>, since a
+     * move takes 17 bits.
+     */
+    private final int[] bestMoves;
+
+    /**
+     * mask from a hash to an index.
+     */
+    private final int mask;
+
+    /**
+     * moves of each ply.
+     */
+    private final int[][] moves = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    /**
+     * phi of each move of each ply.
+     */
+    private final int[][] childPhi = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    /**
+     * delta of each move of each ply.
+     */
+    private final int[][] childDelta = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    /**
+     * plies to mate of each proven move of each ply.
+     */
+    private final int[][] childDistance = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    /**
+     * position being solved.
+     */
+    private Position pos;
+
+    /**
+     * side to move at the root.
+     */
+    private int attacker;
+
+    /**
+     * number of positions visited by the last solve.
+     */
+    private long nodes;
+
+    /**
+     * number of nodes after which the search gives up, 0 for no limit.
+     */
+    private long nodeLimit;
+
+    /**
+     * phi of the node searched last.
+     */
+    private int lastPhi;
+
+    /**
+     * delta of the node searched last.
+     */
+    private int lastDelta;
+
+    /**
+     * plies to mate of the node searched last, if it was proven.
+     */
+    private int lastDistance;
+
+    /**
+     * moves of the mating line found by the last solve.
+     */
+    private int[] line = new int[0];
+
+    /**
+     * Constructor for a solver.
+     *
+     * @param megabytes approximate size of the hash table. Rounded down to a power of two number of entries.
+     */
+    public MateSolver(int megabytes) {
+        long entries = Math.max(1024, (long) megabytes * 1024 * 1024 / 24);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[size];
+        phis = new int[size];
+        deltas = new int[size];
+        data = new int[size];
+        bestMoves = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks for a forced mate for the side to move in at most <code>mateIn</code> of its moves.
+     *
+     * @param position  position to solve. It is left unchanged when the solver returns.
+     * @param mateIn    largest number of moves of the side to move, up to 63.
+     * @return          <code>MATE</code>, <code>NO_MATE</code> or <code>UNKNOWN</code> if the node limit
+     *                  was reached first.
+     *
+     * @author          Bryle Tan
+     */
+    public int solve(Position position, int mateIn) {
+        pos = position;
+        attacker = pos.sideToMove;
+        nodes = 0;
+        line = new int[0];
+
+        for(int n = 1; n <= Math.min(mateIn, MAX_PLY / 2 - 1); n++) {
+            int remaining = 2 * n - 1;
+            search(remaining, INFINITE, INFINITE, 0);
+            if(lastPhi == 0) {
+                line = readLine(remaining);
+                return MATE;
+            }
+            if(lastDelta != 0) {
+                // neither proven nor disproven, so the node limit stopped it
+                return UNKNOWN;
+            }
+        }
+        return NO_MATE;
+    }
+
+    /**
+     * Searches the position until its phi or delta reaches a threshold, and stores its numbers.
+     * The numbers are left in <code>lastPhi</code> and <code>lastDelta</code>.
+     *
+     * @param remaining         plies left before the attacker has to have mated.
+     * @param phiThreshold      phi at which to go back to the parent.
+     * @param deltaThreshold    delta at which to go back to the parent.
+     * @param ply               distance from the root.
+     *
+     * @author                  Bryle Tan
+     */
+    private void search(int remaining, int phiThreshold, int deltaThreshold, int ply) {
+        nodes++;
+        boolean attacking = pos.sideToMove == attacker;
+        int[] list = moves[ply];
+        int count = MoveGenerator.generateLegal(pos, list);
+
+        if(count == 0 || remaining == 0) {
+            // the attacker only wins if the defender is out of moves and in check
+            boolean mated = !attacking && count == 0 && pos.inCheck(pos.sideToMove);
+            if(attacking || mated) {
+                // an attacker out of moves, or a mated defender: phi is infinite for the side to move
+                setLast(INFINITE, 0, 0);
+            } else {
+                setLast(0, INFINITE, 0);
+            }
+            store(remaining, Moves.NONE);
+            return;
+        }
+
+        int[] phi = childPhi[ply];
+        int[] delta = childDelta[ply];
+        int[] distance = childDistance[ply];
+        for(int i = 0; i < count; i++) {
+            pos.makeMove(list[i]);
+            int index = probe(pos.hash, remaining - 1);
+            if(index >= 0) {
+                phi[i] = phis[index];
+                delta[i] = deltas[index];
+                distance[i] = (data[index] >>> 8) & 0xFF;
+            } else {
+                // checks and replies to them are the likeliest to decide quickly
+                boolean check = pos.inCheck(pos.sideToMove);
+                phi[i] = 1;
+                delta[i] = attacking && !check ? 2 : 1;
+                distance[i] = 0;
+            }
+            pos.unmakeMove(list[i]);
+        }
+
+        while(true) {
+            int nodePhi = INFINITE;
+            int nodeDelta = 0;
+            int best = 0;
+            int secondDelta = INFINITE;
+            for(int i = 0; i < count; i++) {
+                nodeDelta = Math.min(nodeDelta + phi[i], INFINITE);
+                if(delta[i] < nodePhi) {
+                    secondDelta = nodePhi;
+                    nodePhi = delta[i];
+                    best = i;
+                } else if(delta[i] < secondDelta) {
+                    secondDelta = delta[i];
+                }
+            }
+
+            if(nodePhi >= phiThreshold || nodeDelta >= deltaThreshold || (nodeLimit > 0 && nodes >= nodeLimit)) {
+                int move = Moves.NONE;
+                int plies = 0;
+                if(attacking ? nodePhi == 0 : nodeDelta == 0) {
+                    // proven: the quickest mate for the attacker, the longest defence for the defender
+                    for(int i = 0; i < count; i++) {
+                        if(attacking && delta[i] == 0 && (move == Moves.NONE || distance[i] < plies)) {
+                            move = list[i];
+                            plies = distance[i];
+                        } else if(!attacking && (move == Moves.NONE || distance[i] > plies)) {
+                            move = list[i];
+                            plies = distance[i];
+                        }
+                    }
+                    plies++;
+                }
+                setLast(nodePhi, nodeDelta, plies);
+                store(remaining, move);
+                return;
+            }
+
+            int childPhiThreshold = Math.min(deltaThreshold - nodeDelta + phi[best], INFINITE);
+            int childDeltaThreshold = Math.min(phiThreshold, secondDelta + 1);
+            pos.makeMove(list[best]);
+            search(remaining - 1, childPhiThreshold, childDeltaThreshold, ply + 1);
+            pos.unmakeMove(list[best]);
+            phi[best] = lastPhi;
+            delta[best] = lastDelta;
+            distance[best] = lastDistance;
+        }
+    }
+
+    /**
+     * Sets the numbers of the node searched last.
+     *
+     * @param phi       phi of the node.
+     * @param delta     delta of the node.
+     * @param distance  plies to mate if the node is proven.
+     */
+    private void setLast(int phi, int delta, int distance) {
+        lastPhi = phi;
+        lastDelta = delta;
+        lastDistance = distance;
+    }
+
+    /**
+     * Stores the numbers of the node searched last for the current position, over whatever was there.
+     *
+     * @param remaining plies left at the node.
+     * @param move      move towards the mate if the node is proven, <code>Moves.NONE</code> otherwise.
+     */
+    private void store(int remaining, int move) {
+        int index = index(pos.hash, remaining);
+        keys[index] = pos.hash;
+        phis[index] = lastPhi;
+        deltas[index] = lastDelta;
+        data[index] = remaining | Math.min(lastDistance, 0xFF) << 8;
+        bestMoves[index] = move;
+    }
+
+    /**
+     * Looks up a node in the hash table.
+     *
+     * @param hash      hash of the position.
+     * @param remaining plies left at the node.
+     * @return          index of the entry, -1 if the node isn't stored.
+     */
+    private int probe(long hash, int remaining) {
+        int index = index(hash, remaining);
+        return keys[index] == hash && (data[index] & 0xFF) == remaining ? index : -1;
+    }
+
+    /**
+     * @param hash      hash of the position.
+     * @param remaining plies left at the node.
+     * @return          index of the node's entry.
+     */
+    private int index(long hash, int remaining) {
+        return (int) ((hash ^ remaining * 0x9E3779B97F4A7C15L) ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Follows the stored moves of a proven root down to the mate.
+     *
+     * @param remaining plies left at the root.
+     * @return          the moves of the line, shorter if an entry was overwritten.
+     */
+    private int[] readLine(int remaining) {
+        int[] found = new int[remaining];
+        int length = 0;
+        for(int left = remaining; left > 0; left--) {
+            int index = probe(pos.hash, left);
+            int move = index >= 0 && phis[index] == (pos.sideToMove == attacker ? 0 : INFINITE) ? bestMoves[index] : Moves.NONE;
+            if(move == Moves.NONE) {
+                break;
+            }
+            found[length++] = move;
+            pos.makeMove(move);
+        }
+        for(int i = length - 1; i >= 0; i--) {
+            pos.unmakeMove(found[i]);
+        }
+        return Arrays.copyOf(found, length);
+    }
+
+    /**
+     * Limits later solves to a number of nodes.
+     *
+     * @param limit number of nodes, 0 for no limit.
+     */
+    public void setNodeLimit(long limit) {
+        nodeLimit = limit;
+    }
+
+    /**
+     * Forgets every stored node.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * @return  moves of the mating line found by the last solve, from the root position.
+     */
+    public int[] getLine() { return line.clone(); }
+
+    /**
+     * @return  number of positions visited by the last solve.
+     */
+    public long getNodes() { return nodes; }
+}
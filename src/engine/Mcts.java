@@ -0,0 +1,545 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search (MCTS) player, an alternative to the alpha-beta <code>Search</code> that
+ * plays in a more human, less exact way.
+ * <p>
+ * Each playout walks down the tree from the root, at each node taking the move with the best PUCT
+ * score: its average result so far plus an exploration bonus that grows with its prior and shrinks
+ * as it is visited. The node it reaches is expanded with the legal moves of <code>MoveGenerator</code>,
+ * the same rules the game validates typed moves with, and its static evaluation turned into an
+ * expected result is added to every node on the way back up. The priors favour captures that
+ * win material, promotions and moves to better squares of the piece-square tables.
+ * <p>
+ * Nodes live in an arena of parallel primitive arrays rather than as objects; a node's children
+ * are a block of consecutive indexes. Playouts run on several threads that share the tree. A thread
+ * going through a node adds a virtual loss to it, so the others spread out over other moves until its
+ * result is in. Expanding a node is claimed with a compare-and-set, and its children are published
+ * by the volatile write of its state, so no locks are needed.
+ * <p>
+ * Between moves the tree is kept: if the new position is a child or grandchild of the old root, that
+ * node becomes the root with all its playouts. Once the arena is half full the tree is started again,
+ * and when it is full, playouts evaluate their last node without expanding it.
+ *
+ * @author  Bryle Tan
+ */
+public class Mcts {
+
+    /**
+     * state of a node that hasn't been expanded.
+     */
+    private static final int UNEXPANDED = 0;
+
+    /**
+     * state of a node a thread is expanding.
+     */
+    private static final int EXPANDING = 1;
+
+    /**
+     * state of a node whose children can be read.
+     */
+    private static final int EXPANDED = 2;
+
+    /**
+     * weight of the exploration bonus in the PUCT score.
+     */
+    private static final double EXPLORATION = 1.4;
+
+    /**
+     * average result given to moves that haven't been tried, below the parent's own average.
+     */
+    private static final double FIRST_PLAY_REDUCTION = 0.2;
+
+    /**
+     * visits counted as losses on a node while a thread is going through it.
+     */
+    private static final int VIRTUAL_LOSS = 3;
+
+    /**
+     * results are stored in thousandths, so they can be added up atomically as longs.
+     */
+    private static final int UNIT = 1000;
+
+    /**
+     * deepest ply a playout can reach.
+     */
+    private static final int MAX_PLY = 256;
+
+    /**
+     * move leading to each node.
+     */
+    private final int[] moves;
+
+    /**
+     * prior probability of each node's move, from its parent's point of view.
+     */
+    private final float[] priors;
+
+    /**
+     * index of each expanded node's first child.
+     */
+    private final int[] firstChild;
+
+    /**
+     * number of children of each expanded node.
+     */
+    private final int[] childCount;
+
+    /**
+     * <code>UNEXPANDED</code>, <code>EXPANDING</code> or <code>EXPANDED</code> for each node.
+     */
+    private final AtomicIntegerArray states;
+
+    /**
+     * number of playouts through each node.
+     */
+    private final AtomicIntegerArray visits;
+
+    /**
+     * virtual losses on each node from the threads going through it.
+     */
+    private final AtomicIntegerArray virtualLosses;
+
+    /**
+     * sum of the results of the playouts through each node, in <code>UNIT</code>s, for the side that
+     * made the node's move.
+     */
+    private final AtomicLongArray results;
+
+    /**
+     * number of nodes used in the arena.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * number of threads running playouts.
+     */
+    private final int threads;
+
+    /**
+     * number of playouts run by the current search.
+     */
+    private final AtomicLong playouts = new AtomicLong();
+
+    /**
+     * evaluation of each thread, since it keeps a pawn cache.
+     */
+    private final ThreadLocal<Evaluation> evaluations = ThreadLocal.withInitial(Evaluation::new);
+
+    /**
+     * index of the root node.
+     */
+    private int root;
+
+    /**
+     * the root's position, to find the next root in when the tree is reused.
+     */
+    private Position rootPosition;
+
+    /**
+     * playouts after which the search stops, 0 for no limit.
+     */
+    private long playoutLimit;
+
+    /**
+     * set to stop every thread.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * playouts that were already below the root when the last search started.
+     */
+    private int reused;
+
+    /**
+     * nanoseconds the last search took.
+     */
+    private long elapsed;
+
+    /**
+     * Constructor for a player.
+     *
+     * @param megabytes approximate size of the node arena, 36 bytes per node.
+     * @param threads   number of threads running playouts.
+     */
+    public Mcts(int megabytes, int threads) {
+        int capacity = (int) Math.min(Math.max(1024, (long) megabytes * 1024 * 1024 / 36), 1 << 28);
+        moves = new int[capacity];
+        priors = new float[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        states = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        virtualLosses = new AtomicIntegerArray(capacity);
+        results = new AtomicLongArray(capacity);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs playouts from a position until the playout limit or the time manager says to stop, or
+     * <code>stop</code> is called.
+     *
+     * @param position  position to search. It is not changed.
+     * @param timer     time limits of the search, <code>null</code> to only limit the playouts.
+     * @return          the move with the most playouts, <code>Moves.NONE</code> if there are no legal moves.
+     *
+     * @author          Bryle Tan
+     */
+    public int think(Position position, TimeManager timer) {
+        long start = System.nanoTime();
+        setRoot(position);
+        playouts.set(0);
+        stopped = false;
+
+        Thread[] workers = new Thread[threads - 1];
+        for(int i = 0; i < workers.length; i++) {
+            Position copy = rootPosition.copy();
+            workers[i] = new Thread(() -> run(copy, null), "playouts-" + i);
+            workers[i].start();
+        }
+        run(rootPosition.copy(), timer);
+        for(Thread worker : workers) {
+            try {
+                worker.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        elapsed = System.nanoTime() - start;
+        int best = bestChild();
+        return best < 0 ? Moves.NONE : moves[best];
+    }
+
+    /**
+     * Runs playouts on one thread until the search is stopped. The thread with the time manager also
+     * asks it every 100 milliseconds whether to stop, as if a search iteration had just finished.
+     *
+     * @param pos   copy of the root position for this thread.
+     * @param timer time limits, <code>null</code> on the other threads.
+     */
+    private void run(Position pos, TimeManager timer) {
+        int[] path = new int[MAX_PLY];
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        long nextCheck = 100;
+        evaluations.get().prepare(pos);
+
+        while(!stopped) {
+            playout(pos, path, buffer);
+            long count = playouts.incrementAndGet();
+            if(playoutLimit > 0 && count >= playoutLimit) {
+                stopped = true;
+            }
+            if(timer != null && (count & 63) == 0) {
+                if(timer.isHardLimitReached()) {
+                    stopped = true;
+                } else if(timer.elapsed() >= nextCheck) {
+                    nextCheck = timer.elapsed() + 100;
+                    if(timer.shouldStop(bestMove(), getBestScore())) {
+                        stopped = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one playout: walks down to a leaf, expands and evaluates it, and adds the result to every
+     * node on the way. The position is back at the root afterwards.
+     *
+     * @param pos       root position of this thread.
+     * @param path      scratch space for the nodes walked through.
+     * @param buffer    scratch space for the moves of an expanded node.
+     *
+     * @author          Bryle Tan
+     */
+    private void playout(Position pos, int[] path, int[] buffer) {
+        int node = root;
+        int length = 0;
+        path[length++] = node;
+        double value;
+
+        while(true) {
+            if(states.get(node) == EXPANDED) {
+                if(childCount[node] == 0) {
+                    value = pos.inCheck(pos.sideToMove) ? 0 : 0.5;
+                    break;
+                }
+                node = select(node);
+                virtualLosses.addAndGet(node, VIRTUAL_LOSS);
+                pos.makeMove(moves[node]);
+                path[length++] = node;
+
+                if(pos.isRepetition() || pos.isFiftyMoveDraw() || pos.isInsufficientMaterial()) {
+                    value = 0.5;
+                    break;
+                }
+                if(length < MAX_PLY) {
+                    continue;
+                }
+            } else if(states.compareAndSet(node, UNEXPANDED, EXPANDING) && expand(node, pos, buffer) == 0) {
+                value = pos.inCheck(pos.sideToMove) ? 0 : 0.5;
+                break;
+            }
+            value = expectedResult(evaluations.get().evaluate(pos));
+            break;
+        }
+
+        // value is for the side to move at the leaf; each node stores the result of the side that moved into it
+        for(int i = length - 1; i >= 0; i--) {
+            int n = path[i];
+            value = 1 - value;
+            results.addAndGet(n, Math.round(value * UNIT));
+            visits.incrementAndGet(n);
+            if(i > 0) {
+                virtualLosses.addAndGet(n, -VIRTUAL_LOSS);
+                pos.unmakeMove(moves[n]);
+            }
+        }
+    }
+
+    /**
+     * Picks the child with the best PUCT score. Virtual losses count as visits that lost.
+     *
+     * @param node  expanded node.
+     * @return      index of the child.
+     */
+    private int select(int node) {
+        int parentVisits = visits.get(node) + virtualLosses.get(node);
+        double sqrtParent = Math.sqrt(Math.max(parentVisits, 1));
+        // results of the node are for the other side, so the side to move here averages 1 minus them
+        double parentAverage = visits.get(node) == 0 ? 0.5 : 1 - (double) results.get(node) / UNIT / visits.get(node);
+        double firstPlay = Math.max(parentAverage - FIRST_PLAY_REDUCTION, 0);
+
+        int best = firstChild[node];
+        double bestScore = -1;
+        for(int child = firstChild[node], end = child + childCount[node]; child < end; child++) {
+            int n = visits.get(child) + virtualLosses.get(child);
+            double average = n == 0 ? firstPlay : (double) results.get(child) / UNIT / n;
+            double score = average + EXPLORATION * priors[child] * sqrtParent / (1 + n);
+            if(score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the children of a node claimed for expanding, with their priors, and publishes them. If the
+     * arena is full the node is left unexpanded, to be evaluated as a leaf.
+     *
+     * @param node      node in the <code>EXPANDING</code> state.
+     * @param pos       position of the node.
+     * @param buffer    scratch space for the moves.
+     * @return          number of legal moves, -1 if the arena is full.
+     */
+    private int expand(int node, Position pos, int[] buffer) {
+        int count = MoveGenerator.generateLegal(pos, buffer);
+        // the children are only reserved if they fit, so the size never passes the arena's length
+        int first;
+        do {
+            first = size.get();
+            if(first + count > moves.length) {
+                states.set(node, UNEXPANDED);
+                return -1;
+            }
+        } while(!size.compareAndSet(first, first + count));
+
+        double total = 0;
+        for(int i = 0; i < count; i++) {
+            int child = first + i;
+            moves[child] = buffer[i];
+            float weight = (float) Math.exp(priorScore(pos, buffer[i]));
+            priors[child] = weight;
+            total += weight;
+            states.set(child, UNEXPANDED);
+            visits.set(child, 0);
+            virtualLosses.set(child, 0);
+            results.set(child, 0);
+        }
+        for(int i = 0; i < count; i++) {
+            priors[first + i] /= total;
+        }
+
+        firstChild[node] = first;
+        childCount[node] = count;
+        states.set(node, EXPANDED);
+        return count;
+    }
+
+    /**
+     * Scores how promising a move looks before it is searched, in units of a softmax.
+     *
+     * @param pos   position the move is played in.
+     * @param move  legal move.
+     * @return      the score, 0 for an ordinary quiet move.
+     */
+    private static double priorScore(Position pos, int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int piece = pos.board[from];
+        double score = (Evaluation.MG[piece][to] - Evaluation.MG[piece][from]) * (pos.sideToMove == Position.WHITE ? 1 : -1) / 50.0;
+
+        if(Moves.promotion(move) == Position.QUEEN) {
+            score += 3;
+        }
+        if(pos.board[to] != Position.EMPTY || Moves.flag(move) == Moves.EN_PASSANT) {
+            int gain = See.see(pos, move);
+            score += gain >= 0 ? 1.5 + gain / 400.0 : -1;
+        }
+        return score;
+    }
+
+    /**
+     * Turns a score into the expected result of the game, from 0 for a loss to 1 for a win.
+     *
+     * @param score score in centipawns.
+     * @return      the expected result.
+     */
+    private static double expectedResult(int score) {
+        return 1 / (1 + Math.pow(10, -score / 400.0));
+    }
+
+    /**
+     * Makes the position the root, keeping the subtree of the old root if the position is one of its
+     * children or grandchildren and the arena has room to grow it.
+     *
+     * @param position  position to search.
+     */
+    private void setRoot(Position position) {
+        int next = -1;
+        if(rootPosition != null && size.get() < moves.length / 2) {
+            next = findDescendant(root, position.hash, 2);
+        }
+
+        rootPosition = position.copy();
+        if(next >= 0) {
+            root = next;
+            reused = visits.get(next);
+            return;
+        }
+
+        size.set(1);
+        root = 0;
+        moves[0] = Moves.NONE;
+        priors[0] = 1;
+        states.set(0, UNEXPANDED);
+        visits.set(0, 0);
+        virtualLosses.set(0, 0);
+        results.set(0, 0);
+        reused = 0;
+    }
+
+    /**
+     * Looks for the node of a position among the expanded descendants of a node, in
+     * <code>rootPosition</code> which is at that node.
+     *
+     * @param node  node to look under.
+     * @param hash  hash of the position.
+     * @param plies how many plies down to look.
+     * @return      index of the node, -1 if it isn't found.
+     */
+    private int findDescendant(int node, long hash, int plies) {
+        if(plies == 0 || states.get(node) != EXPANDED) {
+            return -1;
+        }
+        for(int child = firstChild[node], end = child + childCount[node]; child < end; child++) {
+            rootPosition.makeMove(moves[child]);
+            int found = rootPosition.hash == hash ? child : findDescendant(child, hash, plies - 1);
+            rootPosition.unmakeMove(moves[child]);
+            if(found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return  the root's child with the most playouts, -1 if the root has none.
+     */
+    private int bestChild() {
+        if(states.get(root) != EXPANDED) {
+            return -1;
+        }
+        int best = -1;
+        for(int child = firstChild[root], end = child + childCount[root]; child < end; child++) {
+            if(best < 0 || visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return  move with the most playouts so far, <code>Moves.NONE</code> if there is none.
+     */
+    public int bestMove() {
+        int best = bestChild();
+        return best < 0 ? Moves.NONE : moves[best];
+    }
+
+    /**
+     * Gets the average result of the best move as a score, so it can be compared with <code>Search</code>.
+     *
+     * @return  score in centipawns for the side to move at the root.
+     */
+    public int getBestScore() {
+        int best = bestChild();
+        if(best < 0 || visits.get(best) == 0) {
+            return 0;
+        }
+        double average = Math.min(Math.max((double) results.get(best) / UNIT / visits.get(best), 0.001), 0.999);
+        return (int) Math.round(-400 * Math.log10(1 / average - 1));
+    }
+
+    /**
+     * Limits later searches to a number of playouts.
+     *
+     * @param limit number of playouts, 0 for no limit.
+     */
+    public void setPlayoutLimit(long limit) {
+        playoutLimit = limit;
+    }
+
+    /**
+     * Asks the search to stop as soon as possible. Can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Forgets the tree, for example when a new game starts.
+     */
+    public void clear() {
+        rootPosition = null;
+    }
+
+    /**
+     * @return  number of playouts run by the last search.
+     */
+    public long getPlayouts() { return playouts.get(); }
+
+    /**
+     * @return  playouts per second of the last search, over all threads.
+     */
+    public long getPlayoutsPerSecond() {
+        return elapsed == 0 ? 0 : playouts.get() * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * @return  playouts below the root that were kept from earlier searches when the last one started.
+     */
+    public int getReusedPlayouts() { return reused; }
+
+    /**
+     * @return  number of nodes in the arena.
+     */
+    public int getTreeSize() { return size.get(); }
+}
@@ -0,0 +1,496 @@
+package engine;
+
+/**
+ * Generates moves for the engine into a preallocated <code>int</code> buffer of packed moves,
+ * instead of building a set of strings like <code>chess.Move</code> does.
+ * <p>
+ * Moves are pseudo-legal: they follow the movement rules of each piece, but can still leave the
+ * mover's own king in check. Castling is only generated if the king isn't in check and doesn't
+ * pass over an attacked square. <code>generateLegal</code> gives only the legal moves, using the
+ * checking and pinned pieces instead of making each move.
+ *
+ * @author  Bryle Tan
+ */
+public final class MoveGenerator {
+
+    /**
+     * largest number of moves any position can have.
+     */
+    public static final int MAX_MOVES = 256;
+
+    /**
+     * bitboard of the first rank.
+     */
+    private static final long RANK_1 = 0xFFL;
+
+    /**
+     * bitboard of the eighth rank.
+     */
+    private static final long RANK_8 = RANK_1 << 56;
+
+    /**
+     * Not instantiable, all generators are static.
+     */
+    private MoveGenerator() {
+    }
+
+    /**
+     * Generates all pseudo-legal moves of the side to move.
+     *
+     * @param pos   position to generate moves for.
+     * @param moves buffer the moves are written to, at least <code>MAX_MOVES</code> long.
+     * @return      number of moves written.
+     *
+     * @author      Bryle Tan
+     */
+    public static int generate(Position pos, int[] moves) {
+        int count = generateCaptures(pos, moves, 0);
+        return generateQuiets(pos, moves, count);
+    }
+
+    /**
+     * Generates the captures, enpassant captures and promotions of the side to move. This is all
+     * the quiescence search looks at, so the quiet moves are never generated there.
+     *
+     * @param pos   position to generate moves for.
+     * @param moves buffer the moves are written to.
+     * @param count number of moves already in the buffer.
+     * @return      new number of moves in the buffer.
+     *
+     * @author      Bryle Tan
+     */
+    public static int generateCaptures(Position pos, int[] moves, int count) {
+        int us = pos.sideToMove;
+        count = pawnMoves(pos, moves, count, true, false);
+        return pieceMoves(pos, moves, count, pos.colors[us ^ 1]);
+    }
+
+    /**
+     * Generates the moves of the side to move that neither capture nor promote, including castling.
+     *
+     * @param pos   position to generate moves for.
+     * @param moves buffer the moves are written to.
+     * @param count number of moves already in the buffer.
+     * @return      new number of moves in the buffer.
+     *
+     * @author      Bryle Tan
+     */
+    public static int generateQuiets(Position pos, int[] moves, int count) {
+        count = pawnMoves(pos, moves, count, false, true);
+        count = pieceMoves(pos, moves, count, ~pos.occupied);
+        return castlingMoves(pos, moves, count);
+    }
+
+    /**
+     * Adds the pawn moves of the side to move.
+     *
+     * @param pos       position to generate moves for.
+     * @param moves     buffer the moves are written to.
+     * @param count     number of moves already in the buffer.
+     * @param captures  <code>true</code> to add captures, enpassant and promotions.
+     * @param pushes    <code>true</code> to add pushes that don't promote.
+     * @return          new number of moves in the buffer.
+     */
+    static int pawnMoves(Position pos, int[] moves, int count, boolean captures, boolean pushes) {
+        int us = pos.sideToMove;
+        long pawns = pos.pieces[Position.piece(us, Position.PAWN)];
+        long empty = ~pos.occupied;
+        long enemies = pos.colors[us ^ 1];
+        long lastRank = us == Position.WHITE ? RANK_8 : RANK_1;
+        int forward = us == Position.WHITE ? 8 : -8;
+
+        for(long bb = pawns; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            int one = from + forward;
+
+            if((empty & (1L << one)) != 0) {
+                if(((1L << one) & lastRank) != 0) {
+                    if(captures) {
+                        count = promotions(moves, count, from, one);
+                    }
+                } else if(pushes) {
+                    moves[count++] = Moves.make(from, one, 0, Moves.NORMAL);
+
+                    int startRank = us == Position.WHITE ? 1 : 6;
+                    int two = one + forward;
+                    if((from >> 3) == startRank && (empty & (1L << two)) != 0) {
+                        moves[count++] = Moves.make(from, two, 0, Moves.DOUBLE_PUSH);
+                    }
+                }
+            }
+
+            if(!captures) {
+                continue;
+            }
+
+            for(long hits = Attacks.PAWN[us][from] & enemies; hits != 0; hits &= hits - 1) {
+                int to = Long.numberOfTrailingZeros(hits);
+                if(((1L << to) & lastRank) != 0) {
+                    count = promotions(moves, count, from, to);
+                } else {
+                    moves[count++] = Moves.make(from, to, 0, Moves.NORMAL);
+                }
+            }
+
+            if(pos.epSquare >= 0 && (Attacks.PAWN[us][from] & (1L << pos.epSquare)) != 0) {
+                moves[count++] = Moves.make(from, pos.epSquare, 0, Moves.EN_PASSANT);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the four promotions of a pawn move, queen first.
+     *
+     * @param moves     buffer the moves are written to.
+     * @param count     number of moves already in the buffer.
+     * @param from      square of the pawn.
+     * @param to        square on the last rank.
+     * @return          new number of moves in the buffer.
+     */
+    private static int promotions(int[] moves, int count, int from, int to) {
+        moves[count++] = Moves.make(from, to, Position.QUEEN, Moves.NORMAL);
+        moves[count++] = Moves.make(from, to, Position.KNIGHT, Moves.NORMAL);
+        moves[count++] = Moves.make(from, to, Position.ROOK, Moves.NORMAL);
+        moves[count++] = Moves.make(from, to, Position.BISHOP, Moves.NORMAL);
+        return count;
+    }
+
+    /**
+     * Adds the knight, bishop, rook, queen and king moves of the side to move, apart from castling.
+     *
+     * @param pos       position to generate moves for.
+     * @param moves     buffer the moves are written to.
+     * @param count     number of moves already in the buffer.
+     * @param targets   squares the pieces may move to.
+     * @return          new number of moves in the buffer.
+     */
+    static int pieceMoves(Position pos, int[] moves, int count, long targets) {
+        int us = pos.sideToMove;
+        long occupied = pos.occupied;
+
+        for(int type = Position.KNIGHT; type <= Position.KING; type++) {
+            for(long bb = pos.pieces[Position.piece(us, type)]; bb != 0; bb &= bb - 1) {
+                int from = Long.numberOfTrailingZeros(bb);
+                long attacks;
+                if(type == Position.KNIGHT) {
+                    attacks = Attacks.KNIGHT[from];
+                } else if(type == Position.BISHOP) {
+                    attacks = Attacks.bishop(from, occupied);
+                } else if(type == Position.ROOK) {
+                    attacks = Attacks.rook(from, occupied);
+                } else if(type == Position.QUEEN) {
+                    attacks = Attacks.queen(from, occupied);
+                } else {
+                    attacks = Attacks.KING[from];
+                }
+
+                for(long hits = attacks & targets; hits != 0; hits &= hits - 1) {
+                    moves[count++] = Moves.make(from, Long.numberOfTrailingZeros(hits), 0, Moves.NORMAL);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the castling moves of the side to move.
+     *
+     * @param pos       position to generate moves for.
+     * @param moves     buffer the moves are written to.
+     * @param count     number of moves already in the buffer.
+     * @return          new number of moves in the buffer.
+     */
+    static int castlingMoves(Position pos, int[] moves, int count) {
+        int king = pos.sideToMove == Position.WHITE ? 4 : 60;
+        if(canCastle(pos, true)) {
+            moves[count++] = Moves.make(king, king + 2, 0, Moves.CASTLE);
+        }
+        if(canCastle(pos, false)) {
+            moves[count++] = Moves.make(king, king - 2, 0, Moves.CASTLE);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the side to move can castle: it has the right to, the squares between the king and
+     * rook are empty, and the king isn't in check and doesn't pass over an attacked square.
+     *
+     * @param pos       position to check.
+     * @param kingside  <code>true</code> for kingside castling, <code>false</code> for queenside.
+     * @return          <code>true</code> if castling is allowed.
+     */
+    private static boolean canCastle(Position pos, boolean kingside) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        int right;
+        if(us == Position.WHITE) {
+            right = kingside ? Position.WHITE_KINGSIDE : Position.WHITE_QUEENSIDE;
+        } else {
+            right = kingside ? Position.BLACK_KINGSIDE : Position.BLACK_QUEENSIDE;
+        }
+        if((pos.castling & right) == 0) {
+            return false;
+        }
+
+        int king = us == Position.WHITE ? 4 : 60;
+        int step = kingside ? 1 : -1;
+        long between = kingside ? 3L << (king + 1) : 7L << (king - 3);
+
+        return (pos.occupied & between) == 0
+            && !pos.isAttacked(king, them)
+            && !pos.isAttacked(king + step, them)
+            && !pos.isAttacked(king + 2 * step, them);
+    }
+
+    /**
+     * Checks if a move, for example one taken from the transposition table or the killer moves, is a
+     * pseudo-legal move in this position, without generating any moves.
+     *
+     * @param pos   position to check.
+     * @param move  packed move.
+     * @return      <code>true</code> if the move would be generated by <code>generate</code>.
+     *
+     * @author      Bryle Tan
+     */
+    public static boolean isPseudoLegal(Position pos, int move) {
+        if(move == Moves.NONE) {
+            return false;
+        }
+
+        int us = pos.sideToMove;
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int flag = Moves.flag(move);
+        int promotion = Moves.promotion(move);
+        int piece = pos.board[from];
+        int target = pos.board[to];
+
+        if(piece == Position.EMPTY || Position.color(piece) != us) {
+            return false;
+        }
+        if(target != Position.EMPTY && Position.color(target) == us) {
+            return false;
+        }
+
+        int type = Position.type(piece);
+        long toBit = 1L << to;
+
+        if(flag == Moves.CASTLE) {
+            int king = us == Position.WHITE ? 4 : 60;
+            return type == Position.KING && from == king && promotion == 0
+                && ((to == king + 2 && canCastle(pos, true)) || (to == king - 2 && canCastle(pos, false)));
+        }
+
+        if(type == Position.PAWN) {
+            int forward = us == Position.WHITE ? 8 : -8;
+            boolean lastRank = (to >> 3) == (us == Position.WHITE ? 7 : 0);
+            if(lastRank ? promotion < Position.KNIGHT || promotion > Position.QUEEN : promotion != 0) {
+                return false;
+            }
+
+            if(flag == Moves.EN_PASSANT) {
+                return to == pos.epSquare && (Attacks.PAWN[us][from] & toBit) != 0;
+            }
+            if(flag == Moves.DOUBLE_PUSH) {
+                int startRank = us == Position.WHITE ? 1 : 6;
+                return (from >> 3) == startRank && to == from + 2 * forward
+                    && pos.board[from + forward] == Position.EMPTY && target == Position.EMPTY;
+            }
+            if(flag != Moves.NORMAL) {
+                return false;
+            }
+            if(to == from + forward) {
+                return target == Position.EMPTY;
+            }
+            return (Attacks.PAWN[us][from] & toBit) != 0 && target != Position.EMPTY;
+        }
+
+        if(flag != Moves.NORMAL || promotion != 0) {
+            return false;
+        }
+
+        long attacks;
+        if(type == Position.KNIGHT) {
+            attacks = Attacks.KNIGHT[from];
+        } else if(type == Position.BISHOP) {
+            attacks = Attacks.bishop(from, pos.occupied);
+        } else if(type == Position.ROOK) {
+            attacks = Attacks.rook(from, pos.occupied);
+        } else if(type == Position.QUEEN) {
+            attacks = Attacks.queen(from, pos.occupied);
+        } else {
+            attacks = Attacks.KING[from];
+        }
+        return (attacks & toBit) != 0;
+    }
+
+    /**
+     * Checks if the side to move has at least one legal move, stopping at the first one found.
+     *
+     * @param pos       position to check.
+     * @param buffer    scratch space for the moves, at least <code>MAX_MOVES</code> long.
+     * @return          <code>false</code> on checkmate or stalemate.
+     *
+     * @author          Bryle Tan
+     */
+    public static boolean hasLegalMove(Position pos, int[] buffer) {
+        return filterLegal(pos, buffer, true) > 0;
+    }
+
+    /**
+     * Generates the legal moves of the side to move, without making any of them.
+     * <p>
+     * The pieces giving check and the pieces pinned to the king are worked out once from the king's
+     * square. In check, a move other than a king move has to capture the checker or block its line,
+     * and in double check only the king can move. A pinned piece can only move along the line through
+     * the king and itself. A king move is legal if its square isn't attacked with the king taken off
+     * the board, so the king can't step back along the line of a checking slider. Enpassant takes two
+     * pawns off the board at once, so it is checked against the sliders with both pawns gone.
+     *
+     * @param pos   position to generate moves for.
+     * @param moves buffer the moves are written to, at least <code>MAX_MOVES</code> long.
+     * @return      number of moves written.
+     *
+     * @author      Bryle Tan
+     */
+    public static int generateLegal(Position pos, int[] moves) {
+        return filterLegal(pos, moves, false);
+    }
+
+    /**
+     * Generates the pseudo-legal moves of the side to move and keeps the legal ones, as described in
+     * <code>generateLegal</code>.
+     *
+     * @param pos       position to generate moves for.
+     * @param moves     buffer the moves are written to, at least <code>MAX_MOVES</code> long.
+     * @param firstOnly <code>true</code> to stop at the first legal move.
+     * @return          number of legal moves written.
+     */
+    private static int filterLegal(Position pos, int[] moves, boolean firstOnly) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        int king = pos.kingSquare(us);
+        long checkers = pos.attackersTo(king, pos.occupied) & pos.colors[them];
+        boolean doubleCheck = (checkers & (checkers - 1)) != 0;
+        long targets = checkers == 0 ? -1L : checkers | Attacks.BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+        long pinned = pinned(pos, us, king);
+        long kingless = pos.occupied ^ (1L << king);
+
+        int pseudo = generate(pos, moves);
+        int count = 0;
+        for(int i = 0; i < pseudo; i++) {
+            int move = moves[i];
+            int from = Moves.from(move);
+            int to = Moves.to(move);
+
+            boolean legal;
+            if(from == king) {
+                // castling is only generated when the king and the squares it crosses are safe
+                legal = Moves.flag(move) == Moves.CASTLE
+                    || (pos.attackersTo(to, kingless) & pos.colors[them]) == 0;
+            } else if(doubleCheck) {
+                legal = false;
+            } else if(Moves.flag(move) == Moves.EN_PASSANT) {
+                legal = isEnPassantLegal(pos, from, to, king);
+            } else {
+                legal = (targets & (1L << to)) != 0
+                    && ((pinned & (1L << from)) == 0 || (Attacks.LINE[king][from] & (1L << to)) != 0);
+            }
+
+            if(legal) {
+                moves[count++] = move;
+                if(firstOnly) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the pieces of a side that are pinned to its king: each is the only piece between the king
+     * and an enemy slider that would attack the king along that line.
+     *
+     * @param pos   position to look at.
+     * @param us    color of the king.
+     * @param king  square of the king.
+     * @return      bitboard of the pinned pieces.
+     */
+    private static long pinned(Position pos, int us, int king) {
+        int them = us ^ 1;
+        long queens = pos.pieces[Position.piece(them, Position.QUEEN)];
+        long snipers = (Attacks.rook(king, 0) & (pos.pieces[Position.piece(them, Position.ROOK)] | queens))
+            | (Attacks.bishop(king, 0) & (pos.pieces[Position.piece(them, Position.BISHOP)] | queens));
+
+        long pinned = 0;
+        for(; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Attacks.BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & pos.occupied;
+            if(blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & pos.colors[us];
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Checks if an enpassant capture leaves the mover's king safe, by looking at the attackers of the
+     * king with the capturing pawn moved and the captured pawn gone.
+     *
+     * @param pos   position to check.
+     * @param from  square of the capturing pawn.
+     * @param to    enpassant square.
+     * @param king  square of the mover's king.
+     * @return      <code>true</code> if the capture is legal.
+     */
+    private static boolean isEnPassantLegal(Position pos, int from, int to, int king) {
+        int us = pos.sideToMove;
+        int captured = us == Position.WHITE ? to - 8 : to + 8;
+        long occupancy = (pos.occupied ^ (1L << from) ^ (1L << captured)) | (1L << to);
+        // the captured pawn isn't in the occupancy any more, so it can't count as an attacker
+        return (pos.attackersTo(king, occupancy) & pos.colors[us ^ 1]) == 0;
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree to a depth, the standard test of a move generator.
+     *
+     * @param pos       position to count from.
+     * @param depth     depth of the tree, at least 1.
+     * @param buffers   a move buffer for each remaining ply, at least <code>depth</code> of them.
+     * @return          number of move sequences of length <code>depth</code>.
+     *
+     * @author          Bryle Tan
+     */
+    public static long perft(Position pos, int depth, int[][] buffers) {
+        int[] moves = buffers[depth - 1];
+        int count = generateLegal(pos, moves);
+        if(depth == 1) {
+            return count;
+        }
+
+        long nodes = 0;
+        for(int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            nodes += perft(pos, depth - 1, buffers);
+            pos.unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Checks if a pseudo-legal move leaves the mover's king safe, by making and unmaking it.
+     *
+     * @param pos   position the move is made on.
+     * @param move  pseudo-legal move.
+     * @return      <code>true</code> if the move is legal.
+     */
+    public static boolean isLegal(Position pos, int move) {
+        int us = pos.sideToMove;
+        pos.makeMove(move);
+        boolean legal = !pos.inCheck(us);
+        pos.unmakeMove(move);
+        return legal;
+    }
+}
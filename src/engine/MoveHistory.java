@@ -0,0 +1,141 @@
+package engine;
+
+/**
+ * Tables the search learns from while it runs, used by <code>MovePicker</code> to guess which
+ * quiet moves are likely to cause a cutoff.
+ * <ul>
+ * <li>killer moves: the last two quiet moves that caused a cutoff at each ply.</li>
+ * <li>history: a butterfly table, indexed by side, starting square and ending square, that rewards
+ * quiet moves causing cutoffs and punishes quiet moves tried before them.</li>
+ * <li>counter moves: the quiet move that last refuted each previous move, indexed by the piece that
+ * made the previous move and where it went.</li>
+ * </ul>
+ *
+ * @author  Bryle Tan
+ */
+public class MoveHistory {
+
+    /**
+     * largest absolute value a history entry can reach.
+     */
+    public static final int HISTORY_MAX = 16384;
+
+    /**
+     * two killer moves for each ply.
+     */
+    private final int[][] killers = new int[Search.MAX_PLY][2];
+
+    /**
+     * butterfly history table, indexed by side, starting square and ending square.
+     */
+    private final int[][][] history = new int[2][64][64];
+
+    /**
+     * counter move table, indexed by the piece code and ending square of the previous move.
+     */
+    private final int[][] counters = new int[12][64];
+
+    /**
+     * Forgets everything learned, for example when a new game starts.
+     */
+    public void clear() {
+        for(int[] ply : killers) {
+            ply[0] = Moves.NONE;
+            ply[1] = Moves.NONE;
+        }
+        for(int[][] side : history) {
+            for(int[] from : side) {
+                java.util.Arrays.fill(from, 0);
+            }
+        }
+        for(int[] piece : counters) {
+            java.util.Arrays.fill(piece, Moves.NONE);
+        }
+    }
+
+    /**
+     * Clears the killer moves only, so a new search doesn't reuse killers from different plies.
+     */
+    public void clearKillers() {
+        for(int[] ply : killers) {
+            ply[0] = Moves.NONE;
+            ply[1] = Moves.NONE;
+        }
+    }
+
+    /**
+     * @param ply   distance from the root.
+     * @param slot  0 for the newest killer, 1 for the older one.
+     * @return      the killer move, <code>Moves.NONE</code> if there is none.
+     */
+    public int killer(int ply, int slot) { return killers[ply][slot]; }
+
+    /**
+     * @param side  color of the side to move.
+     * @param move  quiet move.
+     * @return      history score of the move.
+     */
+    public int history(int side, int move) { return history[side][Moves.from(move)][Moves.to(move)]; }
+
+    /**
+     * Gets the counter move to the previous move.
+     *
+     * @param pos       position after the previous move.
+     * @param previous  previous move, <code>Moves.NONE</code> at the root.
+     * @return          the counter move, <code>Moves.NONE</code> if there is none.
+     */
+    public int counter(Position pos, int previous) {
+        if(previous == Moves.NONE) {
+            return Moves.NONE;
+        }
+        int to = Moves.to(previous);
+        return counters[pos.board[to]][to];
+    }
+
+    /**
+     * Records a quiet move that caused a cutoff.
+     *
+     * @param pos       position the move was played in.
+     * @param move      the quiet move.
+     * @param previous  the move before it, <code>Moves.NONE</code> at the root.
+     * @param ply       distance from the root.
+     * @param depth     remaining depth of the node, deeper cutoffs count for more.
+     * @param tried     quiet moves tried before the cutoff, which get a penalty.
+     * @param triedFrom index of the first tried move in <code>tried</code>.
+     * @param triedTo   index after the last tried move.
+     */
+    public void update(Position pos, int move, int previous, int ply, int depth, int[] tried, int triedFrom, int triedTo) {
+        if(killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        if(previous != Moves.NONE) {
+            int to = Moves.to(previous);
+            counters[pos.board[to]][to] = move;
+        }
+
+        int side = pos.sideToMove;
+        int bonus = Math.min(depth * depth, 400);
+        adjust(side, move, bonus);
+        for(int i = triedFrom; i < triedTo; i++) {
+            if(tried[i] != move) {
+                adjust(side, tried[i], -bonus);
+            }
+        }
+    }
+
+    /**
+     * Changes a history entry, scaling the change down as the entry nears <code>HISTORY_MAX</code>
+     * so entries never overflow and old results slowly fade.
+     *
+     * @param side  color of the side to move.
+     * @param move  quiet move.
+     * @param bonus amount to add, negative for a penalty.
+     */
+    private void adjust(int side, int move, int bonus) {
+        int[] entry = history[side][Moves.from(move)];
+        int to = Moves.to(move);
+        entry[to] += bonus - entry[to] * Math.abs(bonus) / HISTORY_MAX;
+    }
+}
@@ -0,0 +1,366 @@
+package engine;
+
+/**
+ * Hands out the moves of a position one at a time, best guesses first, so the search gets its
+ * cutoffs as early as possible. Moves come in stages:
+ * <ol>
+ * <li>the move from the transposition table,</li>
+ * <li>captures and promotions that don't lose material, most valuable victim first and least
+ * valuable attacker first among equal victims,</li>
+ * <li>the two killer moves of the ply,</li>
+ * <li>the counter move to the previous move,</li>
+ * <li>the other quiet moves, by their history score,</li>
+ * <li>captures that lose material according to <code>See</code>.</li>
+ * </ol>
+ * Each stage is picked lazily with a selection sort step per move, from buffers allocated once,
+ * so a cutoff early in the list skips scoring and sorting everything after it. Quiet moves are
+ * only generated once the picker gets to them.
+ *
+ * @author  Bryle Tan
+ */
+public class MovePicker {
+
+    /**
+     * stage handing out the transposition table move.
+     */
+    public static final int HASH = 0;
+
+    /**
+     * stage generating the moves, after the hash move has been tried.
+     */
+    public static final int GENERATE = 1;
+
+    /**
+     * stage handing out winning and equal captures.
+     */
+    public static final int GOOD_CAPTURES = 2;
+
+    /**
+     * stage handing out the killer moves.
+     */
+    public static final int KILLERS = 3;
+
+    /**
+     * stage handing out the counter move.
+     */
+    public static final int COUNTER = 4;
+
+    /**
+     * stage handing out the remaining quiet moves.
+     */
+    public static final int QUIETS = 5;
+
+    /**
+     * stage handing out losing captures.
+     */
+    public static final int BAD_CAPTURES = 6;
+
+    /**
+     * stage after every move has been handed out.
+     */
+    public static final int DONE = 7;
+
+    /**
+     * generated moves, captures first then quiet moves.
+     */
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * ordering scores of the moves in <code>moves</code>.
+     */
+    private final int[] scores = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * captures found to lose material, tried last.
+     */
+    private final int[] badCaptures = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * position the moves are for.
+     */
+    private Position pos;
+
+    /**
+     * history tables of the search.
+     */
+    private MoveHistory history;
+
+    /**
+     * current stage.
+     */
+    private int stage;
+
+    /**
+     * stage the last handed out move came from.
+     */
+    private int moveStage;
+
+    /**
+     * move from the transposition table.
+     */
+    private int hashMove;
+
+    /**
+     * killer moves and the counter move, in the order they are tried.
+     */
+    private final int[] refutations = new int[3];
+
+    /**
+     * index of the next move to hand out in the current stage.
+     */
+    private int index;
+
+    /**
+     * number of captures at the front of <code>moves</code>.
+     */
+    private int captureCount;
+
+    /**
+     * number of moves in <code>moves</code>.
+     */
+    private int moveCount;
+
+    /**
+     * number of moves in <code>badCaptures</code>.
+     */
+    private int badCount;
+
+    /**
+     * index of the next bad capture to hand out.
+     */
+    private int badIndex;
+
+    /**
+     * <code>true</code> if only winning and equal captures are handed out, for the quiescence search.
+     */
+    private boolean capturesOnly;
+
+    /**
+     * Prepares the picker for a new node.
+     *
+     * @param position  position to pick moves for.
+     * @param tables    history tables of the search.
+     * @param ttMove    move from the transposition table, <code>Moves.NONE</code> if there is none.
+     * @param ply       distance from the root.
+     * @param previous  move that led to this position, <code>Moves.NONE</code> at the root.
+     */
+    public void init(Position position, MoveHistory tables, int ttMove, int ply, int previous) {
+        pos = position;
+        history = tables;
+        hashMove = MoveGenerator.isPseudoLegal(position, ttMove) ? ttMove : Moves.NONE;
+        stage = HASH;
+        moveStage = HASH;
+        index = 0;
+        moveCount = 0;
+        captureCount = 0;
+        badCount = 0;
+        badIndex = 0;
+        capturesOnly = false;
+
+        refutations[0] = tables.killer(ply, 0);
+        refutations[1] = tables.killer(ply, 1);
+        refutations[2] = tables.counter(position, previous);
+    }
+
+    /**
+     * Prepares the picker for a quiescence node, where only captures and promotions that don't lose
+     * material according to <code>See</code> are handed out.
+     *
+     * @param position  position to pick moves for.
+     */
+    public void initQuiescence(Position position) {
+        pos = position;
+        hashMove = Moves.NONE;
+        stage = GENERATE;
+        moveStage = GENERATE;
+        index = 0;
+        moveCount = 0;
+        captureCount = 0;
+        badCount = 0;
+        badIndex = 0;
+        capturesOnly = true;
+    }
+
+    /**
+     * @return  the stage the last handed out move came from.
+     */
+    public int stage() { return moveStage; }
+
+    /**
+     * Gets the next move to try.
+     *
+     * @return  the next pseudo-legal move, <code>Moves.NONE</code> once all moves have been handed out.
+     *
+     * @author  Bryle Tan
+     */
+    public int next() {
+        while(true) {
+            switch(stage) {
+                case HASH:
+                    stage = GENERATE;
+                    if(hashMove != Moves.NONE) {
+                        moveStage = HASH;
+                        return hashMove;
+                    }
+                    break;
+
+                case GENERATE:
+                    generateCaptures();
+                    stage = GOOD_CAPTURES;
+                    break;
+
+                case GOOD_CAPTURES:
+                    while(index < captureCount) {
+                        int move = pickBest(index, captureCount);
+                        index++;
+                        if(move == hashMove) {
+                            continue;
+                        }
+                        if(See.see(pos, move) < 0) {
+                            badCaptures[badCount++] = move;
+                            continue;
+                        }
+                        moveStage = GOOD_CAPTURES;
+                        return move;
+                    }
+                    // the quiescence search stops here, losing captures aren't worth searching
+                    stage = capturesOnly ? DONE : KILLERS;
+                    index = 0;
+                    break;
+
+                case KILLERS:
+                case COUNTER:
+                    while(index < refutations.length) {
+                        int move = refutations[index++];
+                        if(isRefutation(move, index - 1)) {
+                            moveStage = index == refutations.length ? COUNTER : KILLERS;
+                            return move;
+                        }
+                    }
+                    stage = QUIETS;
+                    index = captureCount;
+                    generateQuiets();
+                    break;
+
+                case QUIETS:
+                    while(index < moveCount) {
+                        int move = pickBest(index, moveCount);
+                        index++;
+                        if(move == hashMove || move == refutations[0] || move == refutations[1] || move == refutations[2]) {
+                            continue;
+                        }
+                        moveStage = QUIETS;
+                        return move;
+                    }
+                    stage = BAD_CAPTURES;
+                    break;
+
+                case BAD_CAPTURES:
+                    if(badIndex < badCount) {
+                        moveStage = BAD_CAPTURES;
+                        return badCaptures[badIndex++];
+                    }
+                    stage = DONE;
+                    break;
+
+                default:
+                    moveStage = DONE;
+                    return Moves.NONE;
+            }
+        }
+    }
+
+    /**
+     * Generates the captures and promotions and scores them by most valuable victim, least valuable attacker.
+     */
+    private void generateCaptures() {
+        captureCount = MoveGenerator.generateCaptures(pos, moves, 0);
+        moveCount = captureCount;
+
+        for(int i = 0; i < captureCount; i++) {
+            int move = moves[i];
+            int target = pos.board[Moves.to(move)];
+            int attacker = Position.type(pos.board[Moves.from(move)]);
+            int score = 0;
+            if(target != Position.EMPTY) {
+                score = See.VALUE[Position.type(target)] * 8 - attacker;
+            } else if(Moves.flag(move) == Moves.EN_PASSANT) {
+                score = See.VALUE[Position.PAWN] * 8 - attacker;
+            }
+            if(Moves.promotion(move) != 0) {
+                score += See.VALUE[Moves.promotion(move)];
+            }
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Generates the quiet moves after the captures and scores them by their history, only once the
+     * picker gets to them.
+     */
+    private void generateQuiets() {
+        moveCount = MoveGenerator.generateQuiets(pos, moves, captureCount);
+
+        int side = pos.sideToMove;
+        for(int i = captureCount; i < moveCount; i++) {
+            scores[i] = history.history(side, moves[i]);
+        }
+    }
+
+    /**
+     * Checks if a killer or counter move can be played here and hasn't been tried yet.
+     *
+     * @param move  killer or counter move.
+     * @param slot  index of the move in <code>refutations</code>.
+     * @return      <code>true</code> if the move should be tried now.
+     */
+    private boolean isRefutation(int move, int slot) {
+        if(move == Moves.NONE || move == hashMove || isCapture(move)) {
+            return false;
+        }
+        for(int i = 0; i < slot; i++) {
+            if(refutations[i] == move) {
+                return false;
+            }
+        }
+        return MoveGenerator.isPseudoLegal(pos, move);
+    }
+
+    /**
+     * Checks if a move is handed out with the captures, which includes promotions.
+     *
+     * @param move  packed move.
+     * @return      <code>true</code> for captures, enpassant and promotions.
+     */
+    private boolean isCapture(int move) {
+        return pos.board[Moves.to(move)] != Position.EMPTY
+            || Moves.flag(move) == Moves.EN_PASSANT
+            || Moves.promotion(move) != 0;
+    }
+
+    /**
+     * Swaps the best scored move in <code>[from, to)</code> to index <code>from</code>.
+     *
+     * @param from  first index to look at.
+     * @param to    index after the last one to look at.
+     * @return      the best move.
+     */
+    private int pickBest(int from, int to) {
+        int best = from;
+        for(int j = from + 1; j < to; j++) {
+            if(scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+
+        int move = moves[best];
+        moves[best] = moves[from];
+        moves[from] = move;
+
+        int score = scores[best];
+        scores[best] = scores[from];
+        scores[from] = score;
+
+        return move;
+    }
+}
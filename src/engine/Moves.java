@@ -0,0 +1,355 @@
+package engine;
+
+/**
+ * Helpers for the packed <code>int</code> moves used by the engine.
+ * <p>
+ * Bits 0-5 hold the starting square, bits 6-11 the ending square, bits 12-14 the piece type a pawn
+ * promotes to (0 if none) and bits 15-16 a flag for special moves. Squares are numbered 0 for a1
+ * up to 63 for h8. A move of 0 is never a legal move and is used as "no move".
+ *
+ * @author  Bryle Tan
+ */
+public final class Moves {
+
+    /**
+     * value used for "no move".
+     */
+    public static final int NONE = 0;
+
+    /**
+     * flag for a normal move or capture.
+     */
+    public static final int NORMAL = 0;
+
+    /**
+     * flag for a castling move, given as the king's move.
+     */
+    public static final int CASTLE = 1;
+
+    /**
+     * flag for an enpassant capture.
+     */
+    public static final int EN_PASSANT = 2;
+
+    /**
+     * flag for a pawn moving two squares from its starting rank.
+     */
+    public static final int DOUBLE_PUSH = 3;
+
+    /**
+     * Not instantiable, all helpers are static.
+     */
+    private Moves() {
+    }
+
+    /**
+     * Packs a move.
+     *
+     * @param from      starting square.
+     * @param to        ending square.
+     * @param promotion piece type the pawn promotes to, 0 if none.
+     * @param flag      one of <code>NORMAL</code>, <code>CASTLE</code>, <code>EN_PASSANT</code>, <code>DOUBLE_PUSH</code>.
+     * @return          the packed move.
+     */
+    public static int make(int from, int to, int promotion, int flag) {
+        return from | (to << 6) | (promotion << 12) | (flag << 15);
+    }
+
+    /**
+     * @param move  packed move.
+     * @return      starting square of the move.
+     */
+    public static int from(int move) { return move & 63; }
+
+    /**
+     * @param move  packed move.
+     * @return      ending square of the move.
+     */
+    public static int to(int move) { return (move >>> 6) & 63; }
+
+    /**
+     * @param move  packed move.
+     * @return      piece type the pawn promotes to, 0 if the move is not a promotion.
+     */
+    public static int promotion(int move) { return (move >>> 12) & 7; }
+
+    /**
+     * @param move  packed move.
+     * @return      special move flag.
+     */
+    public static int flag(int move) { return (move >>> 15) & 3; }
+
+    /**
+     * Converts a square index to filerank notation, for example 12 to "e2".
+     *
+     * @param sq    square index.
+     * @return      string of the square in filerank notation.
+     */
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('1' + (sq >> 3));
+    }
+
+    /**
+     * Converts a move to the input format read by <code>chess.Chess</code>, for example "e7 e8 Q".
+     *
+     * @param move  packed move.
+     * @return      string representation of the move.
+     */
+    public static String toInput(int move) {
+        String input = squareName(from(move)) + " " + squareName(to(move));
+        if(promotion(move) != 0) {
+            input += " " + "PNBRQK".charAt(promotion(move));
+        }
+        return input;
+    }
+
+    /**
+     * Reads a typed move, for example "e2 e4", "e7 e8 N", "e2e4" or "e7e8q", in a single pass and
+     * without creating any objects. A trailing draw offer, as in "e2 e4 draw?", is allowed and ignored.
+     *
+     * @param input text of the move.
+     * @return      the move with its squares and promotion, but no flag, <code>NONE</code> if the text
+     *              isn't a move. <code>Position.moveFor</code> fills in the flag.
+     *
+     * @author      Bryle Tan
+     */
+    public static int parse(CharSequence input) {
+        return parse(input, null, 0, input.length());
+    }
+
+    /**
+     * Reads a typed move from bytes, as received from a network connection, like
+     * <code>parse(CharSequence)</code>.
+     *
+     * @param buffer    bytes holding the move as ASCII.
+     * @param offset    index of the first byte of the move.
+     * @param length    number of bytes of the move.
+     * @return          the move, <code>NONE</code> if the bytes aren't a move.
+     */
+    public static int parse(byte[] buffer, int offset, int length) {
+        return parse(null, buffer, offset, length);
+    }
+
+    /**
+     * Reads a typed move from either characters or bytes, so both kinds of input share one parser.
+     *
+     * @param chars     characters of the move, <code>null</code> to read <code>bytes</code>.
+     * @param bytes     bytes of the move, read from <code>offset</code>.
+     * @param offset    index of the first byte, only used for <code>bytes</code>.
+     * @param length    number of characters or bytes.
+     * @return          the move, <code>NONE</code> if the input isn't a move.
+     */
+    private static int parse(CharSequence chars, byte[] bytes, int offset, int length) {
+        int i = skipSpaces(chars, bytes, offset, length, 0);
+        if(i + 2 > length) {
+            return NONE;
+        }
+        int from = square(charAt(chars, bytes, offset, i), charAt(chars, bytes, offset, i + 1));
+        i = skipSpaces(chars, bytes, offset, length, i + 2);
+        if(from < 0 || i + 2 > length) {
+            return NONE;
+        }
+        int to = square(charAt(chars, bytes, offset, i), charAt(chars, bytes, offset, i + 1));
+        if(to < 0 || to == from) {
+            return NONE;
+        }
+
+        int promotion = 0;
+        int start = i + 2;
+        i = skipSpaces(chars, bytes, offset, length, start);
+        if(i < length) {
+            int piece = "nbrq".indexOf(Character.toLowerCase(charAt(chars, bytes, offset, i)));
+            boolean alone = i + 1 == length || charAt(chars, bytes, offset, i + 1) == ' ';
+            if(piece >= 0 && alone) {
+                promotion = Position.KNIGHT + piece;
+                start = i + 1;
+                i = skipSpaces(chars, bytes, offset, length, start);
+            }
+        }
+
+        // only a draw offer may follow, and it has to be set apart by a space
+        if(i < length) {
+            String draw = "draw?";
+            if(i == start || length - i < draw.length()) {
+                return NONE;
+            }
+            for(int j = 0; j < draw.length(); j++) {
+                if(charAt(chars, bytes, offset, i + j) != draw.charAt(j)) {
+                    return NONE;
+                }
+            }
+            if(skipSpaces(chars, bytes, offset, length, i + draw.length()) != length) {
+                return NONE;
+            }
+        }
+
+        return make(from, to, promotion, NORMAL);
+    }
+
+    /**
+     * @param chars     characters of the input, <code>null</code> to read <code>bytes</code>.
+     * @param bytes     bytes of the input.
+     * @param offset    index of the first byte.
+     * @param index     index of the character within the input.
+     * @return          the character.
+     */
+    private static char charAt(CharSequence chars, byte[] bytes, int offset, int index) {
+        return chars != null ? chars.charAt(index) : (char) (bytes[offset + index] & 0xFF);
+    }
+
+    /**
+     * @param chars     characters of the input, <code>null</code> to read <code>bytes</code>.
+     * @param bytes     bytes of the input.
+     * @param offset    index of the first byte.
+     * @param length    length of the input.
+     * @param index     index to start at.
+     * @return          index of the first character from <code>index</code> that isn't a space.
+     */
+    private static int skipSpaces(CharSequence chars, byte[] bytes, int offset, int length, int index) {
+        while(index < length && charAt(chars, bytes, offset, index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @param file  file letter, 'a' to 'h'.
+     * @param rank  rank digit, '1' to '8'.
+     * @return      square index, -1 if the characters aren't a square.
+     */
+    private static int square(char file, char rank) {
+        if(file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    /**
+     * Converts a move to coordinate notation, for example "e7e8q".
+     *
+     * @param move  packed move.
+     * @return      string representation of the move.
+     */
+    public static String toUci(int move) {
+        String uci = squareName(from(move)) + squareName(to(move));
+        if(promotion(move) != 0) {
+            uci += "pnbrqk".charAt(promotion(move));
+        }
+        return uci;
+    }
+
+    /**
+     * Converts a move to standard algebraic notation as used in PGN, for example "Nbd7", "exd6",
+     * "e8=Q+" or "O-O". The move must be legal in the position.
+     *
+     * @param pos   position the move is played in. It is left unchanged.
+     * @param move  packed legal move.
+     * @return      string representation of the move.
+     *
+     * @author      Bryle Tan
+     */
+    public static String toSan(Position pos, int move) {
+        return toSan(pos, move, new int[MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * Converts a move to standard algebraic notation, with scratch space for the moves it looks at,
+     * so a caller converting every move of a game doesn't allocate for each one.
+     *
+     * @param pos       position the move is played in. It is left unchanged.
+     * @param move      packed legal move.
+     * @param buffer    scratch space, at least <code>MoveGenerator.MAX_MOVES</code> long.
+     * @return          string representation of the move.
+     */
+    public static String toSan(Position pos, int move, int[] buffer) {
+        int from = from(move);
+        int to = to(move);
+        int type = Position.type(pos.board[from]);
+        boolean capture = pos.board[to] != Position.EMPTY || flag(move) == EN_PASSANT;
+        StringBuilder san = new StringBuilder();
+
+        if(flag(move) == CASTLE) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else if(type == Position.PAWN) {
+            if(capture) {
+                san.append((char) ('a' + (from & 7))).append('x');
+            }
+            san.append(squareName(to));
+            if(promotion(move) != 0) {
+                san.append('=').append(Position.PIECE_LETTERS.charAt(promotion(move)));
+            }
+        } else {
+            san.append(Position.PIECE_LETTERS.charAt(type));
+
+            // another piece of the same type that can legally go to the same square needs telling apart
+            boolean sameFile = false;
+            boolean sameRank = false;
+            boolean ambiguous = false;
+            int count = MoveGenerator.generateLegal(pos, buffer);
+            for(int i = 0; i < count; i++) {
+                int other = from(buffer[i]);
+                if(to(buffer[i]) != to || other == from || pos.board[other] != pos.board[from]) {
+                    continue;
+                }
+                ambiguous = true;
+                sameFile |= (other & 7) == (from & 7);
+                sameRank |= (other >> 3) == (from >> 3);
+            }
+            if(ambiguous) {
+                if(!sameFile) {
+                    san.append((char) ('a' + (from & 7)));
+                } else if(!sameRank) {
+                    san.append((char) ('1' + (from >> 3)));
+                } else {
+                    san.append(squareName(from));
+                }
+            }
+
+            if(capture) {
+                san.append('x');
+            }
+            san.append(squareName(to));
+        }
+
+        pos.makeMove(move);
+        if(pos.inCheck(pos.sideToMove)) {
+            san.append(MoveGenerator.hasLegalMove(pos, buffer) ? '+' : '#');
+        }
+        pos.unmakeMove(move);
+
+        return san.toString();
+    }
+
+    /**
+     * Finds the legal move written in standard algebraic notation, for example the best move of an
+     * EPD test. Check marks and annotations such as "+", "#", "!" and "?" are ignored.
+     *
+     * @param pos   position the move is played in. It is left unchanged.
+     * @param san   the move, for example "Nxe5+" or "e8=Q".
+     * @return      the packed move, <code>NONE</code> if no legal move matches.
+     *
+     * @author      Bryle Tan
+     */
+    public static int fromSan(Position pos, String san) {
+        String wanted = stripSan(san);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(pos, moves);
+        for(int i = 0; i < count; i++) {
+            if(stripSan(toSan(pos, moves[i])).equals(wanted)) {
+                return moves[i];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Removes check marks and annotations from a move in standard algebraic notation, and writes
+     * castling with the letter O.
+     *
+     * @param san   the move.
+     * @return      the bare move.
+     */
+    private static String stripSan(String san) {
+        return san.replaceAll("[+#!?]", "").replace('0', 'O');
+    }
+}
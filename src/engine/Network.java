@@ -0,0 +1,290 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Weights of an efficiently updatable neural network (NNUE) evaluation, an alternative to the
+ * hand-written terms of <code>Evaluation</code>.
+ * <p>
+ * The network has 768 inputs, one for each piece of each color on each square, seen from one side:
+ * the side's own pieces come first, and for black the board is flipped so its pieces move up the
+ * board too. A first layer of <code>HIDDEN</code> int16 neurons is worked out for both sides and kept
+ * up to date by an <code>Accumulator</code> as pieces move. Its neurons are clipped to 0 to
+ * <code>QA</code> and weighed by the output layer, the side to move's neurons first:
+ * <pre>
+ *     score = (sum(clip(us) * out[0..H]) + sum(clip(them) * out[H..2H]) + bias) * scale / (QA * QB)
+ * </pre>
+ * <p>
+ * Sums over the neurons use the SIMD lanes of <code>jdk.incubator.vector</code> when the JVM is
+ * started with <code>--add-modules jdk.incubator.vector</code>, and plain loops otherwise.
+ * <p>
+ * A network file is little-endian: the int <code>MAGIC</code>, the hidden size, the scale, then the
+ * first layer weights (768 rows of <code>HIDDEN</code> shorts), its biases, the output weights and
+ * the int output bias. It is memory-mapped to read it.
+ *
+ * @author  Bryle Tan
+ */
+public class Network {
+
+    /**
+     * first int of a network file, "NNUE" in ASCII.
+     */
+    public static final int MAGIC = 0x4E4E5545;
+
+    /**
+     * number of inputs: 2 colors, 6 piece types, 64 squares.
+     */
+    public static final int INPUTS = 768;
+
+    /**
+     * number of neurons in the first layer, for each side.
+     */
+    public static final int HIDDEN = 256;
+
+    /**
+     * largest value of a first layer neuron after clipping.
+     */
+    public static final int QA = 255;
+
+    /**
+     * quantization of the output weights: a weight of <code>QB</code> stands for 1.
+     */
+    public static final int QB = 64;
+
+    /**
+     * <code>true</code> if the neuron sums use the vector API.
+     */
+    private static boolean vectorized = isVectorApiAvailable();
+
+    /**
+     * first layer weights, <code>HIDDEN</code> for each input.
+     */
+    final short[] featureWeights = new short[INPUTS * HIDDEN];
+
+    /**
+     * first layer biases.
+     */
+    final short[] featureBias = new short[HIDDEN];
+
+    /**
+     * output weights, the side to move's neurons first.
+     */
+    final short[] outputWeights = new short[2 * HIDDEN];
+
+    /**
+     * output bias.
+     */
+    int outputBias;
+
+    /**
+     * centipawns of an output of <code>QA * QB</code>.
+     */
+    int scale;
+
+    /**
+     * Reads a network file by mapping it into memory.
+     *
+     * @param path  network file.
+     * @return      the network.
+     * @throws      IOException if the file can't be read.
+     * @throws      IllegalArgumentException if the file isn't a network of this size.
+     *
+     * @author      Bryle Tan
+     */
+    public static Network load(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if(buffer.remaining() != fileSize() || buffer.getInt() != MAGIC || buffer.getInt() != HIDDEN) {
+                throw new IllegalArgumentException("not a " + HIDDEN + " neuron network: " + path);
+            }
+
+            Network network = new Network();
+            network.scale = buffer.getInt();
+            buffer.asShortBuffer().get(network.featureWeights);
+            buffer.position(buffer.position() + 2 * network.featureWeights.length);
+            buffer.asShortBuffer().get(network.featureBias);
+            buffer.position(buffer.position() + 2 * network.featureBias.length);
+            buffer.asShortBuffer().get(network.outputWeights);
+            buffer.position(buffer.position() + 2 * network.outputWeights.length);
+            network.outputBias = buffer.getInt();
+            return network;
+        }
+    }
+
+    /**
+     * Writes the network to a file that <code>load</code> reads.
+     *
+     * @param path  file to write.
+     * @throws      IOException if the file can't be written.
+     */
+    public void save(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(HIDDEN).putInt(scale);
+        for(short weight : featureWeights) {
+            buffer.putShort(weight);
+        }
+        for(short bias : featureBias) {
+            buffer.putShort(bias);
+        }
+        for(short weight : outputWeights) {
+            buffer.putShort(weight);
+        }
+        buffer.putInt(outputBias);
+
+        Files.write(path, buffer.array());
+    }
+
+    /**
+     * @return  size of a network file in bytes.
+     */
+    private static int fileSize() {
+        return 3 * 4 + 2 * (INPUTS * HIDDEN + HIDDEN + 2 * HIDDEN) + 4;
+    }
+
+    /**
+     * Builds a network that scores material and the middlegame piece-square tables of
+     * <code>Evaluation</code>, to within a few centipawns. It stands in for a trained network, so the
+     * network evaluation can be played and benchmarked, and checked against <code>Position.mgScore</code>.
+     * <p>
+     * Each of the first twelve neurons adds up one kind of piece of one side, in eighths of a centipawn
+     * so the sums stay under <code>QA</code>. The king's piece-square values can be negative, so its
+     * neurons start at 64 instead of 0.
+     *
+     * @return  the network.
+     *
+     * @author  Bryle Tan
+     */
+    public static Network fromEvaluation() {
+        Network network = new Network();
+        network.scale = 8 * QA;
+
+        for(int relative = 0; relative < 2; relative++) {
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                int neuron = relative * 6 + type;
+                for(int sq = 0; sq < 64; sq++) {
+                    // the tables are drawn with a8 first; seen from a side, its own pieces go up the board
+                    // and the other side's come down, so only its own squares need flipping
+                    int value = Evaluation.MATERIAL_MG[type] + Evaluation.PST_MG[type][relative == 0 ? sq ^ 56 : sq];
+                    network.featureWeights[(neuron * 64 + sq) * HIDDEN + neuron] = (short) Math.round(value / 8.0);
+                }
+                network.outputWeights[neuron] = (short) (relative == 0 ? QB : -QB);
+            }
+            network.featureBias[relative * 6 + Position.KING] = 64;
+        }
+        return network;
+    }
+
+    /**
+     * Gets the input of a piece seen from one side.
+     *
+     * @param side  side the board is seen from.
+     * @param piece piece code.
+     * @param sq    square of the piece.
+     * @return      index of the input.
+     */
+    static int feature(int side, int piece, int sq) {
+        int relative = Position.color(piece) == side ? 0 : 1;
+        int square = side == Position.WHITE ? sq : sq ^ 56;
+        return (relative * 6 + Position.type(piece)) * 64 + square;
+    }
+
+    /**
+     * Works out the score from the first layer of both sides.
+     *
+     * @param values    first layer neurons, at <code>us</code> for the side to move and at <code>them</code>
+     *                  for the other side.
+     * @param us        index of the side to move's first neuron.
+     * @param them      index of the other side's first neuron.
+     * @return          score in centipawns for the side to move.
+     *
+     * @author          Bryle Tan
+     */
+    int evaluate(short[] values, int us, int them) {
+        long sum;
+        if(vectorized) {
+            sum = NnueVectors.clippedDot(values, us, outputWeights, 0, HIDDEN, QA)
+                + NnueVectors.clippedDot(values, them, outputWeights, HIDDEN, HIDDEN, QA);
+        } else {
+            sum = clippedDot(values, us, outputWeights, 0) + clippedDot(values, them, outputWeights, HIDDEN);
+        }
+        return (int) ((sum + outputBias) * scale / (QA * QB));
+    }
+
+    /**
+     * Adds a row of first layer weights to the neurons of one side, or takes it away.
+     *
+     * @param values    first layer neurons.
+     * @param offset    index of the side's first neuron.
+     * @param feature   input whose weights are added.
+     * @param sign      1 to add the weights, -1 to take them away.
+     */
+    void update(short[] values, int offset, int feature, int sign) {
+        int row = feature * HIDDEN;
+        if(vectorized) {
+            NnueVectors.addRow(values, offset, featureWeights, row, HIDDEN, sign);
+            return;
+        }
+        for(int i = 0; i < HIDDEN; i++) {
+            values[offset + i] += sign * featureWeights[row + i];
+        }
+    }
+
+    /**
+     * Adds up the clipped neurons of one side times their output weights, one at a time.
+     *
+     * @param values    first layer neurons.
+     * @param offset    index of the side's first neuron.
+     * @param weights   output weights.
+     * @param start     index of the side's first output weight.
+     * @return          the sum.
+     */
+    private static long clippedDot(short[] values, int offset, short[] weights, int start) {
+        long sum = 0;
+        for(int i = 0; i < HIDDEN; i++) {
+            int value = Math.min(Math.max(values[offset + i], 0), QA);
+            sum += value * weights[start + i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return  <code>true</code> if the neuron sums use SIMD lanes.
+     */
+    public static boolean isVectorized() { return vectorized; }
+
+    /**
+     * Switches between the SIMD and the plain sums, for example to compare their speed. The SIMD sums
+     * can only be switched on when the vector API is available.
+     *
+     * @param on    <code>true</code> to use the SIMD sums.
+     */
+    public static void setVectorized(boolean on) {
+        vectorized = on && isVectorApiAvailable();
+    }
+
+    /**
+     * Checks if the vector API can be used. <code>NnueVectors</code> is the only class that uses it, and it is
+     * only loaded once this says yes, so the engine still runs on a JVM without the module.
+     *
+     * @return  <code>true</code> if the JVM was started with the vector API module and it works.
+     */
+    private static boolean isVectorApiAvailable() {
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return NnueVectors.lanes() > 1;
+        } catch(LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package engine;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the neuron sums of <code>Network</code>, using <code>jdk.incubator.vector</code>.
+ * <p>
+ * This is the only class that touches the vector API, and <code>Network</code> only calls it after
+ * checking that the module is there, so the rest of the engine runs without it. The first layer is
+ * updated with the widest short lanes the CPU has. For the output, eight shorts at a time are
+ * widened to ints before multiplying, since a clipped neuron times a weight doesn't fit in a short.
+ *
+ * @author  Bryle Tan
+ */
+final class NnueVectors {
+
+    /**
+     * widest short lanes of the CPU, for updating the first layer.
+     */
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+
+    /**
+     * eight short lanes, widened to <code>INTS</code> for the output.
+     */
+    private static final VectorSpecies<Short> SHORTS_8 = ShortVector.SPECIES_128;
+
+    /**
+     * eight int lanes.
+     */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+
+    /**
+     * Not instantiable, all sums are static.
+     */
+    private NnueVectors() {
+    }
+
+    /**
+     * @return  number of short lanes used to update the first layer.
+     */
+    static int lanes() {
+        return SHORTS.length();
+    }
+
+    /**
+     * Adds a row of weights to a run of neurons, or takes it away. The run has to be a multiple of the lane
+     * count long, which <code>Network.HIDDEN</code> is.
+     *
+     * @param values    neurons.
+     * @param offset    index of the first neuron.
+     * @param weights   weights.
+     * @param row       index of the first weight.
+     * @param length    number of neurons.
+     * @param sign      1 to add the weights, -1 to take them away.
+     */
+    static void addRow(short[] values, int offset, short[] weights, int row, int length, int sign) {
+        for(int i = 0; i < length; i += SHORTS.length()) {
+            ShortVector value = ShortVector.fromArray(SHORTS, values, offset + i);
+            ShortVector weight = ShortVector.fromArray(SHORTS, weights, row + i);
+            (sign > 0 ? value.add(weight) : value.sub(weight)).intoArray(values, offset + i);
+        }
+    }
+
+    /**
+     * Adds up a run of neurons, clipped to 0 to <code>max</code>, times their weights.
+     *
+     * @param values    neurons.
+     * @param offset    index of the first neuron.
+     * @param weights   weights.
+     * @param start     index of the first weight.
+     * @param length    number of neurons, a multiple of 8.
+     * @param max       largest value of a clipped neuron.
+     * @return          the sum.
+     */
+    static long clippedDot(short[] values, int offset, short[] weights, int start, int length, int max) {
+        IntVector sum = IntVector.zero(INTS);
+        for(int i = 0; i < length; i += SHORTS_8.length()) {
+            IntVector value = (IntVector) ShortVector.fromArray(SHORTS_8, values, offset + i)
+                .convertShape(VectorOperators.S2I, INTS, 0);
+            IntVector weight = (IntVector) ShortVector.fromArray(SHORTS_8, weights, start + i)
+                .convertShape(VectorOperators.S2I, INTS, 0);
+            sum = sum.add(value.max(0).min(max).mul(weight));
+        }
+        return sum.reduceLanes(VectorOperators.ADD);
+    }
+}
@@ -0,0 +1,128 @@
+package engine;
+
+/**
+ * Cache of the pawn structure terms of the evaluation, keyed by <code>Position.pawnKey</code>.
+ * <p>
+ * The pawns hardly ever move compared to the other pieces, so most positions the search visits have
+ * a pawn structure it has already scored. Each entry holds the middlegame and endgame pawn score from
+ * white's point of view. The table has a fixed number of entries and a new entry simply overwrites
+ * whatever was in its slot. It belongs to one <code>Evaluation</code>, so it is never shared between
+ * threads.
+ *
+ * @author  Bryle Tan
+ */
+public class PawnTable {
+
+    /**
+     * number of entries, a power of two.
+     */
+    public static final int SIZE = 1 << 14;
+
+    /**
+     * pawn key of each entry.
+     */
+    private final long[] keys = new long[SIZE];
+
+    /**
+     * middlegame score of each entry.
+     */
+    private final int[] mg = new int[SIZE];
+
+    /**
+     * endgame score of each entry.
+     */
+    private final int[] eg = new int[SIZE];
+
+    /**
+     * number of lookups.
+     */
+    private long probes;
+
+    /**
+     * number of lookups that found their entry.
+     */
+    private long hits;
+
+    /**
+     * Constructor for an empty table.
+     */
+    public PawnTable() {
+        clear();
+    }
+
+    /**
+     * Looks up a pawn structure.
+     *
+     * @param key   pawn key of the position.
+     * @return      index of the entry for <code>mg</code> and <code>eg</code>, -1 if it isn't stored.
+     */
+    public int probe(long key) {
+        probes++;
+        int index = (int) key & (SIZE - 1);
+        if(keys[index] == key) {
+            hits++;
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the score of a pawn structure, overwriting the entry in its slot.
+     *
+     * @param key       pawn key of the position.
+     * @param mgScore   middlegame score from white's point of view.
+     * @param egScore   endgame score from white's point of view.
+     */
+    public void store(long key, int mgScore, int egScore) {
+        int index = (int) key & (SIZE - 1);
+        keys[index] = key;
+        mg[index] = mgScore;
+        eg[index] = egScore;
+    }
+
+    /**
+     * @param index index returned by <code>probe</code>.
+     * @return      middlegame score of the entry.
+     */
+    public int mg(int index) { return mg[index]; }
+
+    /**
+     * @param index index returned by <code>probe</code>.
+     * @return      endgame score of the entry.
+     */
+    public int eg(int index) { return eg[index]; }
+
+    /**
+     * Empties the table, for example after the pawn weights are changed.
+     */
+    public void clear() {
+        // each empty slot holds a key that belongs in a different slot, so a lookup never matches it
+        java.util.Arrays.fill(keys, -1L);
+        keys[SIZE - 1] = 0;
+    }
+
+    /**
+     * @return  fraction of lookups that found their entry, 0 before any lookups.
+     */
+    public double hitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * @return  number of lookups since the statistics were last reset.
+     */
+    public long probes() { return probes; }
+
+    /**
+     * @return  number of lookups that found their entry since the statistics were last reset.
+     */
+    public long hits() { return hits; }
+
+    /**
+     * Resets the lookup and hit counts.
+     */
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+}
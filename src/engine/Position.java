@@ -0,0 +1,866 @@
+package engine;
+
+import model.*;
+
+/**
+ * Position used by the engine. Unlike <code>model.Board</code>, which stores a <code>Square</code>
+ * object per square, the position is kept in primitive arrays and bitboards, and moves can be made
+ * and unmade in place without copying anything.
+ * <p>
+ * Squares are numbered 0 for a1, 1 for b1, up to 63 for h8. Pieces are coded as
+ * <code>color * 6 + type</code>, so white pieces are 0 to 5 and black pieces 6 to 11.
+ * <p>
+ * The material and piece-square scores used by <code>Evaluation</code> are updated every time a
+ * piece is added, removed or moved, so they never need to be recomputed from the whole board.
+ *
+ * @author  Bryle Tan
+ */
+public class Position {
+
+    /**
+     * color index of the white team.
+     */
+    public static final int WHITE = 0;
+
+    /**
+     * color index of the black team.
+     */
+    public static final int BLACK = 1;
+
+    /**
+     * piece type of a pawn.
+     */
+    public static final int PAWN = 0;
+
+    /**
+     * piece type of a knight.
+     */
+    public static final int KNIGHT = 1;
+
+    /**
+     * piece type of a bishop.
+     */
+    public static final int BISHOP = 2;
+
+    /**
+     * piece type of a rook.
+     */
+    public static final int ROOK = 3;
+
+    /**
+     * piece type of a queen.
+     */
+    public static final int QUEEN = 4;
+
+    /**
+     * piece type of a king.
+     */
+    public static final int KING = 5;
+
+    /**
+     * value stored in <code>board</code> for an empty square.
+     */
+    public static final int EMPTY = -1;
+
+    /**
+     * castling right for white to castle kingside.
+     */
+    public static final int WHITE_KINGSIDE = 1;
+
+    /**
+     * castling right for white to castle queenside.
+     */
+    public static final int WHITE_QUEENSIDE = 2;
+
+    /**
+     * castling right for black to castle kingside.
+     */
+    public static final int BLACK_KINGSIDE = 4;
+
+    /**
+     * castling right for black to castle queenside.
+     */
+    public static final int BLACK_QUEENSIDE = 8;
+
+    /**
+     * number of made moves that can be unmade. The move history is a ring buffer of this size, so a
+     * game can go on for any number of moves; only the last <code>MAX_HISTORY</code> can be unmade.
+     * Must be a power of two.
+     */
+    public static final int MAX_HISTORY = 1024;
+
+    /**
+     * FEN of the starting position.
+     */
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * letters of the piece types in FEN, indexed by type.
+     */
+    public static final String PIECE_LETTERS = "PNBRQK";
+
+    /**
+     * number of halfmoves without a capture or pawn move after which the game is drawn.
+     */
+    public static final int FIFTY_MOVE_LIMIT = 100;
+
+    /**
+     * castling rights that are kept when a piece moves from or to each square.
+     */
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        for(int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = 15;
+        }
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    /**
+     * bitboard of each piece, indexed by piece code.
+     */
+    public final long[] pieces = new long[12];
+
+    /**
+     * bitboard of all pieces of each color.
+     */
+    public final long[] colors = new long[2];
+
+    /**
+     * bitboard of all occupied squares.
+     */
+    public long occupied;
+
+    /**
+     * piece code on each square, <code>EMPTY</code> if there is no piece.
+     */
+    public final int[] board = new int[64];
+
+    /**
+     * color of the side to move.
+     */
+    public int sideToMove;
+
+    /**
+     * castling rights that are left, as a combination of the castling constants.
+     */
+    public int castling;
+
+    /**
+     * square a pawn can capture onto enpassant, -1 if there is none.
+     */
+    public int epSquare = -1;
+
+    /**
+     * number of moves since the last capture or pawn move.
+     */
+    public int halfmoveClock;
+
+    /**
+     * Zobrist hash of the position, see <code>Zobrist</code>.
+     */
+    public long hash;
+
+    /**
+     * hash of the pawns and kings only, see <code>Zobrist.PAWNS</code>. Keys the pawn hash table.
+     */
+    public long pawnKey;
+
+    /**
+     * middlegame material and piece-square score from white's point of view.
+     */
+    public int mgScore;
+
+    /**
+     * endgame material and piece-square score from white's point of view.
+     */
+    public int egScore;
+
+    /**
+     * game phase, the sum of <code>Evaluation.PHASE_WEIGHT</code> over all pieces on the board.
+     */
+    public int phase;
+
+    /**
+     * first layer of the network evaluation, kept up to date with the pieces. <code>null</code> unless
+     * the position is evaluated with a <code>Network</code>, and never copied, since the evaluation
+     * sets it up again for the position it is given.
+     */
+    public Accumulator accumulator;
+
+    /**
+     * number of moves made on this position. Entries of the history buffers are at
+     * <code>historyLength & (MAX_HISTORY - 1)</code>.
+     */
+    private int historyLength;
+
+    /**
+     * piece captured by each made move, <code>EMPTY</code> if none.
+     */
+    private final int[] capturedHistory = new int[MAX_HISTORY];
+
+    /**
+     * castling rights before each made move.
+     */
+    private final int[] castlingHistory = new int[MAX_HISTORY];
+
+    /**
+     * enpassant square before each made move.
+     */
+    private final int[] epHistory = new int[MAX_HISTORY];
+
+    /**
+     * halfmove clock before each made move.
+     */
+    private final int[] halfmoveHistory = new int[MAX_HISTORY];
+
+    /**
+     * hash before each made move.
+     */
+    private final long[] hashHistory = new long[MAX_HISTORY];
+
+    /**
+     * Constructor for an empty position with white to move.
+     */
+    public Position() {
+        for(int sq = 0; sq < 64; sq++) {
+            board[sq] = EMPTY;
+        }
+    }
+
+    /**
+     * Creates a position from the board used by the game.
+     * <p>
+     * Castling rights are taken from the <code>hasMoved</code> flags of the kings and rooks. Enpassant
+     * rights can't be recovered, since <code>Piece.enpassant</code> stays set after the following move.
+     *
+     * @param game          board object of the game.
+     * @param whiteToMove   <code>true</code> if it's the white team's turn.
+     * @return              the equivalent position.
+     *
+     * @author              Bryle Tan
+     */
+    public static Position fromBoard(Board game, boolean whiteToMove) {
+        Position pos = new Position();
+
+        for(int file = 0; file < 8; file++) {
+            for(int rank = 0; rank < 8; rank++) {
+                Piece piece = game.board[file][rank].getPiece();
+                if(piece != null) {
+                    int color = piece.isWhite() ? WHITE : BLACK;
+                    pos.addPiece(piece(color, typeOf(piece.getType())), rank * 8 + file);
+                }
+            }
+        }
+
+        pos.sideToMove = whiteToMove ? WHITE : BLACK;
+        if(unmovedPiece(game, 4, 0, "king", true)) {
+            if(unmovedPiece(game, 7, 0, "rook", true)) pos.castling |= WHITE_KINGSIDE;
+            if(unmovedPiece(game, 0, 0, "rook", true)) pos.castling |= WHITE_QUEENSIDE;
+        }
+        if(unmovedPiece(game, 4, 7, "king", false)) {
+            if(unmovedPiece(game, 7, 7, "rook", false)) pos.castling |= BLACK_KINGSIDE;
+            if(unmovedPiece(game, 0, 7, "rook", false)) pos.castling |= BLACK_QUEENSIDE;
+        }
+
+        pos.hash = pos.computeHash();
+        return pos;
+    }
+
+    /**
+     * Creates a position from Forsyth-Edwards Notation. The move counters may be left out, and an
+     * EPD line works too since everything after the enpassant square is only read if it's a number.
+     *
+     * @param fen   the position in FEN, for example
+     *              "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+     * @return      the position.
+     * @throws      IllegalArgumentException if the string isn't a valid FEN.
+     *
+     * @author      Bryle Tan
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if(fields.length < 4) {
+            throw new IllegalArgumentException("incomplete FEN: " + fen);
+        }
+        Position pos = new Position();
+
+        int rank = 7;
+        int file = 0;
+        for(char c : fields[0].toCharArray()) {
+            if(c == '/') {
+                rank--;
+                file = 0;
+            } else if(c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int type = PIECE_LETTERS.indexOf(Character.toUpperCase(c));
+                if(type < 0 || rank < 0 || file > 7) {
+                    throw new IllegalArgumentException("bad piece placement: " + fen);
+                }
+                pos.addPiece(piece(Character.isUpperCase(c) ? WHITE : BLACK, type), rank * 8 + file);
+                file++;
+            }
+        }
+        if(Long.bitCount(pos.pieces[piece(WHITE, KING)]) != 1 || Long.bitCount(pos.pieces[piece(BLACK, KING)]) != 1) {
+            throw new IllegalArgumentException("each side needs one king: " + fen);
+        }
+
+        pos.sideToMove = fields[1].equals("b") ? BLACK : WHITE;
+        for(char c : fields[2].toCharArray()) {
+            if(c == 'K') pos.castling |= WHITE_KINGSIDE;
+            if(c == 'Q') pos.castling |= WHITE_QUEENSIDE;
+            if(c == 'k') pos.castling |= BLACK_KINGSIDE;
+            if(c == 'q') pos.castling |= BLACK_QUEENSIDE;
+        }
+
+        if(!fields[3].equals("-")) {
+            int ep = (fields[3].charAt(1) - '1') * 8 + (fields[3].charAt(0) - 'a');
+            int them = pos.sideToMove ^ 1;
+            // same rule as makeMove, so the hash matches the one reached by playing the moves
+            if(ep >= 0 && ep < 64 && (Attacks.PAWN[them][ep] & pos.pieces[piece(pos.sideToMove, PAWN)]) != 0) {
+                pos.epSquare = ep;
+            }
+        }
+        if(fields.length > 4 && fields[4].matches("\\d+")) {
+            pos.halfmoveClock = Integer.parseInt(fields[4]);
+        }
+
+        pos.hash = pos.computeHash();
+        return pos;
+    }
+
+    /**
+     * Writes the position in Forsyth-Edwards Notation. The fullmove number isn't tracked, so it is
+     * always written as 1.
+     *
+     * @return  the position in FEN.
+     *
+     * @author  Bryle Tan
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for(int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for(int file = 0; file < 8; file++) {
+                int p = board[rank * 8 + file];
+                if(p == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if(empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(type(p));
+                fen.append(color(p) == WHITE ? letter : Character.toLowerCase(letter));
+            }
+            if(empty > 0) {
+                fen.append(empty);
+            }
+            if(rank > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if(castling == 0) {
+            fen.append('-');
+        } else {
+            if((castling & WHITE_KINGSIDE) != 0) fen.append('K');
+            if((castling & WHITE_QUEENSIDE) != 0) fen.append('Q');
+            if((castling & BLACK_KINGSIDE) != 0) fen.append('k');
+            if((castling & BLACK_QUEENSIDE) != 0) fen.append('q');
+        }
+        fen.append(' ').append(epSquare >= 0 ? Moves.squareName(epSquare) : "-");
+        fen.append(' ').append(halfmoveClock).append(" 1");
+        return fen.toString();
+    }
+
+    /**
+     * Copies the position, so it can be searched on another thread. The move history is copied too,
+     * so the copy still knows which positions have been repeated.
+     *
+     * @return  a copy of the position.
+     */
+    public Position copy() {
+        Position pos = new Position();
+        System.arraycopy(pieces, 0, pos.pieces, 0, pieces.length);
+        System.arraycopy(colors, 0, pos.colors, 0, colors.length);
+        System.arraycopy(board, 0, pos.board, 0, board.length);
+        pos.occupied = occupied;
+        pos.sideToMove = sideToMove;
+        pos.castling = castling;
+        pos.epSquare = epSquare;
+        pos.halfmoveClock = halfmoveClock;
+        pos.hash = hash;
+        pos.pawnKey = pawnKey;
+        pos.mgScore = mgScore;
+        pos.egScore = egScore;
+        pos.phase = phase;
+        pos.historyLength = historyLength;
+        System.arraycopy(capturedHistory, 0, pos.capturedHistory, 0, MAX_HISTORY);
+        System.arraycopy(castlingHistory, 0, pos.castlingHistory, 0, MAX_HISTORY);
+        System.arraycopy(epHistory, 0, pos.epHistory, 0, MAX_HISTORY);
+        System.arraycopy(halfmoveHistory, 0, pos.halfmoveHistory, 0, MAX_HISTORY);
+        System.arraycopy(hashHistory, 0, pos.hashHistory, 0, MAX_HISTORY);
+        return pos;
+    }
+
+    /**
+     * Builds the packed move for a piece going from one square to another, working out from the
+     * board whether it castles, captures enpassant or pushes a pawn two squares.
+     *
+     * @param from      starting square.
+     * @param to        ending square.
+     * @param promotion piece type a pawn reaching the last rank becomes, 0 for a queen.
+     * @return          the packed move.
+     */
+    public int moveFor(int from, int to, int promotion) {
+        int type = type(board[from]);
+
+        if(type == KING && Math.abs(to - from) == 2) {
+            return Moves.make(from, to, 0, Moves.CASTLE);
+        }
+        if(type == PAWN) {
+            if(Math.abs(to - from) == 16) {
+                return Moves.make(from, to, 0, Moves.DOUBLE_PUSH);
+            }
+            if((to & 7) != (from & 7) && board[to] == EMPTY) {
+                return Moves.make(from, to, 0, Moves.EN_PASSANT);
+            }
+            if((to >> 3) == 7 || (to >> 3) == 0) {
+                return Moves.make(from, to, promotion == 0 ? QUEEN : promotion, Moves.NORMAL);
+            }
+        }
+        return Moves.make(from, to, 0, Moves.NORMAL);
+    }
+
+    /**
+     * Computes the hash of the position from scratch. <code>hash</code> is normally kept up to date as
+     * moves are made, this is only needed after the position is set up by hand.
+     *
+     * @return  the Zobrist hash of the position.
+     */
+    public long computeHash() {
+        long key = Zobrist.CASTLING[castling];
+        for(int sq = 0; sq < 64; sq++) {
+            if(board[sq] != EMPTY) {
+                key ^= Zobrist.PIECES[board[sq]][sq];
+            }
+        }
+        if(epSquare >= 0) {
+            key ^= Zobrist.EN_PASSANT[epSquare & 7];
+        }
+        if(sideToMove == BLACK) {
+            key ^= Zobrist.BLACK_TO_MOVE;
+        }
+        return key;
+    }
+
+    /**
+     * Checks if a piece of the given type and color is on a square and has never moved.
+     *
+     * @param game      board object of the game.
+     * @param file      file of the square.
+     * @param rank      rank of the square.
+     * @param type      type of the piece, as in <code>Piece.type</code>.
+     * @param white     color of the piece.
+     * @return          <code>true</code> if the unmoved piece is there.
+     */
+    private static boolean unmovedPiece(Board game, int file, int rank, String type, boolean white) {
+        Piece piece = game.board[file][rank].getPiece();
+        return piece != null && piece.isWhite() == white && piece.getType().equals(type) && !piece.hasMoved();
+    }
+
+    /**
+     * Converts the type string of a <code>model.Piece</code> to a piece type.
+     *
+     * @param type  "pawn", "knight", "bishop", "rook", "queen" or "king".
+     * @return      the matching piece type constant.
+     */
+    private static int typeOf(String type) {
+        switch(type) {
+            case "pawn": return PAWN;
+            case "knight": return KNIGHT;
+            case "bishop": return BISHOP;
+            case "rook": return ROOK;
+            case "queen": return QUEEN;
+            default: return KING;
+        }
+    }
+
+    /**
+     * @param color color of the piece.
+     * @param type  type of the piece.
+     * @return      piece code for the colored piece.
+     */
+    public static int piece(int color, int type) { return color * 6 + type; }
+
+    /**
+     * @param piece piece code.
+     * @return      type of the piece.
+     */
+    public static int type(int piece) { return piece % 6; }
+
+    /**
+     * @param piece piece code.
+     * @return      color of the piece.
+     */
+    public static int color(int piece) { return piece / 6; }
+
+    /**
+     * Places a piece on an empty square, updating the bitboards and scores.
+     *
+     * @param piece piece code.
+     * @param sq    square to place the piece on.
+     */
+    public void addPiece(int piece, int sq) {
+        long bit = 1L << sq;
+        pieces[piece] |= bit;
+        colors[color(piece)] |= bit;
+        occupied |= bit;
+        board[sq] = piece;
+        hash ^= Zobrist.PIECES[piece][sq];
+        pawnKey ^= Zobrist.PAWNS[piece][sq];
+
+        mgScore += Evaluation.MG[piece][sq];
+        egScore += Evaluation.EG[piece][sq];
+        phase += Evaluation.PHASE_WEIGHT[type(piece)];
+        if(accumulator != null) {
+            accumulator.add(piece, sq);
+        }
+    }
+
+    /**
+     * Removes the piece on a square, updating the bitboards and scores.
+     *
+     * @param sq    square of the piece.
+     */
+    public void removePiece(int sq) {
+        int piece = board[sq];
+        long bit = 1L << sq;
+        pieces[piece] ^= bit;
+        colors[color(piece)] ^= bit;
+        occupied ^= bit;
+        board[sq] = EMPTY;
+        hash ^= Zobrist.PIECES[piece][sq];
+        pawnKey ^= Zobrist.PAWNS[piece][sq];
+
+        mgScore -= Evaluation.MG[piece][sq];
+        egScore -= Evaluation.EG[piece][sq];
+        phase -= Evaluation.PHASE_WEIGHT[type(piece)];
+        if(accumulator != null) {
+            accumulator.remove(piece, sq);
+        }
+    }
+
+    /**
+     * Moves a piece to an empty square, updating the bitboards and scores.
+     *
+     * @param from  square of the piece.
+     * @param to    empty square the piece moves to.
+     */
+    private void movePiece(int from, int to) {
+        int piece = board[from];
+        long bits = (1L << from) | (1L << to);
+        pieces[piece] ^= bits;
+        colors[color(piece)] ^= bits;
+        occupied ^= bits;
+        board[from] = EMPTY;
+        board[to] = piece;
+        hash ^= Zobrist.PIECES[piece][from] ^ Zobrist.PIECES[piece][to];
+        pawnKey ^= Zobrist.PAWNS[piece][from] ^ Zobrist.PAWNS[piece][to];
+
+        mgScore += Evaluation.MG[piece][to] - Evaluation.MG[piece][from];
+        egScore += Evaluation.EG[piece][to] - Evaluation.EG[piece][from];
+        if(accumulator != null) {
+            accumulator.remove(piece, from);
+            accumulator.add(piece, to);
+        }
+    }
+
+    /**
+     * Gets the square of a side's king.
+     *
+     * @param color color of the king.
+     * @return      square of the king.
+     */
+    public int kingSquare(int color) {
+        return Long.numberOfTrailingZeros(pieces[piece(color, KING)]);
+    }
+
+    /**
+     * Checks if a square is attacked by any piece of the given color.
+     *
+     * @param sq    square to check.
+     * @param by    color of the attacking side.
+     * @return      <code>true</code> if the square is attacked.
+     */
+    public boolean isAttacked(int sq, int by) {
+        int offset = by * 6;
+        return (Attacks.PAWN[by ^ 1][sq] & pieces[offset + PAWN]) != 0
+            || (Attacks.KNIGHT[sq] & pieces[offset + KNIGHT]) != 0
+            || (Attacks.KING[sq] & pieces[offset + KING]) != 0
+            || (Attacks.bishop(sq, occupied) & (pieces[offset + BISHOP] | pieces[offset + QUEEN])) != 0
+            || (Attacks.rook(sq, occupied) & (pieces[offset + ROOK] | pieces[offset + QUEEN])) != 0;
+    }
+
+    /**
+     * Gets every piece of either color that attacks a square, given a set of occupied squares.
+     * Passing a different occupancy than <code>occupied</code> lets callers see x-ray attacks
+     * through pieces that have been taken off in a capture sequence.
+     *
+     * @param sq        square being attacked.
+     * @param occupancy bitboard of the squares to treat as occupied.
+     * @return          bitboard of the attacking pieces that are still in <code>occupancy</code>.
+     */
+    public long attackersTo(int sq, long occupancy) {
+        long diagonal = pieces[BISHOP] | pieces[QUEEN] | pieces[6 + BISHOP] | pieces[6 + QUEEN];
+        long straight = pieces[ROOK] | pieces[QUEEN] | pieces[6 + ROOK] | pieces[6 + QUEEN];
+
+        long attackers = (Attacks.PAWN[BLACK][sq] & pieces[PAWN])
+            | (Attacks.PAWN[WHITE][sq] & pieces[6 + PAWN])
+            | (Attacks.KNIGHT[sq] & (pieces[KNIGHT] | pieces[6 + KNIGHT]))
+            | (Attacks.KING[sq] & (pieces[KING] | pieces[6 + KING]))
+            | (Attacks.bishop(sq, occupancy) & diagonal)
+            | (Attacks.rook(sq, occupancy) & straight);
+        return attackers & occupancy;
+    }
+
+    /**
+     * Checks if the king of the given color is attacked.
+     *
+     * @param color color of the king.
+     * @return      <code>true</code> if the king is in check.
+     */
+    public boolean inCheck(int color) {
+        return isAttacked(kingSquare(color), color ^ 1);
+    }
+
+    /**
+     * Makes a move on the position. The move is not checked, it must at least be pseudo-legal.
+     *
+     * @param move  packed move, see <code>Moves</code>.
+     *
+     * @author      Bryle Tan
+     */
+    public void makeMove(int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int flag = Moves.flag(move);
+        int us = sideToMove;
+        int piece = board[from];
+
+        int capturedSquare = flag == Moves.EN_PASSANT ? (us == WHITE ? to - 8 : to + 8) : to;
+        int captured = board[capturedSquare];
+
+        int slot = historyLength & (MAX_HISTORY - 1);
+        capturedHistory[slot] = captured;
+        castlingHistory[slot] = castling;
+        epHistory[slot] = epSquare;
+        halfmoveHistory[slot] = halfmoveClock;
+        hashHistory[slot] = hash;
+        historyLength++;
+        if(accumulator != null) {
+            accumulator.push();
+        }
+
+        if(captured != EMPTY) {
+            removePiece(capturedSquare);
+        }
+        movePiece(from, to);
+
+        if(Moves.promotion(move) != 0) {
+            removePiece(to);
+            addPiece(piece(us, Moves.promotion(move)), to);
+        }
+
+        if(flag == Moves.CASTLE) {
+            // the rook jumps to the other side of the king
+            if(to > from) {
+                movePiece(to + 1, to - 1);
+            } else {
+                movePiece(to - 2, to + 1);
+            }
+        }
+
+        if(epSquare >= 0) {
+            hash ^= Zobrist.EN_PASSANT[epSquare & 7];
+            epSquare = -1;
+        }
+        if(flag == Moves.DOUBLE_PUSH) {
+            int passed = (from + to) >> 1;
+            // only remember the square if an enemy pawn could actually take
+            if((Attacks.PAWN[us][passed] & pieces[piece(us ^ 1, PAWN)]) != 0) {
+                epSquare = passed;
+                hash ^= Zobrist.EN_PASSANT[passed & 7];
+            }
+        }
+
+        hash ^= Zobrist.CASTLING[castling];
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        hash ^= Zobrist.CASTLING[castling] ^ Zobrist.BLACK_TO_MOVE;
+
+        if(captured != EMPTY || type(piece) == PAWN) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
+
+        sideToMove = us ^ 1;
+    }
+
+    /**
+     * Unmakes a move made by <code>makeMove</code>. Moves must be unmade in the reverse order they were made.
+     *
+     * @param move  the last move made.
+     *
+     * @author      Bryle Tan
+     */
+    public void unmakeMove(int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int flag = Moves.flag(move);
+        int us = sideToMove ^ 1;
+
+        historyLength--;
+        int slot = historyLength & (MAX_HISTORY - 1);
+        int captured = capturedHistory[slot];
+        castling = castlingHistory[slot];
+        epSquare = epHistory[slot];
+        halfmoveClock = halfmoveHistory[slot];
+        sideToMove = us;
+
+        // the neurons before the move are still on the accumulator's stack, so the pieces put back
+        // below don't need to update it
+        Accumulator saved = accumulator;
+        accumulator = null;
+
+        if(Moves.promotion(move) != 0) {
+            removePiece(to);
+            addPiece(piece(us, PAWN), to);
+        }
+        movePiece(to, from);
+
+        if(flag == Moves.CASTLE) {
+            if(to > from) {
+                movePiece(to - 1, to + 1);
+            } else {
+                movePiece(to + 1, to - 2);
+            }
+        }
+
+        if(captured != EMPTY) {
+            addPiece(captured, flag == Moves.EN_PASSANT ? (us == WHITE ? to - 8 : to + 8) : to);
+        }
+
+        hash = hashHistory[slot];
+
+        accumulator = saved;
+        if(accumulator != null) {
+            accumulator.pop();
+        }
+    }
+
+    /**
+     * Passes the move to the other side without moving a piece, for the null move search. The null
+     * move resets the halfmove clock, so no repetition is found across it.
+     *
+     * @author  Bryle Tan
+     */
+    public void makeNullMove() {
+        int slot = historyLength & (MAX_HISTORY - 1);
+        capturedHistory[slot] = EMPTY;
+        castlingHistory[slot] = castling;
+        epHistory[slot] = epSquare;
+        halfmoveHistory[slot] = halfmoveClock;
+        hashHistory[slot] = hash;
+        historyLength++;
+
+        if(epSquare >= 0) {
+            hash ^= Zobrist.EN_PASSANT[epSquare & 7];
+            epSquare = -1;
+        }
+        hash ^= Zobrist.BLACK_TO_MOVE;
+        halfmoveClock = 0;
+        sideToMove ^= 1;
+    }
+
+    /**
+     * Unmakes a null move made by <code>makeNullMove</code>.
+     */
+    public void unmakeNullMove() {
+        historyLength--;
+        int slot = historyLength & (MAX_HISTORY - 1);
+        epSquare = epHistory[slot];
+        halfmoveClock = halfmoveHistory[slot];
+        hash = hashHistory[slot];
+        sideToMove ^= 1;
+    }
+
+    /**
+     * Checks if the position has already occurred since the last capture or pawn move. Used by the
+     * search, where a single repetition is scored as a draw: if the position was good enough to
+     * repeat, the side that can will repeat it again.
+     * <p>
+     * Only positions an even number of plies back can be the same, with the same side to move, and
+     * a repetition takes at least four plies, so the scan starts four plies back and steps by two.
+     *
+     * @return  <code>true</code> if the position is a repetition.
+     *
+     * @author  Bryle Tan
+     */
+    public boolean isRepetition() {
+        int limit = Math.min(Math.min(halfmoveClock, historyLength), MAX_HISTORY);
+        for(int back = 4; back <= limit; back += 2) {
+            if(hashHistory[(historyLength - back) & (MAX_HISTORY - 1)] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts how often the position occurred before, since the last capture or pawn move.
+     *
+     * @return  number of earlier occurrences, 2 or more for a threefold repetition.
+     *
+     * @author  Bryle Tan
+     */
+    public int repetitions() {
+        int count = 0;
+        int limit = Math.min(Math.min(halfmoveClock, historyLength), MAX_HISTORY);
+        for(int back = 4; back <= limit; back += 2) {
+            if(hashHistory[(historyLength - back) & (MAX_HISTORY - 1)] == hash) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks if neither side has enough pieces left to checkmate: no pawns, rooks or queens, and at
+     * most one knight or bishop on the whole board.
+     *
+     * @return  <code>true</code> if the game can't be won by either side.
+     */
+    public boolean isInsufficientMaterial() {
+        long heavy = pieces[piece(WHITE, PAWN)] | pieces[piece(BLACK, PAWN)]
+                   | pieces[piece(WHITE, ROOK)] | pieces[piece(BLACK, ROOK)]
+                   | pieces[piece(WHITE, QUEEN)] | pieces[piece(BLACK, QUEEN)];
+        return heavy == 0 && Long.bitCount(occupied) <= 3;
+    }
+
+    /**
+     * @return  <code>true</code> if fifty moves each have passed without a capture or pawn move.
+     */
+    public boolean isFiftyMoveDraw() {
+        return halfmoveClock >= FIFTY_MOVE_LIMIT;
+    }
+}
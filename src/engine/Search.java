@@ -0,0 +1,1145 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Alpha-beta search used by the computer player. Searches the position with iterative deepening,
+ * one ply deeper each iteration, and keeps the best move of the last completed iteration.
+ * <p>
+ * Results are stored in a <code>TranspositionTable</code>, and moves are handed out by a
+ * <code>MovePicker</code> per ply: the hash move first, then captures, killers, the counter move and
+ * the other quiet moves by history. Right above the leaves, captures that lose material are not
+ * searched at all.
+ * <p>
+ * Leaves are not evaluated straight away. A quiescence search first plays out the captures and
+ * promotions that don't lose material, and every move out of check, until the position is quiet,
+ * so the score doesn't depend on a capture that happens just past the search depth.
+ * <p>
+ * Repeated positions and positions past the fifty-move limit are scored as draws at every node.
+ * <p>
+ * After the first move of a node, the other moves are searched with a null window, only proving
+ * they are no better, and searched again with the full window if one turns out better. Those
+ * null window nodes, which are most of the tree, are cut down by selective techniques, each of which
+ * can be switched off with <code>setPruning</code> to measure what it is worth:
+ * <ul>
+ * <li>reverse futility pruning: near the leaves, a static score far above beta is returned as is.</li>
+ * <li>razoring: near the leaves, a static score far below alpha is checked with a quiescence search only.</li>
+ * <li>null move pruning: if passing the move still fails high in a reduced search, so will a real move.
+ * Not tried without pieces, where passing could be better than any move (zugzwang), and checked by a
+ * reduced search without null moves at large depths.</li>
+ * <li>futility pruning: near the leaves, quiet moves that can't bring the static score up to alpha are skipped.</li>
+ * <li>late move reductions: quiet moves late in the order are searched less deep, and again at
+ * full depth if they beat alpha.</li>
+ * <li>check extensions: moves that give check are searched a ply deeper.</li>
+ * </ul>
+ * <p>
+ * A search can be limited by depth, or by a <code>TimeManager</code> when playing on a clock. It can
+ * also be stopped at a <code>Checkpoint</code> every few thousand nodes, and gone on with later from
+ * the next iteration.
+ * <p>
+ * After every completed iteration its statistics are gathered into a <code>SearchStats</code>, from
+ * counters only this search's thread touches, and handed to the <code>TelemetryListener</code>.
+ * <p>
+ * With a root margin set, root moves after the first are searched against the best score minus the
+ * margin instead of the best score, so every move within the margin of the best gets an exact score.
+ * <code>getCandidates</code> hands those moves out, for a weaker player to choose among.
+ *
+ * @author  Bryle Tan
+ */
+public class Search {
+
+    /**
+     * score larger than any evaluation.
+     */
+    public static final int INFINITY = 32000;
+
+    /**
+     * score of being checkmated at the root. Mates further away score closer to zero.
+     */
+    public static final int MATE = 31000;
+
+    /**
+     * deepest ply the search can reach.
+     */
+    public static final int MAX_PLY = 128;
+
+    /**
+     * safety margin for delta pruning in the quiescence search, in centipawns.
+     */
+    private static final int DELTA_MARGIN = 200;
+
+    /**
+     * <code>setPruning</code> flag for null move pruning.
+     */
+    public static final int NULL_MOVE = 1;
+
+    /**
+     * <code>setPruning</code> flag for late move reductions.
+     */
+    public static final int LATE_MOVE_REDUCTIONS = 2;
+
+    /**
+     * <code>setPruning</code> flag for futility pruning.
+     */
+    public static final int FUTILITY = 4;
+
+    /**
+     * <code>setPruning</code> flag for reverse futility pruning.
+     */
+    public static final int REVERSE_FUTILITY = 8;
+
+    /**
+     * <code>setPruning</code> flag for razoring.
+     */
+    public static final int RAZORING = 16;
+
+    /**
+     * <code>setPruning</code> flag for check extensions.
+     */
+    public static final int CHECK_EXTENSIONS = 32;
+
+    /**
+     * every <code>setPruning</code> flag.
+     */
+    public static final int ALL_PRUNING = 63;
+
+    /**
+     * short name of each <code>setPruning</code> flag, lowest bit first, as read by <code>parsePruning</code>.
+     */
+    public static final String[] PRUNING_NAMES = {"null", "lmr", "futility", "rfp", "razor", "checkext"};
+
+    /**
+     * one call in this many to the evaluation and the move pickers is timed, a power of two.
+     */
+    private static final int TIMING_SAMPLE = 64;
+
+    /**
+     * deepest remaining depth for reverse futility pruning.
+     */
+    private static final int REVERSE_FUTILITY_DEPTH = 6;
+
+    /**
+     * reverse futility margin per ply of remaining depth, in centipawns.
+     */
+    private static final int REVERSE_FUTILITY_MARGIN = 80;
+
+    /**
+     * deepest remaining depth for razoring.
+     */
+    private static final int RAZOR_DEPTH = 2;
+
+    /**
+     * razoring margin per ply of remaining depth, in centipawns.
+     */
+    private static final int RAZOR_MARGIN = 250;
+
+    /**
+     * deepest remaining depth for futility pruning.
+     */
+    private static final int FUTILITY_DEPTH = 3;
+
+    /**
+     * futility margin per ply of remaining depth, in centipawns.
+     */
+    private static final int FUTILITY_MARGIN = 100;
+
+    /**
+     * smallest remaining depth for a null move.
+     */
+    private static final int NULL_MOVE_DEPTH = 3;
+
+    /**
+     * smallest remaining depth at which a null move cutoff is checked by a search without null moves.
+     */
+    private static final int NULL_VERIFY_DEPTH = 10;
+
+    /**
+     * smallest remaining depth for late move reductions.
+     */
+    private static final int REDUCTION_DEPTH = 3;
+
+    /**
+     * number of moves searched at full depth before later ones are reduced.
+     */
+    private static final int FULL_DEPTH_MOVES = 3;
+
+    /**
+     * late move reduction, indexed by remaining depth then move number, growing with the logarithm of both.
+     */
+    private static final int[][] REDUCTIONS = new int[64][64];
+
+    static {
+        for(int depth = 1; depth < 64; depth++) {
+            for(int move = 1; move < 64; move++) {
+                REDUCTIONS[depth][move] = (int) (0.75 + Math.log(depth) * Math.log(move) / 2.25);
+            }
+        }
+    }
+
+    /**
+     * evaluation used at the leaves.
+     */
+    private final Evaluation evaluation = new Evaluation();
+
+    /**
+     * transposition table, can be shared with other searches.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * killer, history and counter move tables.
+     */
+    private final MoveHistory history = new MoveHistory();
+
+    /**
+     * move picker for each ply, so the search doesn't allocate.
+     */
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+
+    /**
+     * quiet moves tried at each ply, so they can be punished in the history table after a cutoff.
+     */
+    private final int[][] quietsTried = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+
+    /**
+     * move played at each ply on the current line.
+     */
+    private final int[] played = new int[MAX_PLY];
+
+    /**
+     * position being searched.
+     */
+    private Position pos;
+
+    /**
+     * number of positions visited by the current search.
+     */
+    private long nodes;
+
+    /**
+     * number of those positions visited by the quiescence search.
+     */
+    private long quiescenceNodes;
+
+    /**
+     * number of nodes that failed high.
+     */
+    private long cutoffs;
+
+    /**
+     * number of nodes that failed high on the first move tried.
+     */
+    private long firstMoveCutoffs;
+
+    /**
+     * deepest ply reached by the running iteration.
+     */
+    private int selDepth;
+
+    /**
+     * transposition table lookups of the running iteration.
+     */
+    private long hashProbes;
+
+    /**
+     * lookups of the running iteration that found the position.
+     */
+    private long hashHits;
+
+    /**
+     * lookups of the running iteration whose score was returned without searching.
+     */
+    private long hashCutoffs;
+
+    /**
+     * calls to the evaluation while timing, to time one in <code>TIMING_SAMPLE</code>.
+     */
+    private long evalCalls;
+
+    /**
+     * calls to the move pickers while timing, to time one in <code>TIMING_SAMPLE</code>.
+     */
+    private long moveCalls;
+
+    /**
+     * estimated time spent evaluating in the running iteration, in nanoseconds.
+     */
+    private long evalNanos;
+
+    /**
+     * estimated time spent generating and ordering moves in the running iteration, in nanoseconds.
+     */
+    private long moveGenNanos;
+
+    /**
+     * told the statistics of every completed iteration, <code>null</code> if nobody is listening.
+     */
+    private TelemetryListener telemetry;
+
+    /**
+     * statistics of the last completed iteration, <code>null</code> if none was completed.
+     */
+    private SearchStats lastStats;
+
+    /**
+     * time limits of the running search, <code>null</code> if it is only limited by depth.
+     */
+    private TimeManager timer;
+
+    /**
+     * told about every completed iteration, <code>null</code> if nobody is listening.
+     */
+    private IterationListener listener;
+
+    /**
+     * number of nodes after which the search stops, 0 for no limit.
+     */
+    private long nodeLimit;
+
+    /**
+     * <code>setPruning</code> flags of the techniques in use.
+     */
+    private int pruning = ALL_PRUNING;
+
+    /**
+     * first ply a null move may be tried at, raised while a null move cutoff is being checked.
+     */
+    private int nullMoveMinPly;
+
+    /**
+     * moves within this many centipawns of the best get an exact score at the root, 0 for only the best.
+     */
+    private int rootMargin;
+
+    /**
+     * root moves of the running iteration with an exact score, and their scores.
+     */
+    private final int[] iterationCandidates = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * scores of <code>iterationCandidates</code>.
+     */
+    private final int[] iterationCandidateScores = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * number of <code>iterationCandidates</code>.
+     */
+    private int iterationCandidateCount;
+
+    /**
+     * root moves of the last completed iteration with an exact score.
+     */
+    private final int[] candidates = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * scores of <code>candidates</code>.
+     */
+    private final int[] candidateScores = new int[MoveGenerator.MAX_MOVES];
+
+    /**
+     * number of <code>candidates</code>.
+     */
+    private int candidateCount;
+
+    /**
+     * asked every <code>checkpointInterval</code> nodes whether to stop, <code>null</code> if nobody is asked.
+     */
+    private Checkpoint checkpoint;
+
+    /**
+     * nodes between two checkpoints.
+     */
+    private long checkpointInterval;
+
+    /**
+     * node count of the next checkpoint.
+     */
+    private long nextCheckpoint;
+
+    /**
+     * <code>true</code> if the last search was stopped at a checkpoint.
+     */
+    private boolean preempted;
+
+    /**
+     * set from another thread to ask the search to stop.
+     */
+    private volatile boolean stopRequested;
+
+    /**
+     * <code>true</code> once the search has noticed the stop request, so the running iteration unwinds.
+     */
+    private boolean aborted;
+
+    /**
+     * best move found at the root by the last completed iteration.
+     */
+    private int bestMove;
+
+    /**
+     * best move found at the root so far by the running iteration.
+     */
+    private int iterationMove;
+
+    /**
+     * deepest iteration that was completed.
+     */
+    private int completedDepth;
+
+    /**
+     * score of <code>bestMove</code> from the point of view of the side to move.
+     */
+    private int bestScore;
+
+    /**
+     * Constructor for a search with its own 16 megabyte transposition table.
+     */
+    public Search() {
+        this(new TranspositionTable(16));
+    }
+
+    /**
+     * Constructor for a search using the given transposition table.
+     *
+     * @param table transposition table, which may be shared with other searches.
+     */
+    public Search(TranspositionTable table) {
+        this.table = table;
+        for(int ply = 0; ply < MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker();
+        }
+    }
+
+    /**
+     * Searches a position to a fixed depth, or until <code>stop</code> is called.
+     *
+     * @param position  position to search. It is left unchanged when the search returns.
+     * @param depth     number of plies to search.
+     * @return          the best move of the deepest completed iteration, <code>Moves.NONE</code> if the
+     *                  side to move has no legal moves.
+     *
+     * @author          Bryle Tan
+     */
+    public int think(Position position, int depth) {
+        return think(position, depth, null);
+    }
+
+    /**
+     * Searches a position until the time manager says to stop, the depth is reached, or
+     * <code>stop</code> is called. The time manager must already be started.
+     *
+     * @param position  position to search. It is left unchanged when the search returns.
+     * @param depth     largest number of plies to search.
+     * @param timer     time limits of the search, <code>null</code> to only limit the depth.
+     * @return          the best move of the deepest completed iteration, <code>Moves.NONE</code> if the
+     *                  side to move has no legal moves.
+     *
+     * @author          Bryle Tan
+     */
+    public int think(Position position, int depth, TimeManager timer) {
+        return think(position, 1, depth, timer);
+    }
+
+    /**
+     * Searches a position starting with a deeper iteration than the first, to go on with a search
+     * that was stopped, for example by a <code>Checkpoint</code>. Whatever the stopped search stored in
+     * the transposition table makes up for the iterations left out.
+     *
+     * @param position      position to search. It is left unchanged when the search returns.
+     * @param firstDepth    depth of the first iteration.
+     * @param depth         largest number of plies to search.
+     * @param timer         time limits of the search, <code>null</code> to only limit the depth.
+     * @return              the best move of the deepest completed iteration, the first legal move if the
+     *                      search was stopped before any move was scored, <code>Moves.NONE</code> only if the
+     *                      side to move has no legal moves.
+     *
+     * @author              Bryle Tan
+     */
+    public int think(Position position, int firstDepth, int depth, TimeManager timer) {
+        this.timer = timer;
+        pos = position;
+        nodes = 0;
+        quiescenceNodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        bestMove = Moves.NONE;
+        bestScore = 0;
+        completedDepth = 0;
+        candidateCount = 0;
+        aborted = false;
+        preempted = false;
+        nextCheckpoint = checkpointInterval;
+        lastStats = null;
+        history.clearKillers();
+        evaluation.prepare(pos);
+
+        long previousNodes = 0;
+        for(int d = Math.max(firstDepth, 1); d <= Math.min(depth, MAX_PLY - 1) && !stopRequested; d++) {
+            iterationMove = Moves.NONE;
+            iterationCandidateCount = 0;
+            long startTime = System.nanoTime();
+            long startNodes = nodes;
+            long startQuiescenceNodes = quiescenceNodes;
+            long startCutoffs = cutoffs;
+            long startFirstMoveCutoffs = firstMoveCutoffs;
+            selDepth = 0;
+            hashProbes = 0;
+            hashHits = 0;
+            hashCutoffs = 0;
+            evalNanos = 0;
+            moveGenNanos = 0;
+
+            int score = alphaBeta(d, -INFINITY, INFINITY, 0);
+            if(aborted) {
+                // out of time before the first iteration finished, any searched move beats none
+                if(bestMove == Moves.NONE) {
+                    bestMove = iterationMove;
+                }
+                break;
+            }
+            bestMove = iterationMove;
+            bestScore = score;
+            completedDepth = d;
+            candidateCount = iterationCandidateCount;
+            System.arraycopy(iterationCandidates, 0, candidates, 0, candidateCount);
+            System.arraycopy(iterationCandidateScores, 0, candidateScores, 0, candidateCount);
+
+            // the counters of this thread are only gathered once the iteration is over
+            SearchStats stats = new SearchStats();
+            stats.depth = d;
+            stats.selDepth = selDepth;
+            stats.nodes = nodes - startNodes;
+            stats.quiescenceNodes = quiescenceNodes - startQuiescenceNodes;
+            stats.previousNodes = previousNodes;
+            stats.nanos = System.nanoTime() - startTime;
+            stats.hashProbes = hashProbes;
+            stats.hashHits = hashHits;
+            stats.hashCutoffs = hashCutoffs;
+            stats.cutoffs = cutoffs - startCutoffs;
+            stats.firstMoveCutoffs = firstMoveCutoffs - startFirstMoveCutoffs;
+            stats.moveGenNanos = moveGenNanos;
+            stats.evalNanos = evalNanos;
+            stats.bestMove = bestMove;
+            stats.score = bestScore;
+            lastStats = stats;
+            previousNodes = stats.nodes;
+
+            if(telemetry != null) {
+                telemetry.iterationStats(stats);
+            }
+            if(listener != null) {
+                listener.iterationDone(d, bestMove, bestScore, nodes);
+            }
+            if(timer != null && timer.shouldStop(bestMove, bestScore)) {
+                break;
+            }
+        }
+
+        // stopped before a single root move was scored, any legal move beats giving up the game
+        if(bestMove == Moves.NONE) {
+            int[] legal = new int[MoveGenerator.MAX_MOVES];
+            if(MoveGenerator.generateLegal(pos, legal) > 0) {
+                bestMove = legal[0];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Sets who is told the statistics of every completed iteration. While one is set, the time spent
+     * evaluating and generating moves is also measured, on one call in 64.
+     *
+     * @param telemetry the listener, <code>null</code> for none.
+     */
+    public void setTelemetry(TelemetryListener telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return  statistics of the last iteration the last search completed, <code>null</code> if none.
+     */
+    public SearchStats getLastStats() { return lastStats; }
+
+    /**
+     * Sets who is told about every completed iteration, for example to print the search's progress.
+     *
+     * @param listener  the listener, <code>null</code> for none.
+     */
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Makes later searches ask a checkpoint every few nodes whether to stop, so a worker can switch
+     * between the searches of several games.
+     *
+     * @param checkpoint    the checkpoint, <code>null</code> for none.
+     * @param interval      nodes between two checks.
+     */
+    public void setCheckpoint(Checkpoint checkpoint, long interval) {
+        this.checkpoint = checkpoint;
+        checkpointInterval = checkpoint == null ? 0 : Math.max(1, interval);
+    }
+
+    /**
+     * @return  <code>true</code> if the last search was stopped by its checkpoint rather than finishing
+     *          or reaching a limit.
+     */
+    public boolean wasPreempted() { return preempted; }
+
+    /**
+     * Limits later searches to a number of nodes, for example so test games don't depend on how
+     * busy the machine is, or to bound the cost of a move. The search stops as soon as it
+     * reaches the limit.
+     *
+     * @param limit number of nodes, 0 for no limit.
+     */
+    public void setNodeLimit(long limit) {
+        nodeLimit = limit;
+    }
+
+    /**
+     * Makes later searches score every root move within a margin of the best exactly, so
+     * <code>getCandidates</code> can hand them out. A larger margin costs more nodes.
+     *
+     * @param margin    margin in centipawns, 0 to only score the best move exactly.
+     */
+    public void setRootMargin(int margin) {
+        rootMargin = Math.max(0, margin);
+    }
+
+    /**
+     * Gets the root moves of the last completed iteration that scored within the root margin of the
+     * best, best first.
+     *
+     * @param moves     filled with the moves.
+     * @param scores    filled with their scores, in centipawns for the side to move.
+     * @return          number of moves, 0 if no iteration was completed.
+     */
+    public int getCandidates(int[] moves, int[] scores) {
+        int count = 0;
+        for(int i = 0; i < candidateCount; i++) {
+            if(candidateScores[i] < bestScore - rootMargin) {
+                continue;
+            }
+            // insertion sort, there are only a few of them
+            int j = count++;
+            for(; j > 0 && scores[j - 1] < candidateScores[i]; j--) {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+            }
+            moves[j] = candidates[i];
+            scores[j] = candidateScores[i];
+        }
+        return count;
+    }
+
+    /**
+     * Switches the selective search techniques on and off, for example to measure what each is worth.
+     *
+     * @param flags <code>setPruning</code> flags of the techniques to use, such as
+     *              <code>NULL_MOVE | CHECK_EXTENSIONS</code>, <code>ALL_PRUNING</code> by default.
+     */
+    public void setPruning(int flags) {
+        pruning = flags & ALL_PRUNING;
+    }
+
+    /**
+     * @return  <code>setPruning</code> flags of the techniques in use.
+     */
+    public int getPruning() { return pruning; }
+
+    /**
+     * Reads a list of selective search techniques, for example "null+lmr".
+     *
+     * @param list  names from <code>PRUNING_NAMES</code> joined by '+', "all" or "none".
+     * @return      the <code>setPruning</code> flags.
+     * @throws      IllegalArgumentException on an unknown name.
+     */
+    public static int parsePruning(String list) {
+        if(list.equals("all")) {
+            return ALL_PRUNING;
+        }
+        int flags = 0;
+        for(String name : list.split("\\+")) {
+            int bit = Arrays.asList(PRUNING_NAMES).indexOf(name);
+            if(bit < 0 && !name.equals("none")) {
+                throw new IllegalArgumentException("unknown search technique: " + name);
+            }
+            flags |= bit < 0 ? 0 : 1 << bit;
+        }
+        return flags;
+    }
+
+    /**
+     * Scores the leaves of later searches with a neural network instead of the hand-written evaluation.
+     *
+     * @param network   the network, <code>null</code> for the hand-written evaluation.
+     */
+    public void setNetwork(Network network) {
+        evaluation.setNetwork(network);
+    }
+
+    /**
+     * Asks the search to stop as soon as possible. Can be called from any thread, and stays in effect
+     * until <code>clearStop</code> is called.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Clears a stop request, so the next search can run.
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    /**
+     * @return  best move of the deepest iteration the last search completed.
+     */
+    public int getBestMove() { return bestMove; }
+
+    /**
+     * @return  deepest iteration the last search completed.
+     */
+    public int getCompletedDepth() { return completedDepth; }
+
+    /**
+     * @return  number of positions visited by the last search.
+     */
+    public long getNodes() { return nodes; }
+
+    /**
+     * @return  number of positions visited by the quiescence search during the last search.
+     */
+    public long getQuiescenceNodes() { return quiescenceNodes; }
+
+    /**
+     * @return  score of the last search's best move, in centipawns for the side to move.
+     */
+    public int getBestScore() { return bestScore; }
+
+    /**
+     * @return  transposition table used by this search.
+     */
+    public TranspositionTable getTable() { return table; }
+
+    /**
+     * @return  pawn structure cache of this search's evaluation.
+     */
+    public PawnTable getPawnTable() { return evaluation.getPawnTable(); }
+
+    /**
+     * Gets how often a cutoff came from the first move tried, which shows how good the move ordering is.
+     *
+     * @return  fraction of fail-high nodes that failed high on their first move, 0 if there were none.
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Forgets the history tables, for example when a new game starts.
+     */
+    public void clearHistory() {
+        history.clear();
+    }
+
+    /**
+     * Negamax alpha-beta search.
+     *
+     * @param depth remaining depth in plies.
+     * @param alpha lower bound of the search window.
+     * @param beta  upper bound of the search window.
+     * @param ply   distance from the root.
+     * @return      score of the position for the side to move.
+     *
+     * @author      Bryle Tan
+     */
+    private int alphaBeta(int depth, int alpha, int beta, int ply) {
+        if(depth <= 0) {
+            return quiescence(alpha, beta, ply);
+        }
+
+        nodes++;
+        if(ply > selDepth) {
+            selDepth = ply;
+        }
+        if(checkStop()) {
+            return 0;
+        }
+        if(ply > 0 && (pos.isRepetition() || pos.isFiftyMoveDraw())) {
+            return 0;
+        }
+        if(ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        int originalAlpha = alpha;
+        long entry = table.probe(pos.hash);
+        int ttMove = TranspositionTable.move(entry);
+        hashProbes++;
+        if(entry != 0) {
+            hashHits++;
+        }
+
+        if(entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= depth) {
+            int ttScore = TranspositionTable.scoreFromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if(bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && ttScore >= beta)
+                    || (bound == TranspositionTable.UPPER && ttScore <= alpha)) {
+                hashCutoffs++;
+                return ttScore;
+            }
+        }
+
+        int us = pos.sideToMove;
+        boolean inCheck = pos.inCheck(us);
+        boolean pvNode = beta - alpha > 1;
+        // the selective techniques only apply to null window nodes out of check
+        boolean selective = !pvNode && !inCheck && Math.abs(beta) < MATE - MAX_PLY;
+        int staticEval = selective ? evaluate() : -INFINITY;
+
+        if(selective) {
+            if((pruning & REVERSE_FUTILITY) != 0 && depth <= REVERSE_FUTILITY_DEPTH
+                    && staticEval - REVERSE_FUTILITY_MARGIN * depth >= beta) {
+                return staticEval;
+            }
+
+            if((pruning & RAZORING) != 0 && depth <= RAZOR_DEPTH && staticEval + RAZOR_MARGIN * depth <= alpha) {
+                int score = quiescence(alpha, beta, ply);
+                if(aborted) {
+                    return 0;
+                }
+                if(score <= alpha) {
+                    return score;
+                }
+            }
+
+            if((pruning & NULL_MOVE) != 0 && depth >= NULL_MOVE_DEPTH && ply >= nullMoveMinPly
+                    && staticEval >= beta && hasPieces(us)) {
+                int reduced = depth - 1 - (3 + depth / 6);
+                pos.makeNullMove();
+                played[ply] = Moves.NONE;
+                int score = -alphaBeta(reduced, -beta, -alpha, ply + 1);
+                pos.unmakeNullMove();
+                if(aborted) {
+                    return 0;
+                }
+
+                if(score >= beta) {
+                    // a mate found after passing isn't a real mate
+                    if(score >= MATE - MAX_PLY) {
+                        score = beta;
+                    }
+                    if(depth < NULL_VERIFY_DEPTH) {
+                        return score;
+                    }
+                    // deep cutoffs are checked without null moves near this node, in case of a zugzwang
+                    int savedMinPly = nullMoveMinPly;
+                    nullMoveMinPly = ply + 3 * reduced / 4;
+                    int verified = alphaBeta(reduced, alpha, beta, ply);
+                    nullMoveMinPly = savedMinPly;
+                    if(aborted) {
+                        return 0;
+                    }
+                    if(verified >= beta) {
+                        return score;
+                    }
+                }
+            }
+        }
+        boolean futile = selective && (pruning & FUTILITY) != 0 && depth <= FUTILITY_DEPTH
+            && staticEval + FUTILITY_MARGIN * depth <= alpha;
+
+        MovePicker picker = pickers[ply];
+        picker.init(pos, history, ttMove, ply, ply > 0 ? played[ply - 1] : Moves.NONE);
+
+        int[] quiets = quietsTried[ply];
+        int quietCount = 0;
+        int legal = 0;
+        boolean pruned = false;
+        int best = -INFINITY;
+        int bestMoveHere = Moves.NONE;
+
+        for(int move = nextMove(picker); move != Moves.NONE; move = nextMove(picker)) {
+            // right above the leaves a losing capture is rarely worth the quiescence search it starts
+            if(depth == 1 && !inCheck && picker.stage() == MovePicker.BAD_CAPTURES) {
+                pruned = true;
+                continue;
+            }
+
+            boolean quiet = isQuiet(move);
+
+            pos.makeMove(move);
+            if(pos.inCheck(us)) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            boolean givesCheck = pos.inCheck(us ^ 1);
+            if(futile && quiet && !givesCheck && legal > 0) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            legal++;
+            played[ply] = move;
+
+            int newDepth = givesCheck && (pruning & CHECK_EXTENSIONS) != 0 ? depth : depth - 1;
+            int score;
+            if(legal == 1) {
+                score = -alphaBeta(newDepth, -beta, -alpha, ply + 1);
+            } else if(ply == 0 && rootMargin > 0) {
+                // proven to be no better than the margin below the best, or searched again for its exact score
+                int floor = Math.max(alpha - rootMargin, originalAlpha);
+                score = -alphaBeta(newDepth, -floor - 1, -floor, ply + 1);
+                if(score > floor && !aborted) {
+                    score = -alphaBeta(newDepth, -beta, -floor, ply + 1);
+                }
+            } else {
+                int reduction = 0;
+                if((pruning & LATE_MOVE_REDUCTIONS) != 0 && depth >= REDUCTION_DEPTH && legal > FULL_DEPTH_MOVES
+                        && quiet && !inCheck && !givesCheck) {
+                    reduction = REDUCTIONS[Math.min(depth, 63)][Math.min(legal, 63)] - (pvNode ? 1 : 0);
+                    reduction = Math.max(0, Math.min(reduction, newDepth - 1));
+                }
+                score = -alphaBeta(newDepth - reduction, -alpha - 1, -alpha, ply + 1);
+                if(score > alpha && reduction > 0 && !aborted) {
+                    score = -alphaBeta(newDepth, -alpha - 1, -alpha, ply + 1);
+                }
+                if(score > alpha && score < beta && !aborted) {
+                    score = -alphaBeta(newDepth, -beta, -alpha, ply + 1);
+                }
+            }
+            pos.unmakeMove(move);
+            if(aborted) {
+                return 0;
+            }
+
+            if(ply == 0 && (legal == 1 || score > alpha - rootMargin)) {
+                iterationCandidates[iterationCandidateCount] = move;
+                iterationCandidateScores[iterationCandidateCount++] = score;
+            }
+            if(score > best) {
+                best = score;
+                bestMoveHere = move;
+                if(ply == 0) {
+                    iterationMove = move;
+                }
+                if(score > alpha) {
+                    alpha = score;
+                    if(alpha >= beta) {
+                        cutoffs++;
+                        if(legal == 1) {
+                            firstMoveCutoffs++;
+                        }
+                        if(quiet) {
+                            history.update(pos, move, ply > 0 ? played[ply - 1] : Moves.NONE, ply, depth, quiets, 0, quietCount);
+                        }
+                        break;
+                    }
+                }
+            }
+
+            if(quiet) {
+                quiets[quietCount++] = move;
+            }
+        }
+
+        if(legal == 0) {
+            if(pruned) {
+                // every legal move was a pruned capture
+                return evaluate();
+            }
+            // no legal move: checkmate or stalemate
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound;
+        if(best >= beta) {
+            bound = TranspositionTable.LOWER;
+        } else if(best > originalAlpha) {
+            bound = TranspositionTable.EXACT;
+        } else {
+            bound = TranspositionTable.UPPER;
+        }
+        table.store(pos.hash, bestMoveHere, TranspositionTable.scoreToTable(best, ply), depth, bound);
+
+        return best;
+    }
+
+    /**
+     * Quiescence search. The side to move may stand pat on the static evaluation, or try captures
+     * and promotions that don't lose material. When in check every move is tried instead, since
+     * standing pat isn't an option.
+     *
+     * @param alpha lower bound of the search window.
+     * @param beta  upper bound of the search window.
+     * @param ply   distance from the root.
+     * @return      score of the position for the side to move.
+     *
+     * @author      Bryle Tan
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        nodes++;
+        quiescenceNodes++;
+        if(ply > selDepth) {
+            selDepth = ply;
+        }
+
+        if(checkStop()) {
+            return 0;
+        }
+        if(ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        int us = pos.sideToMove;
+        boolean inCheck = pos.inCheck(us);
+        int standPat = -INFINITY;
+        int best = -INFINITY;
+
+        MovePicker picker = pickers[ply];
+        if(inCheck) {
+            picker.init(pos, history, Moves.NONE, ply, Moves.NONE);
+        } else {
+            standPat = evaluate();
+            if(standPat >= beta) {
+                return standPat;
+            }
+            if(standPat > alpha) {
+                alpha = standPat;
+            }
+            best = standPat;
+            picker.initQuiescence(pos);
+        }
+
+        int legal = 0;
+        for(int move = nextMove(picker); move != Moves.NONE; move = nextMove(picker)) {
+            // delta pruning: even winning the piece for free can't bring the score up to alpha
+            if(!inCheck && Moves.promotion(move) == 0 && standPat + captureValue(move) + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+
+            pos.makeMove(move);
+            if(pos.inCheck(us)) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            legal++;
+
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            pos.unmakeMove(move);
+            if(aborted) {
+                return 0;
+            }
+
+            if(score > best) {
+                best = score;
+                if(score > alpha) {
+                    alpha = score;
+                    if(alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if(inCheck && legal == 0) {
+            return -MATE + ply;
+        }
+
+        return best;
+    }
+
+    /**
+     * Evaluates the position, timing one call in <code>TIMING_SAMPLE</code> while telemetry is on.
+     *
+     * @return  score in centipawns for the side to move.
+     */
+    private int evaluate() {
+        if(telemetry == null || (++evalCalls & (TIMING_SAMPLE - 1)) != 0) {
+            return evaluation.evaluate(pos);
+        }
+        long start = System.nanoTime();
+        int score = evaluation.evaluate(pos);
+        evalNanos += (System.nanoTime() - start) * TIMING_SAMPLE;
+        return score;
+    }
+
+    /**
+     * Gets the next move of a picker, timing one call in <code>TIMING_SAMPLE</code> while telemetry is on.
+     *
+     * @param picker    move picker of the ply.
+     * @return          the move, <code>Moves.NONE</code> once there are no more.
+     */
+    private int nextMove(MovePicker picker) {
+        if(telemetry == null || (++moveCalls & (TIMING_SAMPLE - 1)) != 0) {
+            return picker.next();
+        }
+        long start = System.nanoTime();
+        int move = picker.next();
+        moveGenNanos += (System.nanoTime() - start) * TIMING_SAMPLE;
+        return move;
+    }
+
+    /**
+     * Checks the node limit and the checkpoint at every node, and a stop request and the hard time
+     * limit every 1024 nodes, so neither the volatile read nor <code>System.nanoTime</code> is in the hot path.
+     *
+     * @return  <code>true</code> if the search has been stopped and should unwind.
+     */
+    private boolean checkStop() {
+        // the node budget is checked at every node so it is a hard limit, the clock and the stop request less often
+        if((nodeLimit > 0 && nodes >= nodeLimit)
+                || ((nodes & 1023) == 0 && (stopRequested || (timer != null && timer.isHardLimitReached())))) {
+            aborted = true;
+        } else if(checkpoint != null && nodes >= nextCheckpoint && !aborted) {
+            nextCheckpoint = nodes + checkpointInterval;
+            if(checkpoint.shouldYield(nodes)) {
+                preempted = true;
+                aborted = true;
+            }
+        }
+        return aborted;
+    }
+
+    /**
+     * Checks if a side has a knight, bishop, rook or queen. Without one, zugzwang is common enough
+     * that passing the move can't be trusted to be the worst option.
+     *
+     * @param side  color of the side.
+     * @return      <code>true</code> if the side has a piece other than pawns and its king.
+     */
+    private boolean hasPieces(int side) {
+        return (pos.colors[side] & ~pos.pieces[Position.piece(side, Position.PAWN)]
+            & ~pos.pieces[Position.piece(side, Position.KING)]) != 0;
+    }
+
+    /**
+     * Gets the value of the piece a move captures.
+     *
+     * @param move  packed move.
+     * @return      value of the captured piece, 0 if the move doesn't capture.
+     */
+    private int captureValue(int move) {
+        if(Moves.flag(move) == Moves.EN_PASSANT) {
+            return See.VALUE[Position.PAWN];
+        }
+        int target = pos.board[Moves.to(move)];
+        return target == Position.EMPTY ? 0 : See.VALUE[Position.type(target)];
+    }
+
+    /**
+     * Checks if a move neither captures nor promotes.
+     *
+     * @param move  packed move.
+     * @return      <code>true</code> for quiet moves.
+     */
+    private boolean isQuiet(int move) {
+        return pos.board[Moves.to(move)] == Position.EMPTY
+            && Moves.flag(move) != Moves.EN_PASSANT
+            && Moves.promotion(move) == 0;
+    }
+}
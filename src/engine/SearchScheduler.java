@@ -0,0 +1,542 @@
+package engine;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares a fixed pool of worker threads between the move searches of many games, so that any number of
+ * games asking for a move at once never runs more searches than there are workers.
+ * <p>
+ * Each game keeps its own state in a <code>Session</code>: its difficulty level, its clock and its
+ * random choices. A request copies the position, so the game can go on changing its own. Requests wait
+ * in a priority queue until a worker is free. The worker searches in slices: every few thousand nodes
+ * the search asks its <code>Checkpoint</code> whether a more urgent request is waiting, and if so it
+ * stops, keeping its completed iterations, and goes back in the queue. When it comes out again it goes
+ * on from the next iteration, on whichever worker is free, and the transposition table shared by all
+ * workers makes up for the iteration that was cut short.
+ * <p>
+ * Requests are ordered by deadline: the time by which the move is due, which is soon for a game short
+ * on its clock and a second away for a game without one. The time a request has already run is added to
+ * its deadline, so requests with about the same deadline take turns slice by slice instead of each
+ * running to the end of its budget. Each move stops at its level's node and time budgets, or at its
+ * deadline, whichever comes first, and plays the best it has found so far.
+ * <p>
+ * The number of requests waiting, how long they waited before their first slice and in total, and how
+ * often searches were preempted are counted, to size the pool.
+ *
+ * @author  Bryle Tan
+ */
+public class SearchScheduler {
+
+    /**
+     * number of moves left in the game assumed to work out the deadline of a game on a clock.
+     */
+    private static final int MOVES_TO_GO = 30;
+
+    /**
+     * time within which a game without a clock gets its move, in milliseconds.
+     */
+    private static final long NO_CLOCK_ALLOWANCE = 1000;
+
+    /**
+     * requests waiting for a worker, most urgent first.
+     */
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>();
+
+    /**
+     * transposition table shared by every worker.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * nodes between two checks for a more urgent request.
+     */
+    private final long sliceNodes;
+
+    /**
+     * worker threads.
+     */
+    private final Thread[] workers;
+
+    /**
+     * order of the requests, so requests with the same deadline are served first come first served.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * set to stop the workers.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * largest number of requests waiting at once.
+     */
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * number of moves played.
+     */
+    private final AtomicLong moves = new AtomicLong();
+
+    /**
+     * number of slices searched.
+     */
+    private final AtomicLong slices = new AtomicLong();
+
+    /**
+     * number of slices stopped for a more urgent request.
+     */
+    private final AtomicLong preemptions = new AtomicLong();
+
+    /**
+     * number of moves played after their deadline.
+     */
+    private final AtomicLong lateMoves = new AtomicLong();
+
+    /**
+     * time from the requests to their first slice, in nanoseconds.
+     */
+    private final AtomicLong firstWaitNanos = new AtomicLong();
+
+    /**
+     * longest time from a request to its first slice, in nanoseconds.
+     */
+    private final AtomicLong maxFirstWaitNanos = new AtomicLong();
+
+    /**
+     * time the requests spent in the queue in all, in nanoseconds.
+     */
+    private final AtomicLong queuedNanos = new AtomicLong();
+
+    /**
+     * time from the requests to their moves, in nanoseconds.
+     */
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    /**
+     * longest time from a request to its move, in nanoseconds.
+     */
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Constructor for a scheduler, which starts its workers.
+     *
+     * @param workers           number of worker threads, usually the number of cores to give to searching.
+     * @param tableMegabytes    size of the transposition table shared by the workers.
+     * @param sliceNodes        nodes a search runs before it checks for a more urgent request.
+     */
+    public SearchScheduler(int workers, int tableMegabytes, long sliceNodes) {
+        this.table = new TranspositionTable(tableMegabytes);
+        this.sliceNodes = Math.max(1, sliceNodes);
+        this.workers = new Thread[Math.max(1, workers)];
+        for(int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(this::work, "search-worker-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Asks for the computer's move in a game. Only one request per session may be waiting at a time.
+     *
+     * @param session   state of the game.
+     * @param position  position with the computer to move. A copy is searched, so the caller may keep using it.
+     * @return          completed with the move, <code>Moves.NONE</code> if there are no legal moves, on a
+     *                  worker thread.
+     *
+     * @author          Bryle Tan
+     */
+    public CompletableFuture<Integer> requestMove(Session session, Position position) {
+        long now = System.nanoTime();
+        long allowance = session.clock > 0 ? session.clock / MOVES_TO_GO + session.increment : NO_CLOCK_ALLOWANCE;
+        Job job = new Job(session, position.copy(), now, now + allowance * 1_000_000L, sequence.getAndIncrement());
+        if(shutdown) {
+            job.result.cancel(false);
+            return job.result;
+        }
+        enqueue(job);
+        return job.result;
+    }
+
+    /**
+     * Puts a request in the queue and updates the largest queue depth. A request that only reaches the
+     * queue once <code>shutdown</code> has emptied it is taken back out and cancelled.
+     *
+     * @param job   the request.
+     */
+    private void enqueue(Job job) {
+        job.queuedAt = System.nanoTime();
+        job.priority = job.deadline + job.runNanos;
+        queue.add(job);
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        if(shutdown && queue.remove(job)) {
+            job.result.cancel(false);
+        }
+    }
+
+    /**
+     * Runs on each worker: takes the most urgent request and searches one slice of it, until shutdown.
+     */
+    private void work() {
+        Search search = new Search(table);
+        TimeManager timer = new TimeManager();
+        while(!shutdown) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch(InterruptedException e) {
+                return;
+            }
+
+            long waited = System.nanoTime() - job.queuedAt;
+            queuedNanos.addAndGet(waited);
+            if(!job.started) {
+                job.started = true;
+                firstWaitNanos.addAndGet(waited);
+                maxFirstWaitNanos.accumulateAndGet(waited, Math::max);
+            }
+            runSlice(search, timer, job);
+        }
+    }
+
+    /**
+     * Searches a request until its budget runs out, its deadline passes or a more urgent request is
+     * waiting, then plays its move or puts it back in the queue.
+     *
+     * @param search    search of the worker.
+     * @param timer     time manager of the worker.
+     * @param job       the request.
+     *
+     * @author          Bryle Tan
+     */
+    private void runSlice(Search search, TimeManager timer, Job job) {
+        Difficulty level = job.session.level;
+        long start = System.nanoTime();
+        long cpuStart = Difficulty.cpuTime();
+        long millisLeft = Math.min(level.millis - job.runNanos / 1_000_000L, (job.deadline - start) / 1_000_000L);
+
+        if(millisLeft > 0 || job.bestMove == Moves.NONE) {
+            search.setNodeLimit(Math.max(1, level.nodes - job.nodes));
+            search.setRootMargin(level.margin);
+            search.setCheckpoint(nodes -> shouldYield(job, start), sliceNodes);
+            timer.startFixed(Math.max(1, millisLeft));
+            int move = search.think(job.position, job.completedDepth + 1, Search.MAX_PLY - 1, timer);
+            slices.incrementAndGet();
+
+            job.nodes += search.getNodes();
+            job.cpuNanos += Difficulty.cpuTime() - cpuStart;
+            job.runNanos += System.nanoTime() - start;
+            if(search.getCompletedDepth() > 0) {
+                job.bestMove = move;
+                job.completedDepth = search.getCompletedDepth();
+                job.candidateCount = search.getCandidates(job.candidates, job.scores);
+            } else if(job.bestMove == Moves.NONE) {
+                job.bestMove = move;
+            }
+
+            if(search.wasPreempted()) {
+                preemptions.incrementAndGet();
+                if(shutdown) {
+                    // no worker is left to take it back out of the queue
+                    job.result.cancel(false);
+                } else {
+                    enqueue(job);
+                }
+                return;
+            }
+        }
+
+        int move = level.choose(job.bestMove, job.candidates, job.scores, job.candidateCount, job.session.random);
+        level.addUsage(job.cpuNanos, job.nodes);
+        long now = System.nanoTime();
+        moves.incrementAndGet();
+        latencyNanos.addAndGet(now - job.submitted);
+        maxLatencyNanos.accumulateAndGet(now - job.submitted, Math::max);
+        if(now > job.deadline) {
+            lateMoves.incrementAndGet();
+        }
+        job.result.complete(move);
+    }
+
+    /**
+     * Decides at a checkpoint whether the running request gives its worker to a waiting one.
+     *
+     * @param job   the running request.
+     * @param start when its slice started, from <code>System.nanoTime</code>.
+     * @return      <code>true</code> if a waiting request is more urgent, counting the time this one
+     *              has run so far.
+     */
+    private boolean shouldYield(Job job, long start) {
+        Job next = queue.peek();
+        return next != null && next.priority < job.deadline + job.runNanos + (System.nanoTime() - start);
+    }
+
+    /**
+     * Stops the workers once they finish their slices, and waits for them. Requests still waiting are
+     * cancelled, including those put back by a slice that was running.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for(Thread worker : workers) {
+            worker.interrupt();
+        }
+        cancelWaiting();
+        for(Thread worker : workers) {
+            try {
+                worker.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        cancelWaiting();
+    }
+
+    /**
+     * Cancels every request in the queue.
+     */
+    private void cancelWaiting() {
+        for(Job job = queue.poll(); job != null; job = queue.poll()) {
+            job.result.cancel(false);
+        }
+    }
+
+    /**
+     * @return  number of requests waiting for a worker.
+     */
+    public int getQueueDepth() { return queue.size(); }
+
+    /**
+     * @return  largest number of requests that were waiting at once.
+     */
+    public int getMaxQueueDepth() { return maxQueueDepth.get(); }
+
+    /**
+     * @return  number of moves played.
+     */
+    public long getMoves() { return moves.get(); }
+
+    /**
+     * @return  number of slices searched.
+     */
+    public long getSlices() { return slices.get(); }
+
+    /**
+     * @return  number of slices stopped for a more urgent request.
+     */
+    public long getPreemptions() { return preemptions.get(); }
+
+    /**
+     * @return  number of moves played after their deadline.
+     */
+    public long getLateMoves() { return lateMoves.get(); }
+
+    /**
+     * @return  average time from a request to its first slice, in milliseconds, 0 before any move.
+     */
+    public double getAverageWaitMillis() {
+        long count = moves.get();
+        return count == 0 ? 0 : firstWaitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return  longest time from a request to its first slice, in milliseconds.
+     */
+    public double getMaxWaitMillis() { return maxFirstWaitNanos.get() / 1e6; }
+
+    /**
+     * @return  average time a request spent in the queue, between its slices too, in milliseconds.
+     */
+    public double getAverageQueuedMillis() {
+        long count = moves.get();
+        return count == 0 ? 0 : queuedNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return  average time from a request to its move, in milliseconds, 0 before any move.
+     */
+    public double getAverageLatencyMillis() {
+        long count = moves.get();
+        return count == 0 ? 0 : latencyNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return  longest time from a request to its move, in milliseconds.
+     */
+    public double getMaxLatencyMillis() { return maxLatencyNanos.get() / 1e6; }
+
+    /**
+     * State of one game kept between its requests, instead of the static state of <code>chess.Chess</code>.
+     */
+    public static class Session {
+
+        /**
+         * level the computer plays at.
+         */
+        final Difficulty level;
+
+        /**
+         * source of the level's move choices.
+         */
+        final Random random;
+
+        /**
+         * time left on the computer's clock in milliseconds, 0 without a clock.
+         */
+        volatile long clock;
+
+        /**
+         * time added to the clock after each move, in milliseconds.
+         */
+        volatile long increment;
+
+        /**
+         * Constructor for a game without a clock.
+         *
+         * @param level level the computer plays at.
+         * @param seed  seed of the move choices, so a game can be played again.
+         */
+        public Session(Difficulty level, long seed) {
+            this.level = level;
+            this.random = new Random(seed);
+        }
+
+        /**
+         * Sets the computer's clock before a request, which makes requests of games short on time more urgent.
+         *
+         * @param remaining time left, in milliseconds, 0 without a clock.
+         * @param increment time added after each move, in milliseconds.
+         */
+        public void setClock(long remaining, long increment) {
+            this.clock = remaining;
+            this.increment = increment;
+        }
+
+        /**
+         * @return  level the computer plays at.
+         */
+        public Difficulty getLevel() { return level; }
+
+        /**
+         * @return  time left on the computer's clock in milliseconds, 0 without a clock.
+         */
+        public long getClock() { return clock; }
+    }
+
+    /**
+     * One request for a move, with the progress of its search between slices.
+     */
+    private static class Job implements Comparable<Job> {
+
+        /**
+         * game the move is for.
+         */
+        final Session session;
+
+        /**
+         * copy of the position to search.
+         */
+        final Position position;
+
+        /**
+         * when the request was made, from <code>System.nanoTime</code>.
+         */
+        final long submitted;
+
+        /**
+         * when the move is due.
+         */
+        final long deadline;
+
+        /**
+         * order of the request.
+         */
+        final long sequence;
+
+        /**
+         * completed with the move.
+         */
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        /**
+         * moves of the last completed iteration within the level's margin.
+         */
+        final int[] candidates = new int[MoveGenerator.MAX_MOVES];
+
+        /**
+         * scores of <code>candidates</code>.
+         */
+        final int[] scores = new int[MoveGenerator.MAX_MOVES];
+
+        /**
+         * number of <code>candidates</code>.
+         */
+        int candidateCount;
+
+        /**
+         * deadline plus the time run so far when it was queued, the queue's order.
+         */
+        long priority;
+
+        /**
+         * when it was last put in the queue.
+         */
+        long queuedAt;
+
+        /**
+         * <code>true</code> once its first slice has started.
+         */
+        boolean started;
+
+        /**
+         * nodes searched so far.
+         */
+        long nodes;
+
+        /**
+         * CPU time used so far, in nanoseconds.
+         */
+        long cpuNanos;
+
+        /**
+         * time spent searching so far, in nanoseconds.
+         */
+        long runNanos;
+
+        /**
+         * deepest iteration completed so far.
+         */
+        int completedDepth;
+
+        /**
+         * best move of that iteration.
+         */
+        int bestMove = Moves.NONE;
+
+        /**
+         * Constructor for a request.
+         *
+         * @param session   game the move is for.
+         * @param position  copy of the position.
+         * @param submitted when the request was made.
+         * @param deadline  when the move is due.
+         * @param sequence  order of the request.
+         */
+        Job(Session session, Position position, long submitted, long deadline, long sequence) {
+            this.session = session;
+            this.position = position;
+            this.submitted = submitted;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = Long.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package engine;
+
+import java.util.Locale;
+
+/**
+ * Statistics of one completed iteration of a <code>Search</code>, for tuning: how many nodes it took
+ * and how they were spent.
+ * <p>
+ * The search counts in plain fields of its own, since one search is only ever run by one thread, and
+ * only gathers them into a <code>SearchStats</code> when an iteration is completed, so the counting
+ * costs no more than the node count already did. Time spent generating moves and evaluating is measured
+ * on one call in 64 and scaled up, and only when a <code>TelemetryListener</code> is set. Stats of
+ * several iterations or searches, for example from several threads, can be added together with
+ * <code>add</code>.
+ *
+ * @author  Bryle Tan
+ */
+public class SearchStats {
+
+    /**
+     * depth of the iteration, or of the deepest iteration added.
+     */
+    int depth;
+
+    /**
+     * deepest ply reached, quiescence search included.
+     */
+    int selDepth;
+
+    /**
+     * nodes visited by the iteration.
+     */
+    long nodes;
+
+    /**
+     * of those, nodes visited by the quiescence search.
+     */
+    long quiescenceNodes;
+
+    /**
+     * nodes of the iteration before, 0 for the first.
+     */
+    long previousNodes;
+
+    /**
+     * time the iteration took, in nanoseconds.
+     */
+    long nanos;
+
+    /**
+     * transposition table lookups.
+     */
+    long hashProbes;
+
+    /**
+     * lookups that found the position.
+     */
+    long hashHits;
+
+    /**
+     * lookups whose score was returned without searching.
+     */
+    long hashCutoffs;
+
+    /**
+     * nodes that failed high.
+     */
+    long cutoffs;
+
+    /**
+     * nodes that failed high on the first move tried.
+     */
+    long firstMoveCutoffs;
+
+    /**
+     * estimated time spent generating and ordering moves, in nanoseconds.
+     */
+    long moveGenNanos;
+
+    /**
+     * estimated time spent evaluating, in nanoseconds.
+     */
+    long evalNanos;
+
+    /**
+     * best move found by the iteration.
+     */
+    int bestMove = Moves.NONE;
+
+    /**
+     * score of the best move, in centipawns for the side to move.
+     */
+    int score;
+
+    /**
+     * Adds the counts of other stats to these, for example those of another thread's search. The
+     * depths and the best move are the deepest ones.
+     *
+     * @param other stats to add.
+     */
+    public void add(SearchStats other) {
+        if(other.depth >= depth) {
+            depth = other.depth;
+            bestMove = other.bestMove;
+            score = other.score;
+        }
+        selDepth = Math.max(selDepth, other.selDepth);
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        previousNodes += other.previousNodes;
+        nanos += other.nanos;
+        hashProbes += other.hashProbes;
+        hashHits += other.hashHits;
+        hashCutoffs += other.hashCutoffs;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        moveGenNanos += other.moveGenNanos;
+        evalNanos += other.evalNanos;
+    }
+
+    /**
+     * @return  depth of the iteration.
+     */
+    public int getDepth() { return depth; }
+
+    /**
+     * @return  deepest ply reached, quiescence search included.
+     */
+    public int getSelDepth() { return selDepth; }
+
+    /**
+     * @return  nodes visited by the iteration.
+     */
+    public long getNodes() { return nodes; }
+
+    /**
+     * @return  nodes visited by the quiescence search.
+     */
+    public long getQuiescenceNodes() { return quiescenceNodes; }
+
+    /**
+     * @return  time the iteration took, in milliseconds.
+     */
+    public double getMillis() { return nanos / 1e6; }
+
+    /**
+     * @return  nodes per second.
+     */
+    public long getNodesPerSecond() {
+        return nanos == 0 ? 0 : (long) (nodes * 1e9 / nanos);
+    }
+
+    /**
+     * Gets the effective branching factor: how many times the nodes grew from the iteration before.
+     *
+     * @return  the factor, 0 for the first iteration.
+     */
+    public double getBranchingFactor() {
+        return previousNodes == 0 ? 0 : (double) nodes / previousNodes;
+    }
+
+    /**
+     * @return  fraction of transposition table lookups that found the position.
+     */
+    public double getHashHitRate() {
+        return hashProbes == 0 ? 0 : (double) hashHits / hashProbes;
+    }
+
+    /**
+     * @return  fraction of transposition table lookups whose score was returned without searching.
+     */
+    public double getHashCutoffRate() {
+        return hashProbes == 0 ? 0 : (double) hashCutoffs / hashProbes;
+    }
+
+    /**
+     * @return  fraction of fail-high nodes that failed high on their first move.
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * @return  estimated time spent generating and ordering moves, in milliseconds.
+     */
+    public double getMoveGenMillis() { return moveGenNanos / 1e6; }
+
+    /**
+     * @return  estimated time spent evaluating, in milliseconds.
+     */
+    public double getEvalMillis() { return evalNanos / 1e6; }
+
+    /**
+     * @return  best move found by the iteration.
+     */
+    public int getBestMove() { return bestMove; }
+
+    /**
+     * @return  score of the best move, in centipawns for the side to move.
+     */
+    public int getScore() { return score; }
+
+    /**
+     * Writes the stats as one line of JSON, for a log to be read by scripts.
+     *
+     * @return  the JSON object.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"depth\":%d,\"seldepth\":%d,\"nodes\":%d,\"qnodes\":%d,\"ms\":%.3f,"
+                + "\"nps\":%d,\"ebf\":%.3f,\"hash_probes\":%d,\"hash_hit_rate\":%.4f,\"hash_cutoff_rate\":%.4f,"
+                + "\"first_move_cutoff_rate\":%.4f,\"movegen_ms\":%.3f,\"eval_ms\":%.3f,\"move\":\"%s\",\"score\":%d}",
+                depth, selDepth, nodes, quiescenceNodes, getMillis(), getNodesPerSecond(), getBranchingFactor(),
+                hashProbes, getHashHitRate(), getHashCutoffRate(), getFirstMoveCutoffRate(), getMoveGenMillis(),
+                getEvalMillis(), bestMove == Moves.NONE ? "none" : Moves.toUci(bestMove), score);
+    }
+}
@@ -0,0 +1,147 @@
+package engine;
+
+/**
+ * Static exchange evaluation. Works out the material result of the whole capture sequence on one
+ * square, where each side always recaptures with its least valuable attacker and may stop
+ * capturing when continuing would lose material.
+ * <p>
+ * Everything is worked out from attack bitboards; no moves are made on the position.
+ *
+ * @author  Bryle Tan
+ */
+public final class See {
+
+    /**
+     * value of each piece type in an exchange, indexed by piece type.
+     */
+    public static final int[] VALUE = {100, 325, 325, 500, 975, 20000};
+
+    /**
+     * Not instantiable, all methods are static.
+     */
+    private See() {
+    }
+
+    /**
+     * Evaluates the exchange started by a move. The move is made by the color of the piece on its
+     * starting square, which doesn't have to be the side to move.
+     *
+     * @param pos   position the move is played in.
+     * @param move  packed move, normally a capture or a promotion.
+     * @return      material won by the moving side, in centipawns. Negative if the exchange loses material.
+     *
+     * @author      Bryle Tan
+     */
+    public static int see(Position pos, int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int[] gain = new int[32];
+
+        int attacker = Position.type(pos.board[from]);
+        int side = Position.color(pos.board[from]);
+        long occupancy = pos.occupied;
+
+        if(Moves.flag(move) == Moves.EN_PASSANT) {
+            gain[0] = VALUE[Position.PAWN];
+            occupancy ^= 1L << (side == Position.WHITE ? to - 8 : to + 8);
+        } else {
+            gain[0] = pos.board[to] == Position.EMPTY ? 0 : VALUE[Position.type(pos.board[to])];
+        }
+
+        if(Moves.promotion(move) != 0) {
+            attacker = Moves.promotion(move);
+            gain[0] += VALUE[attacker] - VALUE[Position.PAWN];
+        }
+
+        long diagonal = pos.pieces[Position.BISHOP] | pos.pieces[Position.QUEEN]
+            | pos.pieces[6 + Position.BISHOP] | pos.pieces[6 + Position.QUEEN];
+        long straight = pos.pieces[Position.ROOK] | pos.pieces[Position.QUEEN]
+            | pos.pieces[6 + Position.ROOK] | pos.pieces[6 + Position.QUEEN];
+
+        long fromBit = 1L << from;
+        long attackers = pos.attackersTo(to, occupancy);
+        int depth = 0;
+
+        while(true) {
+            depth++;
+            side ^= 1;
+
+            // score if the piece that just captured is taken back
+            gain[depth] = VALUE[attacker] - gain[depth - 1];
+
+            // neither side can improve on standing pat, so stop early
+            if(Math.max(-gain[depth - 1], gain[depth]) < 0) {
+                break;
+            }
+
+            occupancy ^= fromBit;
+            attackers &= occupancy;
+
+            // pieces behind the capturer can now join in
+            attackers |= (Attacks.bishop(to, occupancy) & diagonal & occupancy)
+                | (Attacks.rook(to, occupancy) & straight & occupancy);
+
+            long ours = attackers & pos.colors[side];
+            if(ours == 0) {
+                break;
+            }
+
+            fromBit = 0;
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                long candidates = ours & pos.pieces[Position.piece(side, type)];
+                if(candidates != 0) {
+                    fromBit = candidates & -candidates;
+                    attacker = type;
+                    break;
+                }
+            }
+
+            // the king can only recapture if the other side has nothing left to take back with
+            if(attacker == Position.KING && (attackers & ~fromBit & pos.colors[side ^ 1] & occupancy) != 0) {
+                break;
+            }
+        }
+
+        while(--depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+
+        return gain[0];
+    }
+
+    /**
+     * Finds the pieces of one side that the other side can win material by capturing.
+     *
+     * @param pos   position to look at.
+     * @param color color of the pieces to check.
+     * @return      bitboard of the hanging pieces.
+     *
+     * @author      Bryle Tan
+     */
+    public static long hangingPieces(Position pos, int color) {
+        long hanging = 0;
+        long own = pos.colors[color] & ~pos.pieces[Position.piece(color, Position.KING)];
+
+        for(long bb = own; bb != 0; bb &= bb - 1) {
+            int sq = Long.numberOfTrailingZeros(bb);
+            long enemies = pos.attackersTo(sq, pos.occupied) & pos.colors[color ^ 1];
+            if(enemies == 0) {
+                continue;
+            }
+
+            // start the exchange with the cheapest attacker
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                long candidates = enemies & pos.pieces[Position.piece(color ^ 1, type)];
+                if(candidates != 0) {
+                    int from = Long.numberOfTrailingZeros(candidates);
+                    if(see(pos, Moves.make(from, sq, 0, Moves.NORMAL)) > 0) {
+                        hanging |= 1L << sq;
+                    }
+                    break;
+                }
+            }
+        }
+
+        return hanging;
+    }
+}
@@ -0,0 +1,16 @@
+package engine;
+
+/**
+ * Told by a <code>Search</code> the statistics of every iteration it completes, for tuning.
+ *
+ * @author  Bryle Tan
+ */
+public interface TelemetryListener {
+
+    /**
+     * Called on the searching thread after an iteration completes, before the next one starts.
+     *
+     * @param stats statistics of the iteration. The search doesn't keep or change them.
+     */
+    void iterationStats(SearchStats stats);
+}
@@ -0,0 +1,175 @@
+package engine;
+
+/**
+ * Decides how long the computer thinks about a move when playing on a clock.
+ * <p>
+ * Each move gets a soft limit and a hard limit, worked out from the time left on the clock, the
+ * increment and the number of moves until the next time control. Between iterations the search asks
+ * <code>shouldStop</code> whether to start another one: it stops early once the best move has stayed
+ * the same for a few iterations, and gets more time when the score drops. The hard limit is never
+ * passed, and the search checks it every few thousand nodes with <code>isHardLimitReached</code>.
+ *
+ * @author  Bryle Tan
+ */
+public class TimeManager {
+
+    /**
+     * number of moves left in the game assumed when there is no time control to reach.
+     */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+
+    /**
+     * time kept back for printing the move and the delay of the game loop, in milliseconds.
+     */
+    private static final long OVERHEAD = 30;
+
+    /**
+     * drop in score from the last iteration, in centipawns, that makes the search take more time.
+     */
+    private static final int SCORE_DROP = 30;
+
+    /**
+     * number of iterations in a row with the same best move before the search stops early.
+     */
+    private static final int STABLE_ITERATIONS = 4;
+
+    /**
+     * time the search started, from <code>System.nanoTime</code>.
+     */
+    private long startTime;
+
+    /**
+     * time after which no new iteration is started, in nanoseconds after the start.
+     */
+    private long softLimit;
+
+    /**
+     * time after which the search is stopped, in nanoseconds after the start.
+     */
+    private long hardLimit;
+
+    /**
+     * best move of the last completed iteration.
+     */
+    private int lastMove;
+
+    /**
+     * score of the last completed iteration.
+     */
+    private int lastScore;
+
+    /**
+     * number of iterations in a row that ended with <code>lastMove</code>.
+     */
+    private int stableIterations;
+
+    /**
+     * <code>true</code> once the soft limit has been raised because the score dropped.
+     */
+    private boolean extended;
+
+    /**
+     * <code>true</code> if the move has a fixed time, which is used up whatever the search finds.
+     */
+    private boolean fixed;
+
+    /**
+     * Starts the clock for a new move and works out its time limits.
+     *
+     * @param remaining     time left on the clock of the side to move, in milliseconds.
+     * @param increment     time added to the clock after the move, in milliseconds.
+     * @param movesToGo     moves until the next time control, 0 if the clock has to last the whole game.
+     *
+     * @author              Bryle Tan
+     */
+    public void start(long remaining, long increment, int movesToGo) {
+        startTime = System.nanoTime();
+        lastMove = Moves.NONE;
+        lastScore = 0;
+        stableIterations = 0;
+        extended = false;
+        fixed = false;
+
+        int moves = movesToGo > 0 ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+        long usable = Math.max(remaining - OVERHEAD, 1);
+
+        long soft = usable / moves + increment * 3 / 4;
+        long hard = Math.min(soft * 4, usable / 3 + increment);
+
+        // never plan to use more than the clock allows, even with a large increment
+        soft = Math.min(soft, usable / 2);
+        hard = Math.max(Math.min(hard, usable * 3 / 4), soft);
+
+        softLimit = soft * 1_000_000L;
+        hardLimit = hard * 1_000_000L;
+    }
+
+    /**
+     * Starts the clock for a move with a fixed amount of time, as used in test games and benchmarks.
+     * The search isn't stopped early, it runs until the time is up.
+     *
+     * @param millis    time for the move, in milliseconds.
+     */
+    public void startFixed(long millis) {
+        startTime = System.nanoTime();
+        lastMove = Moves.NONE;
+        lastScore = 0;
+        stableIterations = 0;
+        extended = true;
+        fixed = true;
+        softLimit = millis * 1_000_000L;
+        hardLimit = softLimit;
+    }
+
+    /**
+     * Decides after an iteration whether to start the next one.
+     *
+     * @param move  best move of the iteration.
+     * @param score score of the iteration, for the side to move.
+     * @return      <code>true</code> if the search should stop and play the move.
+     *
+     * @author      Bryle Tan
+     */
+    public boolean shouldStop(int move, int score) {
+        if(fixed) {
+            return false;
+        }
+        if(move == lastMove) {
+            stableIterations++;
+        } else {
+            stableIterations = 1;
+        }
+
+        // a falling score means the search found a problem, so give it the time to find a way out
+        if(!extended && lastMove != Moves.NONE && score < lastScore - SCORE_DROP) {
+            softLimit = Math.min(softLimit * 2, hardLimit);
+            extended = true;
+        }
+        lastMove = move;
+        lastScore = score;
+
+        long elapsed = System.nanoTime() - startTime;
+        if(elapsed >= softLimit) {
+            return true;
+        }
+        // the next iteration takes a few times as long as this one, so don't start what can't finish
+        if(elapsed * 2 >= softLimit && stableIterations >= STABLE_ITERATIONS) {
+            return true;
+        }
+        return elapsed * 3 >= hardLimit;
+    }
+
+    /**
+     * @return  <code>true</code> once the hard limit has passed and the search has to stop.
+     */
+    public boolean isHardLimitReached() {
+        return System.nanoTime() - startTime >= hardLimit;
+    }
+
+    /**
+     * @return  milliseconds since <code>start</code>.
+     */
+    public long elapsed() {
+        return (System.nanoTime() - startTime) / 1_000_000L;
+    }
+}
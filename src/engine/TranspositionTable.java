@@ -0,0 +1,162 @@
+package engine;
+
+/**
+ * Hash table of search results, indexed by position hash. Each entry stores the best move, score,
+ * depth and bound type of a searched position, packed into one <code>long</code>.
+ * <p>
+ * Entries live in two parallel <code>long</code> arrays rather than as objects. The key is stored
+ * exclusive-or'd with the data, so an entry torn by two threads writing at once fails the key check
+ * instead of returning mixed data. This lets several searches share one table without locking.
+ *
+ * @author  Bryle Tan
+ */
+public class TranspositionTable {
+
+    /**
+     * bound type of a score that is exact.
+     */
+    public static final int EXACT = 1;
+
+    /**
+     * bound type of a score that is at least the stored value (the search failed high).
+     */
+    public static final int LOWER = 2;
+
+    /**
+     * bound type of a score that is at most the stored value (the search failed low).
+     */
+    public static final int UPPER = 3;
+
+    /**
+     * stored keys, exclusive-or'd with the data.
+     */
+    private final long[] keys;
+
+    /**
+     * stored data: move in bits 0-16, score in bits 17-32, depth in bits 33-40, bound in bits 41-42.
+     */
+    private final long[] data;
+
+    /**
+     * mask from a hash to an index.
+     */
+    private final int mask;
+
+    /**
+     * Constructor for a table of the given size.
+     *
+     * @param megabytes approximate size of the table. Rounded down to a power of two number of entries.
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(1024, (long) megabytes * 1024 * 1024 / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Clears every entry, for example when a new game starts.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash  hash of the position.
+     * @return      packed entry, 0 if the position isn't in the table.
+     */
+    public long probe(long hash) {
+        int index = (int) hash & mask;
+        long entry = data[index];
+        if((keys[index] ^ entry) != hash) {
+            return 0;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a search result, replacing whatever was in its slot unless that entry is for the same
+     * position and was searched deeper.
+     *
+     * @param hash  hash of the position.
+     * @param move  best move found, <code>Moves.NONE</code> if there isn't one.
+     * @param score score of the position, already adjusted with <code>scoreToTable</code>.
+     * @param depth depth the position was searched to.
+     * @param bound <code>EXACT</code>, <code>LOWER</code> or <code>UPPER</code>.
+     */
+    public void store(long hash, int move, int score, int depth, int bound) {
+        int index = (int) hash & mask;
+        long old = data[index];
+        boolean samePosition = (keys[index] ^ old) == hash;
+
+        if(samePosition && depth < depth(old) && bound != EXACT) {
+            return;
+        }
+        // keep the old move if this search didn't find one
+        if(move == Moves.NONE && samePosition) {
+            move = move(old);
+        }
+
+        long entry = (move & 0x1FFFFL)
+            | ((long) (score + 32768) << 17)
+            | ((long) Math.max(0, Math.min(depth, 255)) << 33)
+            | ((long) bound << 41);
+        data[index] = entry;
+        keys[index] = hash ^ entry;
+    }
+
+    /**
+     * @param entry packed entry from <code>probe</code>.
+     * @return      the stored move.
+     */
+    public static int move(long entry) { return (int) (entry & 0x1FFFF); }
+
+    /**
+     * @param entry packed entry from <code>probe</code>.
+     * @return      the stored score, still to be adjusted with <code>scoreFromTable</code>.
+     */
+    public static int score(long entry) { return (int) ((entry >>> 17) & 0xFFFF) - 32768; }
+
+    /**
+     * @param entry packed entry from <code>probe</code>.
+     * @return      the stored depth.
+     */
+    public static int depth(long entry) { return (int) ((entry >>> 33) & 0xFF); }
+
+    /**
+     * @param entry packed entry from <code>probe</code>.
+     * @return      the stored bound type.
+     */
+    public static int bound(long entry) { return (int) ((entry >>> 41) & 3); }
+
+    /**
+     * Converts a mate score relative to the root into one relative to the stored position,
+     * so it stays correct when the position is reached at a different ply.
+     *
+     * @param score score relative to the root.
+     * @param ply   distance of the position from the root.
+     * @return      score to store.
+     */
+    public static int scoreToTable(int score, int ply) {
+        if(score >= Search.MATE - Search.MAX_PLY) return score + ply;
+        if(score <= -Search.MATE + Search.MAX_PLY) return score - ply;
+        return score;
+    }
+
+    /**
+     * Converts a stored score back to one relative to the root.
+     *
+     * @param score stored score.
+     * @param ply   distance of the position from the root.
+     * @return      score relative to the root.
+     */
+    public static int scoreFromTable(int score, int ply) {
+        if(score >= Search.MATE - Search.MAX_PLY) return score - ply;
+        if(score <= -Search.MATE + Search.MAX_PLY) return score + ply;
+        return score;
+    }
+}
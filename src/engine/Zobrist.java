@@ -0,0 +1,70 @@
+package engine;
+
+import java.util.Random;
+
+/**
+ * Random keys used to hash positions. The hash of a position is the exclusive or of the key of
+ * every piece on its square, the castling rights, the enpassant file and the side to move, so it
+ * can be updated with a few operations whenever a move is made.
+ * <p>
+ * The keys come from a fixed seed, so hashes are the same in every run.
+ *
+ * @author  Bryle Tan
+ */
+public final class Zobrist {
+
+    /**
+     * key of each piece on each square, indexed by piece code then square.
+     */
+    public static final long[][] PIECES = new long[12][64];
+
+    /**
+     * keys of the pawn hash, laid out like <code>PIECES</code>. Pawns and kings have the same keys as in
+     * <code>PIECES</code>, every other piece has a key of 0, so the pawn hash only changes when a pawn
+     * or king moves.
+     */
+    public static final long[][] PAWNS = new long[12][64];
+
+    /**
+     * key of each combination of castling rights.
+     */
+    public static final long[] CASTLING = new long[16];
+
+    /**
+     * key of the file of the enpassant square.
+     */
+    public static final long[] EN_PASSANT = new long[8];
+
+    /**
+     * key added when black is to move.
+     */
+    public static final long BLACK_TO_MOVE;
+
+    static {
+        Random random = new Random(0x5EED_C4E55L);
+
+        for(int piece = 0; piece < 12; piece++) {
+            for(int sq = 0; sq < 64; sq++) {
+                PIECES[piece][sq] = random.nextLong();
+            }
+        }
+        for(int rights = 1; rights < 16; rights++) {
+            CASTLING[rights] = random.nextLong();
+        }
+        for(int file = 0; file < 8; file++) {
+            EN_PASSANT[file] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+
+        for(int color = Position.WHITE; color <= Position.BLACK; color++) {
+            PAWNS[Position.piece(color, Position.PAWN)] = PIECES[Position.piece(color, Position.PAWN)];
+            PAWNS[Position.piece(color, Position.KING)] = PIECES[Position.piece(color, Position.KING)];
+        }
+    }
+
+    /**
+     * Not instantiable, only holds keys.
+     */
+    private Zobrist() {
+    }
+}
@@ -103,11 +103,25 @@ public class Board {
     }
 
     /**
-     * Prints the board on the terminal.
+     * Prints the board on the terminal, with a single write.
      * 
      * @author          Bryle Tan
      */
     public void printBoard() {
+        StringBuilder text = new StringBuilder(256);
+        render(text);
+        System.out.print(text);
+    }
+
+    /**
+     * Adds the text of the board to a buffer, in the same layout <code>printBoard</code> prints,
+     * so the caller decides when, and whether, it is written out.
+     * 
+     * @param text      buffer the board is added to.
+     * 
+     * @author          Bryle Tan
+     */
+    public void render(StringBuilder text) {
         int file = 0; //column
         int rank = 0; //row
 
@@ -115,23 +129,23 @@ public class Board {
         for(rank = 7; rank >= 0; rank--) {
 			for(file = 0; file < 8; file++) {
 
-                //If there is a piece in on the board, print out the piece character
+                //If there is a piece in on the board, add the piece character
 				if(board[file][rank].getPiece() != null) {
-					System.out.print(board[file][rank] + " ");
+					text.append(board[file][rank]).append(' ');
 				}
 
 				else {
 					if(board[file][rank].isSquareBlack())
-						System.out.print("## ");
+						text.append("## ");
 					else
-						System.out.print("   ");
+						text.append("   ");
 				}
 				
 			}
-			System.out.println(" " + (rank+1));
+			text.append(' ').append(rank + 1).append('\n');
 		}
-		System.out.println(" a  b  c  d  e  f  g  h");
-		System.out.println();
+		text.append(" a  b  c  d  e  f  g  h\n");
+		text.append('\n');
     }
 
 }
@@ -22,7 +22,8 @@ public class Pawn extends Piece {
     /**
      * Changes type of pawn to a queen, knight, bishop, or rook
      * 
-     * @param input             the raw input string provided by the user within chess.java
+     * @param piece             letter of the piece to promote to, 'Q', 'N', 'B' or 'R', as typed by the user
+     *                          within chess.java. Any other letter promotes to a queen.
      * @param board             the game board created within chess.java
      * @param isWhite           boolean that indicates if the pawn piece is white
      * @param file              file location of pawn
@@ -30,9 +31,7 @@ public class Pawn extends Piece {
      * 
      * @author                  Bryle Tan
      */
-    public static void promote(String input, Square[][] board, boolean isWhite, int file, int rank) {
-        String[] args = input.split(" ");
-
+    public static void promote(char piece, Square[][] board, boolean isWhite, int file, int rank) {
         String color = "";
         if(isWhite) {
             color = "white";
@@ -40,26 +39,18 @@ public class Pawn extends Piece {
             color = "black";
         }
 
-        if(args.length == 3) {
-            if(args[2].equals("Q")) {
-                board[file][rank].setPiece(new Queen(color));
-                return;
-            }
-            else if(args[2].equals("N")) {
-                board[file][rank].setPiece(new Knight(color));
-                return;
-            }
-            else if(args[2].equals("B")) {
-                board[file][rank].setPiece(new Bishop(color));
-                return;
-            }
-            else {
-                board[file][rank].setPiece(new Rook(color));
-                return;
-            }
+        if(piece == 'N') {
+            board[file][rank].setPiece(new Knight(color));
+        }
+        else if(piece == 'B') {
+            board[file][rank].setPiece(new Bishop(color));
+        }
+        else if(piece == 'R') {
+            board[file][rank].setPiece(new Rook(color));
+        }
+        else {
+            //if no piece is given, assume that the pawn is a queen
+            board[file][rank].setPiece(new Queen(color));
         }
-
-        //if no 3rd argument is given, assume that the pawn is a queen
-        board[file][rank].setPiece(new Queen(color));
     }
 }
@@ -0,0 +1,322 @@
+package tools;
+
+import engine.Moves;
+import engine.Position;
+import engine.Search;
+import engine.TimeManager;
+import engine.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Batch runner for EPD test suites, a repeatable benchmark of the computer player's tactical
+ * strength and speed.
+ * <p>
+ * Each line of a suite is a position followed by operations such as <code>bm Nf3;</code> (the best
+ * move, one of which must be found), <code>am Qxb7;</code> (a move to avoid) and <code>id "WAC.001";</code>.
+ * The positions are searched in parallel on a <code>ForkJoinPool</code> to a fixed time, depth or
+ * node count. A position is solved if the move played is a best move and not a move to avoid. The
+ * time to solution is when the search last switched to a solving move and kept it to the end.
+ * <p>
+ * Usage: <code>java tools.EpdRunner [-time ms] [-depth n] [-nodes n] [-threads n] [-hash mb] file.epd</code>
+ *
+ * @author  Bryle Tan
+ */
+public class EpdRunner {
+
+    /**
+     * milliseconds per position, 0 for no limit.
+     */
+    private final long time;
+
+    /**
+     * largest search depth.
+     */
+    private final int depth;
+
+    /**
+     * nodes per position, 0 for no limit.
+     */
+    private final long nodes;
+
+    /**
+     * search of each worker thread, reused from position to position.
+     */
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * Constructor for a runner.
+     *
+     * @param time  milliseconds per position, 0 for no limit.
+     * @param depth largest search depth.
+     * @param nodes nodes per position, 0 for no limit.
+     * @param hash  size of each thread's transposition table in megabytes.
+     */
+    public EpdRunner(long time, int depth, long nodes, int hash) {
+        this.time = time;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.searches = ThreadLocal.withInitial(() -> new Search(new TranspositionTable(hash)));
+    }
+
+    /**
+     * Reads the options, runs the suite and prints the results.
+     *
+     * @param args  options and the path of the suite, see the class description.
+     * @throws      IOException if the suite can't be read.
+     */
+    public static void main(String[] args) throws IOException {
+        long time = 0;
+        int depth = Search.MAX_PLY - 1;
+        long nodes = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 16;
+        String file = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-time": time = Long.parseLong(args[++i]); break;
+                case "-depth": depth = Math.min(Integer.parseInt(args[++i]), Search.MAX_PLY - 1); break;
+                case "-nodes": nodes = Long.parseLong(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                default: file = args[i]; break;
+            }
+        }
+        if(file == null) {
+            throw new IllegalArgumentException("no EPD file given");
+        }
+        if(time == 0 && nodes == 0 && depth == Search.MAX_PLY - 1) {
+            time = 1000;
+        }
+
+        List<Test> tests = new ArrayList<>();
+        for(String line : Files.readAllLines(Paths.get(file))) {
+            line = line.trim();
+            if(!line.isEmpty() && !line.startsWith("#")) {
+                tests.add(Test.parse(line));
+            }
+        }
+
+        new EpdRunner(time, depth, nodes, hash).run(tests, new ForkJoinPool(threads));
+    }
+
+    /**
+     * Searches every test position and prints a line per position, then the totals.
+     *
+     * @param tests the test positions.
+     * @param pool  pool the positions are searched on.
+     */
+    public void run(List<Test> tests, ForkJoinPool pool) {
+        long start = System.nanoTime();
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for(Test test : tests) {
+            tasks.add(pool.submit(() -> solve(test)));
+        }
+        for(ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        pool.shutdown();
+
+        long wall = Math.max(System.nanoTime() - start, 1);
+        int solved = 0;
+        long totalNodes = 0;
+        long solveTime = 0;
+        long searchTime = 0;
+        long pawnProbes = 0;
+        long pawnHits = 0;
+        for(Test test : tests) {
+            System.out.printf("%-12s %-6s played %-7s expected %-16s %6d ms to solve, %9d nodes%n",
+                    test.id, test.solved ? "solved" : "failed", test.played, test.expected(),
+                    test.solved ? test.solveMillis : -1, test.nodes);
+            if(test.solved) {
+                solved++;
+                solveTime += test.solveMillis;
+            }
+            totalNodes += test.nodes;
+            searchTime += test.searchNanos;
+            pawnProbes += test.pawnProbes;
+            pawnHits += test.pawnHits;
+        }
+
+        System.out.printf("solved %d of %d (%.1f%%)%n", solved, tests.size(),
+                tests.isEmpty() ? 0 : 100.0 * solved / tests.size());
+        if(solved > 0) {
+            System.out.printf("average time to solution %d ms%n", solveTime / solved);
+        }
+        System.out.printf("%d nodes in %.2f s: %d nps total, %d nps per thread%n", totalNodes, wall / 1e9,
+                (long) (totalNodes * 1e9 / wall), searchTime == 0 ? 0 : (long) (totalNodes * 1e9 / searchTime));
+        System.out.printf("pawn hash hit rate %.1f%%%n", pawnProbes == 0 ? 0 : 100.0 * pawnHits / pawnProbes);
+    }
+
+    /**
+     * Searches one test position and records the result in it.
+     *
+     * @param test  the test position.
+     */
+    private void solve(Test test) {
+        Search search = searches.get();
+        search.getTable().clear();
+        search.clearHistory();
+        search.setNodeLimit(nodes);
+        search.getPawnTable().resetStats();
+
+        Position pos = Position.fromFen(test.fen);
+        long start = System.nanoTime();
+        long[] solvedAt = {-1};
+        search.setListener((d, move, score, n) -> {
+            if(!test.isSolution(move)) {
+                solvedAt[0] = -1;
+            } else if(solvedAt[0] < 0) {
+                solvedAt[0] = System.nanoTime() - start;
+            }
+        });
+
+        TimeManager timer = null;
+        if(time > 0) {
+            timer = new TimeManager();
+            timer.startFixed(time);
+        }
+        int move = search.think(pos, depth, timer);
+        search.setListener(null);
+
+        test.searchNanos = System.nanoTime() - start;
+        test.nodes = search.getNodes();
+        test.pawnProbes = search.getPawnTable().probes();
+        test.pawnHits = search.getPawnTable().hits();
+        test.played = move == Moves.NONE ? "none" : Moves.toSan(pos, move);
+        test.solved = test.isSolution(move);
+        test.solveMillis = test.solved ? Math.max(solvedAt[0], 0) / 1_000_000L : -1;
+    }
+
+    /**
+     * A position of a test suite, with its best moves, moves to avoid and the result of searching it.
+     */
+    public static class Test {
+
+        /**
+         * name of the test from its <code>id</code> operation, or its line in the suite.
+         */
+        String id;
+
+        /**
+         * the position.
+         */
+        String fen;
+
+        /**
+         * best moves, one of which has to be played.
+         */
+        final List<Integer> best = new ArrayList<>();
+
+        /**
+         * moves that must not be played.
+         */
+        final List<Integer> avoid = new ArrayList<>();
+
+        /**
+         * best moves and moves to avoid as written in the suite.
+         */
+        final List<String> written = new ArrayList<>();
+
+        /**
+         * move played by the search, in standard algebraic notation.
+         */
+        String played;
+
+        /**
+         * <code>true</code> if the move played solves the test.
+         */
+        boolean solved;
+
+        /**
+         * milliseconds until the search settled on a solving move.
+         */
+        long solveMillis;
+
+        /**
+         * nodes searched.
+         */
+        long nodes;
+
+        /**
+         * time spent searching, in nanoseconds.
+         */
+        long searchNanos;
+
+        /**
+         * lookups in the pawn hash table.
+         */
+        long pawnProbes;
+
+        /**
+         * lookups in the pawn hash table that found their entry.
+         */
+        long pawnHits;
+
+        /**
+         * Reads a line of a suite.
+         *
+         * @param line  the position in EPD, for example
+         *              <code>2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - bm Qg6; id "WAC.001";</code>
+         * @return      the test.
+         * @throws      IllegalArgumentException if a move of the line isn't legal in the position.
+         */
+        public static Test parse(String line) {
+            String[] fields = line.split("\\s+", 5);
+            if(fields.length < 4) {
+                throw new IllegalArgumentException("incomplete EPD: " + line);
+            }
+
+            Test test = new Test();
+            test.fen = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+            test.id = test.fen;
+            Position pos = Position.fromFen(test.fen);
+
+            String operations = fields.length > 4 ? fields[4] : "";
+            for(String operation : operations.split(";")) {
+                String[] words = operation.trim().split("\\s+");
+                if(words[0].equals("id") && words.length > 1) {
+                    test.id = operation.trim().substring(2).trim().replace("\"", "");
+                } else if(words[0].equals("bm") || words[0].equals("am")) {
+                    for(int i = 1; i < words.length; i++) {
+                        int move = Moves.fromSan(pos, words[i]);
+                        if(move == Moves.NONE) {
+                            throw new IllegalArgumentException("illegal move " + words[i] + " in: " + line);
+                        }
+                        (words[0].equals("bm") ? test.best : test.avoid).add(move);
+                        test.written.add(words[0] + " " + words[i]);
+                    }
+                }
+            }
+            return test;
+        }
+
+        /**
+         * Checks if a move solves the test.
+         *
+         * @param move  packed move.
+         * @return      <code>true</code> if the move is a best move, or any move but the ones to avoid.
+         */
+        boolean isSolution(int move) {
+            if(move == Moves.NONE || avoid.contains(move)) {
+                return false;
+            }
+            return best.isEmpty() || best.contains(move);
+        }
+
+        /**
+         * @return  the best moves and moves to avoid, for example "bm Qg6".
+         */
+        String expected() {
+            return String.join(", ", written);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package tools;
+
+import engine.Difficulty;
+import engine.MoveGenerator;
+import engine.Moves;
+import engine.Position;
+import engine.Search;
+import engine.TimeManager;
+import engine.TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the CPU cost of each difficulty level, to plan how many casual games a core can serve.
+ * <p>
+ * Each level plays games against itself from a few openings, on a pool of worker threads that each
+ * have one small search shared by all the games they play, as a server would. For every level the
+ * moves played, the average and largest CPU time of a move, the average nodes and the number of games
+ * a core keeps up with are printed, assuming the person takes <code>-think</code> seconds per move.
+ * <p>
+ * Usage: <code>java tools.LevelBench [-games n] [-plies n] [-threads n] [-hash mb] [-think s] [level]...</code>
+ *
+ * @author  Bryle Tan
+ */
+public class LevelBench {
+
+    /**
+     * positions the games start from.
+     */
+    private static final String[] OPENINGS = {
+        Position.START_FEN,
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 1 5",
+        "r1bq1rk1/pp2bppp/2n1pn2/2pp4/3P4/2PBPN2/PP1N1PPP/R1BQ1RK1 w - - 0 8",
+    };
+
+    /**
+     * Reads the options and measures each level.
+     *
+     * @param args  options and the levels to measure, all of them by default.
+     * @throws      Exception if a game fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int games = 8;
+        int plies = 60;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 4;
+        double think = 10;
+        List<Difficulty> levels = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-plies": plies = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                case "-think": think = Double.parseDouble(args[++i]); break;
+                default: levels.add(Difficulty.parse(args[i])); break;
+            }
+        }
+        if(levels.isEmpty()) {
+            levels.addAll(List.of(Difficulty.LEVELS));
+        }
+
+        int tableMegabytes = hash;
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> new Search(new TranspositionTable(tableMegabytes)));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        System.out.printf("%-10s %8s %12s %12s %12s %14s%n", "level", "moves", "avg cpu ms", "max cpu ms", "avg nodes",
+                "games/core");
+        for(Difficulty level : levels) {
+            level.resetUsage();
+            int plyLimit = plies;
+            List<Future<?>> results = new ArrayList<>();
+            for(int game = 0; game < games; game++) {
+                String opening = OPENINGS[game % OPENINGS.length];
+                long seed = game;
+                results.add(pool.submit(() -> playGame(level, searches.get(), opening, plyLimit, new Random(seed))));
+            }
+            for(Future<?> result : results) {
+                result.get();
+            }
+
+            System.out.printf("%-10s %8d %12.2f %12.2f %,12d %,14d%n", level.name, level.getMoves(),
+                    level.getAverageCpuMicros() / 1000.0, level.getMaxCpuMicros() / 1000.0, level.getAverageNodes(),
+                    level.gamesPerCore(think));
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Plays one game of a level against itself, until it ends or reaches the ply limit.
+     *
+     * @param level     level of both sides.
+     * @param search    search of the worker thread.
+     * @param opening   starting position.
+     * @param plies     largest number of moves played.
+     * @param random    source of the level's move choices.
+     */
+    private static void playGame(Difficulty level, Search search, String opening, int plies, Random random) {
+        Position pos = Position.fromFen(opening);
+        TimeManager timer = new TimeManager();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        for(int ply = 0; ply < plies && MoveGenerator.hasLegalMove(pos, buffer); ply++) {
+            if(pos.repetitions() >= 2 || pos.isFiftyMoveDraw() || pos.isInsufficientMaterial()) {
+                break;
+            }
+            int move = level.chooseMove(search, pos, timer, random);
+            if(move == Moves.NONE) {
+                break;
+            }
+            pos.makeMove(move);
+        }
+    }
+}
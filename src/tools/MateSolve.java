@@ -0,0 +1,109 @@
+package tools;
+
+import engine.MateSolver;
+import engine.Moves;
+import engine.Position;
+import engine.Search;
+
+/**
+ * Proves forced mates with the proof-number <code>MateSolver</code>, and optionally compares it
+ * with the alpha-beta <code>Search</code> looking for the same mate.
+ * <p>
+ * For each position the result is printed with the mating line and the nodes and time it took.
+ * With <code>-compare</code>, the alpha-beta search also searches to the full depth of the mate and
+ * reports whether its score shows the mate. Without a position a few test positions are solved, from
+ * mates in one, two of them by a double step and enpassant, to a king and queen mate seven moves deep.
+ * <p>
+ * Usage: <code>java tools.MateSolve [-n moves] [-nodes n] [-hash mb] [-compare] [fen]</code>
+ *
+ * @author  Bryle Tan
+ */
+public class MateSolve {
+
+    /**
+     * test positions with the number of moves to look for a mate in.
+     */
+    private static final Object[][] SUITE = {
+        {"6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1", 1},
+        {"8/8/6pp/7k/5Q2/8/5BP1/6K1 w - - 0 1", 1},
+        {"1N1rkr2/5p2/8/3pP3/8/8/8/4R1K1 w - d6 0 2", 1},
+        {"r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 0 1", 2},
+        {"7k/8/8/8/8/8/R7/1R4K1 w - - 0 1", 3},
+        {"6k1/5ppp/8/8/8/8/5PPP/4R1K1 b - - 0 1", 3},
+        {"8/8/8/4k3/8/8/8/4K2Q w - - 0 1", 8},
+    };
+
+    /**
+     * Reads the options and solves the position, or the test positions.
+     *
+     * @param args  options and an optional position, see the class description.
+     */
+    public static void main(String[] args) {
+        int mateIn = 5;
+        long nodeLimit = 0;
+        int hash = 64;
+        boolean compare = false;
+        StringBuilder fen = new StringBuilder();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-n": mateIn = Integer.parseInt(args[++i]); break;
+                case "-nodes": nodeLimit = Long.parseLong(args[++i]); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                case "-compare": compare = true; break;
+                default: fen.append(fen.length() == 0 ? "" : " ").append(args[i]); break;
+            }
+        }
+
+        MateSolver solver = new MateSolver(hash);
+        solver.setNodeLimit(nodeLimit);
+        Object[][] positions = fen.length() > 0 ? new Object[][] {{fen.toString(), mateIn}} : SUITE;
+        for(Object[] test : positions) {
+            String position = (String) test[0];
+            int moves = (Integer) test[1];
+            solver.clear();
+
+            long start = System.nanoTime();
+            int result = solver.solve(Position.fromFen(position), moves);
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            System.out.println(position);
+            int[] line = solver.getLine();
+            if(result == MateSolver.MATE) {
+                System.out.printf("  mate in %d: %s%n", (line.length + 1) / 2, sanLine(position, line));
+            } else {
+                System.out.println(result == MateSolver.NO_MATE ? "  no mate in " + moves : "  unknown, node limit reached");
+            }
+            System.out.printf("  proof-number search: %,d nodes, %d ms%n", solver.getNodes(), millis);
+
+            if(compare) {
+                // the alpha-beta search needs to reach the mate's full depth to see it
+                int depth = result == MateSolver.MATE ? line.length : 2 * moves - 1;
+                Search search = new Search();
+                start = System.nanoTime();
+                search.think(Position.fromFen(position), depth);
+                millis = (System.nanoTime() - start) / 1000000;
+                boolean found = search.getBestScore() >= Search.MATE - Search.MAX_PLY;
+                System.out.printf("  alpha-beta depth %d: %s, %,d nodes, %d ms%n", search.getCompletedDepth(),
+                        found ? "mate found" : "no mate seen", search.getNodes(), millis);
+            }
+        }
+    }
+
+    /**
+     * Writes a line of moves in algebraic notation.
+     *
+     * @param fen   position the line starts from.
+     * @param line  the moves.
+     * @return      the moves separated by spaces.
+     */
+    static String sanLine(String fen, int[] line) {
+        Position pos = Position.fromFen(fen);
+        StringBuilder text = new StringBuilder();
+        for(int move : line) {
+            text.append(text.length() == 0 ? "" : " ").append(Moves.toSan(pos, move));
+            pos.makeMove(move);
+        }
+        return text.toString();
+    }
+}
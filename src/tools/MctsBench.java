@@ -0,0 +1,79 @@
+package tools;
+
+import engine.Mcts;
+import engine.Moves;
+import engine.Position;
+
+/**
+ * Measures the speed of the Monte Carlo tree search and how much of its tree it keeps between moves.
+ * <p>
+ * From each position the tree search plays a few moves against itself. For every move the chosen
+ * move, its score, the playouts per second and the playouts kept from the search before are printed,
+ * then the total playouts per second. Run it with different <code>-threads</code> to see how the
+ * playouts scale over the processors.
+ * <p>
+ * Usage: <code>java tools.MctsBench [-playouts n] [-threads n] [-hash mb] [-moves n] [fen]</code>
+ *
+ * @author  Bryle Tan
+ */
+public class MctsBench {
+
+    /**
+     * positions played from when none is given: an opening, a middlegame and an endgame.
+     */
+    private static final String[] POSITIONS = {
+        Position.START_FEN,
+        "r1bq1rk1/pp2bppp/2n1pn2/2pp4/3P4/2PBPN2/PP1N1PPP/R1BQ1RK1 w - - 0 8",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    /**
+     * Reads the options and plays from each position.
+     *
+     * @param args  options and an optional position, see the class description.
+     */
+    public static void main(String[] args) {
+        long playouts = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 256;
+        int plies = 4;
+        StringBuilder fen = new StringBuilder();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-playouts": playouts = Long.parseLong(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                case "-moves": plies = Integer.parseInt(args[++i]); break;
+                default: fen.append(fen.length() == 0 ? "" : " ").append(args[i]); break;
+            }
+        }
+        String[] positions = fen.length() > 0 ? new String[] {fen.toString()} : POSITIONS;
+
+        Mcts mcts = new Mcts(hash, threads);
+        mcts.setPlayoutLimit(playouts);
+        long total = 0;
+        long nanos = 0;
+        for(String position : positions) {
+            System.out.println(position);
+            Position pos = Position.fromFen(position);
+            mcts.clear();
+
+            for(int ply = 0; ply < plies; ply++) {
+                long start = System.nanoTime();
+                int move = mcts.think(pos, null);
+                nanos += System.nanoTime() - start;
+                total += mcts.getPlayouts();
+                if(move == Moves.NONE) {
+                    break;
+                }
+
+                System.out.printf("  %-7s %+5d cp  %,9d playouts/s  %,9d kept  %,10d nodes%n", Moves.toSan(pos, move),
+                        mcts.getBestScore(), mcts.getPlayoutsPerSecond(), mcts.getReusedPlayouts(), mcts.getTreeSize());
+                pos.makeMove(move);
+            }
+        }
+        System.out.printf("%,d playouts on %d threads, %,d playouts/s%n", total, threads,
+                nanos == 0 ? 0 : total * 1000000000L / nanos);
+    }
+}
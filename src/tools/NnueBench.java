@@ -0,0 +1,247 @@
+package tools;
+
+import engine.Evaluation;
+import engine.MoveGenerator;
+import engine.Network;
+import engine.Position;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Measures how fast the network evaluation is compared with the hand-written one, with the plain
+ * neuron sums and with the SIMD ones.
+ * <p>
+ * Random games are played out from a few test positions, the same ones for every evaluation. Each
+ * game is made move by move, evaluating after every move, and then unmade, so the timings include
+ * keeping the network's first layer up to date, the way the search uses it. With the built-in network
+ * its scores are also compared with the middlegame material and piece-square score that
+ * <code>Position</code> keeps, which it should match to within rounding. For any network, the scores
+ * kept up to date while the games are unmade, and while other moves are tried on the way back as the
+ * search tries siblings, are checked against scores worked out from scratch.
+ * <p>
+ * The SIMD sums need the JVM to be started with <code>--add-modules jdk.incubator.vector</code>;
+ * without it only the plain sums are timed.
+ * <p>
+ * Usage: <code>java tools.NnueBench [-nnue file] [-games n] [-plies n] [-write file]</code>
+ *
+ * @author  Bryle Tan
+ */
+public class NnueBench {
+
+    /**
+     * positions the random games start from.
+     */
+    private static final String[] FENS = {
+        Position.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+    };
+
+    /**
+     * number of times each evaluation plays through all the games.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Reads the options and times the evaluations.
+     *
+     * @param args  options, see the class description.
+     * @throws      IOException if a network file can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        String file = null;
+        String write = null;
+        int games = 2000;
+        int plies = 80;
+
+        for(int i = 0; i < args.length - 1; i++) {
+            switch(args[i]) {
+                case "-nnue": file = args[++i]; break;
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-plies": plies = Integer.parseInt(args[++i]); break;
+                case "-write": write = args[++i]; break;
+                default: throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+
+        Network network = file == null ? Network.fromEvaluation() : Network.load(Paths.get(file));
+        if(write != null) {
+            // writing the network and reading it back goes through the memory-mapped loader
+            network.save(Paths.get(write));
+            network = Network.load(Paths.get(write));
+            System.out.println("wrote and reloaded " + write);
+        }
+
+        List<int[]> walks = playGames(games, plies);
+        boolean simd = Network.isVectorized();
+        System.out.println("SIMD sums " + (simd ? "available" : "not available, start the JVM with --add-modules jdk.incubator.vector"));
+
+        Network.setVectorized(false);
+        double hand = time("hand-written", null, walks);
+        double scalar = time("network, plain sums", network, walks);
+        if(simd) {
+            Network.setVectorized(true);
+            double vector = time("network, SIMD sums", network, walks);
+            System.out.printf("SIMD sums are %.2fx the plain sums%n", vector / scalar);
+        }
+        System.out.printf("network is %.2fx the hand-written evaluation%n", scalar / hand);
+
+        checkUnmake(network, walks);
+        if(file == null) {
+            compare(network, walks);
+        }
+    }
+
+    /**
+     * Plays random games from the test positions, the same ones on every run.
+     *
+     * @param games number of games.
+     * @param plies largest number of moves in a game.
+     * @return      the moves of each game, the first one being the index of its starting position.
+     */
+    private static List<int[]> playGames(int games, int plies) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        List<int[]> walks = new ArrayList<>(games);
+
+        for(int g = 0; g < games; g++) {
+            int start = g % FENS.length;
+            Position pos = Position.fromFen(FENS[start]);
+            int[] walk = new int[plies + 1];
+            walk[0] = start;
+            int length = 1;
+            while(length <= plies) {
+                int count = MoveGenerator.generateLegal(pos, moves);
+                if(count == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                pos.makeMove(move);
+                walk[length++] = move;
+            }
+            walks.add(Arrays.copyOf(walk, length));
+        }
+        return walks;
+    }
+
+    /**
+     * Plays through all the games, evaluating after every move, and prints the speed.
+     *
+     * @param name      name of the evaluation.
+     * @param network   network to evaluate with, <code>null</code> for the hand-written evaluation.
+     * @param walks     games to play through.
+     * @return          evaluations per second.
+     */
+    private static double time(String name, Network network, List<int[]> walks) {
+        Evaluation evaluation = new Evaluation();
+        evaluation.setNetwork(network);
+        Position[] starts = new Position[FENS.length];
+        for(int i = 0; i < FENS.length; i++) {
+            starts[i] = Position.fromFen(FENS[i]);
+            evaluation.prepare(starts[i]);
+        }
+
+        long evaluations = 0;
+        long checksum = 0;
+        long start = 0;
+        // the first round only warms up the JIT
+        for(int round = 0; round <= ROUNDS; round++) {
+            if(round == 1) {
+                evaluations = 0;
+                start = System.nanoTime();
+            }
+            for(int[] walk : walks) {
+                Position pos = starts[walk[0]];
+                for(int i = 1; i < walk.length; i++) {
+                    pos.makeMove(walk[i]);
+                    checksum += evaluation.evaluate(pos);
+                }
+                for(int i = walk.length - 1; i >= 1; i--) {
+                    pos.unmakeMove(walk[i]);
+                }
+                evaluations += walk.length - 1;
+            }
+        }
+        long nanos = Math.max(System.nanoTime() - start, 1);
+
+        double perSecond = evaluations * 1e9 / nanos;
+        System.out.printf("%-22s %,14d evals/s  (checksum %d)%n", name, (long) perSecond, checksum);
+        return perSecond;
+    }
+
+    /**
+     * Checks that the network's scores stay right while moves are unmade: each game is made from a root
+     * set up the way the search sets it up, then unmade, and at every position on the way back the
+     * incremental score, and the score after one other move, are compared with a fresh accumulator's.
+     *
+     * @param network   network to evaluate with.
+     * @param walks     games to check on.
+     */
+    private static void checkUnmake(Network network, List<int[]> walks) {
+        Evaluation evaluation = new Evaluation();
+        evaluation.setNetwork(network);
+        Evaluation fresh = new Evaluation();
+        fresh.setNetwork(network);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        long positions = 0;
+        long differences = 0;
+        for(int[] walk : walks) {
+            Position pos = Position.fromFen(FENS[walk[0]]);
+            evaluation.prepare(pos);
+            for(int i = 1; i < walk.length; i++) {
+                pos.makeMove(walk[i]);
+                evaluation.evaluate(pos);
+            }
+            for(int i = walk.length - 1; i >= 1; i--) {
+                pos.unmakeMove(walk[i]);
+                // a copy has no accumulator, so its score is worked out from scratch
+                differences += evaluation.evaluate(pos) == fresh.evaluate(pos.copy()) ? 0 : 1;
+                positions++;
+
+                int count = MoveGenerator.generateLegal(pos, moves);
+                int sibling = moves[count - 1];
+                pos.makeMove(sibling);
+                differences += evaluation.evaluate(pos) == fresh.evaluate(pos.copy()) ? 0 : 1;
+                pos.unmakeMove(sibling);
+                positions++;
+            }
+        }
+        System.out.printf("incremental vs fresh scores after unmaking: %,d of %,d positions differ%n", differences, positions);
+    }
+
+    /**
+     * Compares the built-in network's scores with the material and piece-square score of the positions.
+     *
+     * @param network   the built-in network.
+     * @param walks     games to compare on.
+     */
+    private static void compare(Network network, List<int[]> walks) {
+        Evaluation evaluation = new Evaluation();
+        evaluation.setNetwork(network);
+
+        long positions = 0;
+        long totalError = 0;
+        int maxError = 0;
+        for(int[] walk : walks) {
+            Position pos = Position.fromFen(FENS[walk[0]]);
+            for(int i = 1; i < walk.length; i++) {
+                pos.makeMove(walk[i]);
+                int expected = pos.sideToMove == Position.WHITE ? pos.mgScore : -pos.mgScore;
+                int error = Math.abs(evaluation.evaluate(pos) - expected);
+                totalError += error;
+                maxError = Math.max(maxError, error);
+                positions++;
+            }
+        }
+        System.out.printf("built-in network vs material and piece-square score: mean error %.2f, max %d centipawns%n",
+                (double) totalError / Math.max(positions, 1), maxError);
+    }
+}
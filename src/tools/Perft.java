@@ -0,0 +1,99 @@
+package tools;
+
+import engine.MoveGenerator;
+import engine.Moves;
+import engine.Position;
+
+/**
+ * Counts the legal move tree of a position to a fixed depth, to check the move generator against
+ * the well-known totals and to measure its speed.
+ * <p>
+ * Each root move is printed with the number of leaves below it, so a wrong total can be narrowed
+ * down to the move that goes wrong. Without a position the standard positions are run and their
+ * totals compared with the expected ones.
+ * <p>
+ * Usage: <code>java tools.Perft [-depth n] [fen]</code>
+ *
+ * @author  Bryle Tan
+ */
+public class Perft {
+
+    /**
+     * standard test positions with their leaf counts at depths 1 to 5.
+     */
+    private static final Object[][] SUITE = {
+        {Position.START_FEN, new long[] {20, 400, 8902, 197281, 4865609}},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", new long[] {48, 2039, 97862, 4085603, 193690690}},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", new long[] {14, 191, 2812, 43238, 674624}},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", new long[] {6, 264, 9467, 422333, 15833292}},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", new long[] {44, 1486, 62379, 2103487, 89941194}},
+    };
+
+    /**
+     * Reads the options and counts the tree of the position, or of the standard positions.
+     *
+     * @param args  options and an optional position, see the class description.
+     */
+    public static void main(String[] args) {
+        int depth = 4;
+        StringBuilder fen = new StringBuilder();
+
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("-depth")) {
+                depth = Integer.parseInt(args[++i]);
+            } else {
+                fen.append(fen.length() == 0 ? "" : " ").append(args[i]);
+            }
+        }
+        if(depth < 1) {
+            throw new IllegalArgumentException("depth must be at least 1");
+        }
+
+        if(fen.length() > 0) {
+            divide(Position.fromFen(fen.toString()), depth);
+            return;
+        }
+
+        boolean passed = true;
+        for(Object[] test : SUITE) {
+            long[] expected = (long[]) test[1];
+            int d = Math.min(depth, expected.length);
+            long start = System.nanoTime();
+            long nodes = MoveGenerator.perft(Position.fromFen((String) test[0]), d, new int[d][MoveGenerator.MAX_MOVES]);
+            long nanos = Math.max(System.nanoTime() - start, 1);
+
+            boolean ok = nodes == expected[d - 1];
+            passed &= ok;
+            System.out.printf("%-4s depth %d %,14d nodes %,12d nps  %s%n", ok ? "ok" : "FAIL", d, nodes,
+                    (long) (nodes * 1e9 / nanos), test[0]);
+        }
+        System.out.println(passed ? "all positions match" : "some positions don't match");
+    }
+
+    /**
+     * Prints the leaf count below each root move, then the total and the speed.
+     *
+     * @param pos   position to count from.
+     * @param depth depth of the tree.
+     */
+    private static void divide(Position pos, int depth) {
+        int[][] buffers = new int[depth][MoveGenerator.MAX_MOVES];
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(pos, moves);
+
+        long start = System.nanoTime();
+        long total = 0;
+        for(int i = 0; i < count; i++) {
+            long nodes = 1;
+            if(depth > 1) {
+                pos.makeMove(moves[i]);
+                nodes = MoveGenerator.perft(pos, depth - 1, buffers);
+                pos.unmakeMove(moves[i]);
+            }
+            System.out.printf("%-7s %,d%n", Moves.toSan(pos, moves[i]), nodes);
+            total += nodes;
+        }
+        long nanos = Math.max(System.nanoTime() - start, 1);
+        System.out.printf("%,d nodes in %.2f s, %,d nps%n", total, nanos / 1e9, (long) (total * 1e9 / nanos));
+    }
+}
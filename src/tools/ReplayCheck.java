@@ -0,0 +1,58 @@
+package tools;
+
+import chess.Chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+
+/**
+ * Replays games through the text interface and checks that every move of them is accepted, to catch
+ * the move validation of <code>chess.Move</code> turning down legal moves.
+ * <p>
+ * Each game is a list of moves that are all legal, chosen to reach the special moves and the cases
+ * that once went wrong. A game fails if any of its moves is answered with "illegal move".
+ * <p>
+ * Usage: <code>java tools.ReplayCheck</code>
+ *
+ * @author  Bryle Tan
+ */
+public class ReplayCheck {
+
+    /**
+     * games to replay, one move per line.
+     */
+    private static final String[][] GAMES = {
+        // enpassant capture of a pawn that double stepped right after the capturing pawn arrived
+        {"a2 a3", "d7 d5", "a3 a4", "d5 d4", "e2 e4", "d4 e3"},
+        {"e2 e4", "a7 a6", "e4 e5", "d7 d5", "e5 d6"},
+        // enpassant capture of the pawn giving check
+        {"e2 e4", "a7 a6", "e4 e5", "a6 a5", "e1 e2", "a5 a4", "e2 e3", "h7 h6", "e3 e4", "d7 d5", "e5 d6"},
+        // both castles, then a promotion
+        {"e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 c4", "f8 c5", "e1 g1", "g8 f6", "d2 d3", "d7 d6",
+            "c1 g5", "c8 g4", "b1 c3", "d8 d7", "d1 d2", "e8 c8"},
+        {"h2 h4", "g7 g5", "h4 g5", "h7 h6", "g5 h6", "f8 g7", "h6 g7", "a7 a6", "g7 h8"},
+    };
+
+    /**
+     * Replays each game and prints whether all of its moves were accepted.
+     *
+     * @param args  not used.
+     */
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        boolean passed = true;
+        for(String[] game : GAMES) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Chess.out = new PrintStream(output, true);
+            Chess.scan = new Scanner(String.join("\n", game) + "\n");
+            Chess.start();
+
+            boolean ok = !output.toString().contains("illegal move");
+            passed &= ok;
+            console.printf("%-4s %s%n", ok ? "ok" : "FAIL", String.join(", ", game));
+        }
+        Chess.out = console;
+        console.println(passed ? "all games replay" : "some games don't replay");
+    }
+}
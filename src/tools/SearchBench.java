@@ -0,0 +1,165 @@
+package tools;
+
+import engine.Position;
+import engine.Search;
+import engine.TelemetryListener;
+import engine.TranspositionTable;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures what each selective search technique is worth, by searching a set of positions to a
+ * fixed depth with every technique, with each one switched off in turn, and with none.
+ * <p>
+ * For each setting the nodes and the time the positions took to reach every depth are added up,
+ * so a technique that saves nodes but costs more time than it saves shows up. The table and history
+ * are cleared before each position, so the settings start from the same state.
+ * <p>
+ * With <code>-stats</code> the statistics of every iteration are printed as it completes: depth,
+ * selective depth, nodes, speed, branching factor, transposition table hits and cutoffs, first-move
+ * cutoffs and the time spent generating moves and evaluating. With <code>-log file</code> they are
+ * also written to the file as one JSON object per line, tagged with the setting and position.
+ * <p>
+ * Usage: <code>java tools.SearchBench [-depth n] [-hash mb] [-set list]... [-stats] [-log file] [fen]</code>,
+ * where each <code>-set</code> is a list of techniques such as <code>null+lmr</code>, as in
+ * <code>Search.parsePruning</code>, instead of the default settings.
+ *
+ * @author  Bryle Tan
+ */
+public class SearchBench {
+
+    /**
+     * positions searched when none is given: openings, middlegames and endgames.
+     */
+    private static final String[] POSITIONS = {
+        Position.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "r1bq1rk1/pp2bppp/2n1pn2/2pp4/3P4/2PBPN2/PP1N1PPP/R1BQ1RK1 w - - 0 8",
+        "2r3k1/pp3ppp/4p3/3pP3/3P4/P4N2/1P3PPP/2R3K1 w - - 0 25",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    /**
+     * Reads the options and prints the nodes and time to depth of each setting.
+     *
+     * @param args  options and an optional position, see the class description.
+     * @throws      IOException if the log can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int depth = 7;
+        int hash = 16;
+        boolean stats = false;
+        PrintWriter log = null;
+        List<Integer> settings = new ArrayList<>();
+        StringBuilder fen = new StringBuilder();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-depth": depth = Math.min(Integer.parseInt(args[++i]), Search.MAX_PLY - 1); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                case "-set": settings.add(Search.parsePruning(args[++i])); break;
+                case "-stats": stats = true; break;
+                case "-log": log = new PrintWriter(Files.newBufferedWriter(Paths.get(args[++i]))); break;
+                default: fen.append(fen.length() == 0 ? "" : " ").append(args[i]); break;
+            }
+        }
+        if(settings.isEmpty()) {
+            settings.add(Search.ALL_PRUNING);
+            for(int bit = 0; bit < Search.PRUNING_NAMES.length; bit++) {
+                settings.add(Search.ALL_PRUNING & ~(1 << bit));
+            }
+            settings.add(0);
+        }
+        String[] positions = fen.length() > 0 ? new String[] {fen.toString()} : POSITIONS;
+
+        Search search = new Search(new TranspositionTable(hash));
+        // one untimed pass, so the first setting isn't slowed down by the JIT compiler
+        for(String position : positions) {
+            search.think(Position.fromFen(position), Math.min(depth, 5));
+        }
+
+        System.out.printf("%-24s %14s %10s   time to depth in ms%n", "setting", "nodes", "ms");
+        for(int flags : settings) {
+            search.setPruning(flags);
+            long[] elapsed = new long[depth + 1];
+            long nodes = 0;
+
+            for(int p = 0; p < positions.length; p++) {
+                search.getTable().clear();
+                search.clearHistory();
+                long start = System.nanoTime();
+                search.setListener((d, move, score, n) -> elapsed[d] += System.nanoTime() - start);
+                if(stats || log != null) {
+                    search.setTelemetry(telemetry(stats, log, describe(flags), p));
+                }
+                search.think(Position.fromFen(positions[p]), depth);
+                nodes += search.getNodes();
+            }
+            search.setListener(null);
+            search.setTelemetry(null);
+
+            StringBuilder line = new StringBuilder();
+            for(int d = 1; d <= depth; d++) {
+                line.append(String.format(" %7d", elapsed[d] / 1000000));
+            }
+            System.out.printf("%-24s %,14d %10d  %s%n", describe(flags), nodes, elapsed[depth] / 1000000, line);
+        }
+        if(log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Makes the listener that prints and logs the statistics of each iteration.
+     *
+     * @param print     <code>true</code> to print them.
+     * @param log       where to write them as JSON, <code>null</code> if they aren't written.
+     * @param setting   name of the setting, for the log.
+     * @param position  index of the position, for the log.
+     * @return          the listener.
+     */
+    private static TelemetryListener telemetry(boolean print, PrintWriter log, String setting, int position) {
+        if(print && position == 0) {
+            System.out.printf("  %5s %4s %4s %12s %11s %6s %6s %6s %6s %9s %9s%n", "pos", "dep", "sel", "nodes", "nps",
+                    "ebf", "ttcut%", "tthit%", "first%", "movegen", "eval ms");
+        }
+        return s -> {
+            if(print) {
+                System.out.printf(Locale.ROOT, "  %5d %4d %4d %,12d %,11d %6.2f %6.1f %6.1f %6.1f %9.1f %9.1f%n", position,
+                        s.getDepth(), s.getSelDepth(), s.getNodes(), s.getNodesPerSecond(), s.getBranchingFactor(),
+                        100 * s.getHashCutoffRate(), 100 * s.getHashHitRate(), 100 * s.getFirstMoveCutoffRate(),
+                        s.getMoveGenMillis(), s.getEvalMillis());
+            }
+            if(log != null) {
+                log.println("{\"setting\":\"" + setting + "\",\"position\":" + position + "," + s.toJson().substring(1));
+            }
+        };
+    }
+
+    /**
+     * Names the techniques of a setting, or the ones left out if that is shorter.
+     *
+     * @param flags <code>Search.setPruning</code> flags.
+     * @return      the description.
+     */
+    private static String describe(int flags) {
+        if(flags == Search.ALL_PRUNING) {
+            return "all";
+        } else if(flags == 0) {
+            return "none";
+        }
+        List<String> on = new ArrayList<>();
+        List<String> off = new ArrayList<>();
+        for(int bit = 0; bit < Search.PRUNING_NAMES.length; bit++) {
+            ((flags & 1 << bit) != 0 ? on : off).add(Search.PRUNING_NAMES[bit]);
+        }
+        return on.size() <= off.size() ? String.join("+", on) : "all -" + String.join("-", off);
+    }
+}
@@ -0,0 +1,180 @@
+package tools;
+
+import engine.Difficulty;
+import engine.MoveGenerator;
+import engine.Moves;
+import engine.Position;
+import engine.SearchScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates many casual games served at once by one <code>SearchScheduler</code>, to size its worker
+ * pool and slices.
+ * <p>
+ * Each game has its own session and position. The person's side plays a random legal move after
+ * thinking for a random time around <code>-think</code> milliseconds, then asks the scheduler for the
+ * computer's reply; a finished game starts again. Every second the queue depth, the moves played and
+ * the wait times are printed, then a summary with the CPU time per move of each level.
+ * <p>
+ * Usage: <code>java tools.ServeBench [-games n] [-workers n] [-slice nodes] [-think ms] [-clock s]
+ * [-seconds n] [-hash mb] [level]...</code>, where the games are spread over the levels given, all
+ * of them by default.
+ *
+ * @author  Bryle Tan
+ */
+public class ServeBench {
+
+    /**
+     * scheduler serving the games.
+     */
+    private final SearchScheduler scheduler;
+
+    /**
+     * runs the person's moves after their thinking time.
+     */
+    private final ScheduledExecutorService people = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * average thinking time of the person, in milliseconds.
+     */
+    private final long think;
+
+    /**
+     * computer's clock at the start of each game in milliseconds, 0 without a clock.
+     */
+    private final long clock;
+
+    /**
+     * set once the run is over, so no more moves are asked for.
+     */
+    private volatile boolean finished;
+
+    /**
+     * Constructor for a run.
+     *
+     * @param scheduler scheduler serving the games.
+     * @param think     average thinking time of the person, in milliseconds.
+     * @param clock     computer's clock at the start of each game in milliseconds, 0 without a clock.
+     */
+    private ServeBench(SearchScheduler scheduler, long think, long clock) {
+        this.scheduler = scheduler;
+        this.think = think;
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the options and runs the simulation.
+     *
+     * @param args  options and levels, see the class description.
+     * @throws      InterruptedException if interrupted while waiting for the run to end.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = 200;
+        int workers = Runtime.getRuntime().availableProcessors();
+        long slice = 4096;
+        long think = 2000;
+        long clock = 0;
+        int seconds = 10;
+        int hash = 64;
+        List<Difficulty> levels = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-workers": workers = Integer.parseInt(args[++i]); break;
+                case "-slice": slice = Long.parseLong(args[++i]); break;
+                case "-think": think = Long.parseLong(args[++i]); break;
+                case "-clock": clock = (long) (Double.parseDouble(args[++i]) * 1000); break;
+                case "-seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "-hash": hash = Integer.parseInt(args[++i]); break;
+                default: levels.add(Difficulty.parse(args[i])); break;
+            }
+        }
+        if(levels.isEmpty()) {
+            levels.addAll(List.of(Difficulty.LEVELS));
+        }
+
+        SearchScheduler scheduler = new SearchScheduler(workers, hash, slice);
+        ServeBench bench = new ServeBench(scheduler, think, clock);
+        for(int game = 0; game < games; game++) {
+            bench.startGame(new SearchScheduler.Session(levels.get(game % levels.size()), game), new Random(game));
+        }
+
+        System.out.printf("%d games on %d workers, %s%n", games, workers, levels.size() == 1 ? levels.get(0).name : "mixed levels");
+        System.out.printf("%6s %8s %10s %12s %12s %12s%n", "second", "queue", "moves/s", "avg wait ms", "max wait ms",
+                "avg move ms");
+        long lastMoves = 0;
+        for(int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            long moves = scheduler.getMoves();
+            System.out.printf("%6d %8d %10d %12.2f %12.2f %12.2f%n", second, scheduler.getQueueDepth(), moves - lastMoves,
+                    scheduler.getAverageWaitMillis(), scheduler.getMaxWaitMillis(), scheduler.getAverageLatencyMillis());
+            lastMoves = moves;
+        }
+        bench.finished = true;
+        bench.people.shutdownNow();
+        scheduler.shutdown();
+
+        System.out.printf("%,d moves, %,d slices, %,d preempted, %,d late, largest queue %d, max move %.1f ms%n",
+                scheduler.getMoves(), scheduler.getSlices(), scheduler.getPreemptions(), scheduler.getLateMoves(),
+                scheduler.getMaxQueueDepth(), scheduler.getMaxLatencyMillis());
+        for(Difficulty level : levels) {
+            System.out.printf("  %-10s %,8d moves  %8.2f ms cpu/move  %,10d nodes/move%n", level.name, level.getMoves(),
+                    level.getAverageCpuMicros() / 1000.0, level.getAverageNodes());
+        }
+    }
+
+    /**
+     * Starts a game from the starting position, with the person to move after a short delay.
+     *
+     * @param session   session of the game.
+     * @param random    source of the person's moves and thinking times.
+     */
+    private void startGame(SearchScheduler.Session session, Random random) {
+        session.setClock(clock, 0);
+        Position pos = Position.fromFen(Position.START_FEN);
+        people.schedule(() -> personMoves(session, pos, random), random.nextInt((int) think + 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Plays the person's move and asks for the computer's reply, which schedules the person's next move.
+     *
+     * @param session   session of the game.
+     * @param pos       position of the game, with the person to move.
+     * @param random    source of the person's moves and thinking times.
+     */
+    private void personMoves(SearchScheduler.Session session, Position pos, Random random) {
+        if(finished) {
+            return;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(pos, moves);
+        if(count == 0 || pos.isFiftyMoveDraw() || pos.isInsufficientMaterial()) {
+            startGame(session, random);
+            return;
+        }
+        pos.makeMove(moves[random.nextInt(count)]);
+
+        long requested = System.currentTimeMillis();
+        scheduler.requestMove(session, pos).thenAccept(move -> {
+            if(move == Moves.NONE) {
+                startGame(session, random);
+                return;
+            }
+            if(clock > 0) {
+                session.setClock(Math.max(1, session.getClock() - (System.currentTimeMillis() - requested)), 0);
+            }
+            pos.makeMove(move);
+            long delay = think / 2 + random.nextInt((int) think + 1);
+            if(!finished) {
+                people.schedule(() -> personMoves(session, pos, random), delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+}
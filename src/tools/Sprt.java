@@ -0,0 +1,207 @@
+package tools;
+
+/**
+ * Running score of a match between two players, with the Elo difference it implies and a
+ * sequential probability ratio test (SPRT) deciding whether player A is stronger.
+ * <p>
+ * The test weighs hypothesis H0, "A is <code>elo0</code> Elo stronger than B", against H1, "A is
+ * <code>elo1</code> Elo stronger". After every game the log-likelihood ratio of the two is worked out
+ * with the usual normal approximation of the game results. Once it passes the upper bound H1 is
+ * accepted, and once it passes the lower bound H0 is accepted, with error rates alpha and beta.
+ *
+ * @author  Bryle Tan
+ */
+public class Sprt {
+
+    /**
+     * result of the test while it is still running.
+     */
+    public static final int CONTINUE = 0;
+
+    /**
+     * result of the test once H1 is accepted: the change gains <code>elo1</code>.
+     */
+    public static final int ACCEPT = 1;
+
+    /**
+     * result of the test once H0 is accepted: the change doesn't gain <code>elo1</code>.
+     */
+    public static final int REJECT = 2;
+
+    /**
+     * expected score of A under H0.
+     */
+    private final double score0;
+
+    /**
+     * expected score of A under H1.
+     */
+    private final double score1;
+
+    /**
+     * log-likelihood ratio below which H0 is accepted.
+     */
+    private final double lowerBound;
+
+    /**
+     * log-likelihood ratio above which H1 is accepted.
+     */
+    private final double upperBound;
+
+    /**
+     * games won by A.
+     */
+    private int wins;
+
+    /**
+     * games drawn.
+     */
+    private int draws;
+
+    /**
+     * games lost by A.
+     */
+    private int losses;
+
+    /**
+     * Constructor for a test.
+     *
+     * @param elo0  Elo difference of H0.
+     * @param elo1  Elo difference of H1, larger than <code>elo0</code>.
+     * @param alpha chance of accepting H1 when H0 is true.
+     * @param beta  chance of accepting H0 when H1 is true.
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        this.score0 = expectedScore(elo0);
+        this.score1 = expectedScore(elo1);
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Adds the result of a game.
+     *
+     * @param score score of A: 1 for a win, 0.5 for a draw, 0 for a loss.
+     */
+    public synchronized void add(double score) {
+        if(score > 0.75) {
+            wins++;
+        } else if(score > 0.25) {
+            draws++;
+        } else {
+            losses++;
+        }
+    }
+
+    /**
+     * @return  number of games added.
+     */
+    public synchronized int games() { return wins + draws + losses; }
+
+    /**
+     * @return  games won by A, drawn, and lost by A.
+     */
+    public synchronized int[] results() { return new int[] {wins, draws, losses}; }
+
+    /**
+     * @return  average score of A, 0.5 before any games.
+     */
+    public synchronized double score() {
+        int games = games();
+        return games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+    }
+
+    /**
+     * Gets the Elo difference implied by the score so far.
+     *
+     * @return  Elo of A minus Elo of B.
+     */
+    public synchronized double elo() {
+        return eloOf(score());
+    }
+
+    /**
+     * Gets the half width of the 95% confidence interval of <code>elo</code>.
+     *
+     * @return  the error margin in Elo, infinite before the results vary.
+     */
+    public synchronized double eloError() {
+        int games = games();
+        double variance = variance();
+        if(games == 0 || variance == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double margin = 1.96 * Math.sqrt(variance / games);
+        double score = score();
+        return (eloOf(Math.min(score + margin, 0.999)) - eloOf(Math.max(score - margin, 0.001))) / 2;
+    }
+
+    /**
+     * Gets the log-likelihood ratio of H1 against H0.
+     *
+     * @return  the ratio, 0 before the results vary.
+     */
+    public synchronized double llr() {
+        double variance = variance();
+        if(variance == 0) {
+            return 0;
+        }
+        return games() * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * @return  <code>CONTINUE</code>, <code>ACCEPT</code> or <code>REJECT</code>.
+     */
+    public synchronized int status() {
+        double llr = llr();
+        if(llr >= upperBound) {
+            return ACCEPT;
+        }
+        if(llr <= lowerBound) {
+            return REJECT;
+        }
+        return CONTINUE;
+    }
+
+    /**
+     * @return  the lower and upper bounds of the log-likelihood ratio.
+     */
+    public double[] bounds() { return new double[] {lowerBound, upperBound}; }
+
+    /**
+     * Gets the variance of a single game's score.
+     *
+     * @return  the variance.
+     */
+    private double variance() {
+        int games = games();
+        if(games == 0) {
+            return 0;
+        }
+        double score = score();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    /**
+     * @param elo   Elo difference.
+     * @return      expected score of the stronger player.
+     */
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * @param score expected score.
+     * @return      Elo difference that gives the score.
+     */
+    private static double eloOf(double score) {
+        if(score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if(score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+}
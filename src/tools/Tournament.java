@@ -0,0 +1,613 @@
+package tools;
+
+import engine.Difficulty;
+import engine.Mcts;
+import engine.MoveGenerator;
+import engine.Moves;
+import engine.Network;
+import engine.Position;
+import engine.Search;
+import engine.TimeManager;
+import engine.TranspositionTable;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless engine-vs-engine match runner, used to tune and regression-test the computer player.
+ * <p>
+ * Two players, A and B, play each opening twice with the colors swapped, on every core at once.
+ * Each game has its own <code>Position</code>, and each worker thread its own searches, so nothing
+ * is shared with the static game state of <code>chess.Chess</code>. Moves are limited by nodes,
+ * time or depth. After every game the Elo difference with its 95% error margin and the SPRT
+ * log-likelihood ratio are updated, and the match stops once the SPRT accepts or rejects.
+ * <p>
+ * Usage: <code>java tools.Tournament [options]</code>
+ * <ul>
+ * <li><code>-a spec</code>, <code>-b spec</code>: the players, as comma separated settings such as
+ * <code>name=dev,nodes=20000,time=100,depth=12,hash=8</code>; <code>nnue=file</code> or
+ * <code>nnue=builtin</code> evaluates with a network, and <code>prune=null+lmr</code> (or <code>all</code>,
+ * <code>none</code>) picks the selective search techniques, see <code>Search.parsePruning</code>.
+ * <code>mcts=n</code> plays with Monte Carlo tree search, n playouts a move, in an arena of
+ * <code>hash</code> megabytes, and <code>level=casual</code> plays at a difficulty level, see
+ * <code>Difficulty</code>.</li>
+ * <li><code>-games n</code>: largest number of games (1000 by default).</li>
+ * <li><code>-concurrency n</code>: games played at once (all cores by default).</li>
+ * <li><code>-openings file</code>: one FEN or EPD per line, instead of the built-in openings.</li>
+ * <li><code>-pgn file</code>: file every game is written to.</li>
+ * <li><code>-sprt elo0 elo1 alpha beta</code>: bounds of the test (0 5 0.05 0.05 by default).</li>
+ * <li><code>-maxplies n</code>: plies after which a game is adjudicated a draw (400 by default).</li>
+ * </ul>
+ *
+ * @author  Bryle Tan
+ */
+public class Tournament {
+
+    /**
+     * built-in openings, as moves in coordinate notation from the starting position.
+     */
+    private static final String[] OPENINGS = {
+        "e2e4 e7e5 g1f3 b8c6 f1b5",
+        "e2e4 e7e5 g1f3 b8c6 f1c4",
+        "e2e4 c7c5 g1f3 d7d6 d2d4",
+        "e2e4 c7c5 b1c3 b8c6",
+        "e2e4 e7e6 d2d4 d7d5",
+        "e2e4 c7c6 d2d4 d7d5",
+        "e2e4 d7d5 e4d5 d8d5",
+        "d2d4 d7d5 c2c4 e7e6",
+        "d2d4 d7d5 c2c4 c7c6",
+        "d2d4 g8f6 c2c4 e7e6 b1c3 f8b4",
+        "d2d4 g8f6 c2c4 g7g6 b1c3 f8g7",
+        "d2d4 g8f6 c2c4 c7c5 d4d5",
+        "c2c4 e7e5 b1c3",
+        "c2c4 g8f6 g1f3 e7e6",
+        "g1f3 d7d5 g2g3",
+        "d2d4 f7f5 g2g3",
+    };
+
+    /**
+     * player A, whose Elo gain is being measured.
+     */
+    private final Player a;
+
+    /**
+     * player B, the baseline.
+     */
+    private final Player b;
+
+    /**
+     * opening positions, each played twice.
+     */
+    private final List<Opening> openings;
+
+    /**
+     * plies after which a game is adjudicated a draw.
+     */
+    private final int maxPlies;
+
+    /**
+     * running score and test of the match.
+     */
+    private final Sprt sprt;
+
+    /**
+     * where the games are written, <code>null</code> if they aren't kept.
+     */
+    private final Writer pgn;
+
+    /**
+     * set once the match is decided, so the games still queued are skipped.
+     */
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * searches of players A and B for each worker thread, reused from game to game.
+     */
+    private final ThreadLocal<Search[]> searches;
+
+    /**
+     * Monte Carlo tree searches of players A and B for each worker thread, <code>null</code> for a
+     * player using the alpha-beta search.
+     */
+    private final ThreadLocal<Mcts[]> trees;
+
+    /**
+     * Constructor for a match.
+     *
+     * @param a         player A.
+     * @param b         player B.
+     * @param openings  opening positions.
+     * @param maxPlies  plies after which a game is adjudicated a draw.
+     * @param sprt      test to run, also holding the score.
+     * @param pgn       where the games are written, <code>null</code> if they aren't kept.
+     */
+    public Tournament(Player a, Player b, List<Opening> openings, int maxPlies, Sprt sprt, Writer pgn) {
+        this.a = a;
+        this.b = b;
+        this.openings = openings;
+        this.maxPlies = maxPlies;
+        this.sprt = sprt;
+        this.pgn = pgn;
+        this.searches = ThreadLocal.withInitial(() -> new Search[] {
+            new Search(new TranspositionTable(a.hash)),
+            new Search(new TranspositionTable(b.hash))
+        });
+        this.trees = ThreadLocal.withInitial(() -> new Mcts[] {
+            a.playouts > 0 ? new Mcts(a.hash, 1) : null,
+            b.playouts > 0 ? new Mcts(b.hash, 1) : null
+        });
+    }
+
+    /**
+     * Reads the options and runs the match.
+     *
+     * @param args  options, see the class description.
+     * @throws      IOException if the openings can't be read or the PGN file can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Player a = Player.parse("A", "");
+        Player b = Player.parse("B", "");
+        int games = 1000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        String openingFile = null;
+        String pgnFile = null;
+        double[] bounds = {0, 5, 0.05, 0.05};
+        int maxPlies = 400;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-a": a = Player.parse("A", args[++i]); break;
+                case "-b": b = Player.parse("B", args[++i]); break;
+                case "-games": games = Integer.parseInt(args[++i]); break;
+                case "-concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                case "-openings": openingFile = args[++i]; break;
+                case "-pgn": pgnFile = args[++i]; break;
+                case "-maxplies": maxPlies = Integer.parseInt(args[++i]); break;
+                case "-sprt":
+                    for(int j = 0; j < 4; j++) {
+                        bounds[j] = Double.parseDouble(args[++i]);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+
+        List<Opening> openings = openingFile == null ? builtInOpenings() : Opening.read(openingFile);
+        Sprt sprt = new Sprt(bounds[0], bounds[1], bounds[2], bounds[3]);
+        Writer pgn = pgnFile == null ? null : new BufferedWriter(new FileWriter(pgnFile));
+
+        new Tournament(a, b, openings, maxPlies, sprt, pgn).run(games, concurrency);
+
+        if(pgn != null) {
+            pgn.close();
+        }
+    }
+
+    /**
+     * Plays the match until the SPRT decides or all games are played, printing the standing as it goes.
+     *
+     * @param games         largest number of games.
+     * @param concurrency   games played at once.
+     */
+    public void run(int games, int concurrency) {
+        System.out.println(a.name + " vs " + b.name + ", " + openings.size() + " openings, "
+                + concurrency + " games at once");
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for(int i = 0; i < games; i++) {
+            int round = i + 1;
+            Opening opening = openings.get((i / 2) % openings.size());
+            boolean aIsWhite = i % 2 == 0;
+            pool.execute(() -> {
+                if(finished.get()) {
+                    return;
+                }
+                double score = playGame(round, opening, aIsWhite);
+                record(score);
+            });
+        }
+
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        printStanding();
+        switch(sprt.status()) {
+            case Sprt.ACCEPT: System.out.println("SPRT: H1 accepted"); break;
+            case Sprt.REJECT: System.out.println("SPRT: H0 accepted"); break;
+            default: System.out.println("SPRT: no decision"); break;
+        }
+    }
+
+    /**
+     * Adds a game's result to the score, unless the match was decided while it was being played.
+     *
+     * @param score score of player A.
+     */
+    private synchronized void record(double score) {
+        if(finished.get()) {
+            return;
+        }
+        sprt.add(score);
+        if(sprt.games() % 10 == 0) {
+            printStanding();
+        }
+        if(sprt.status() != Sprt.CONTINUE) {
+            finished.set(true);
+        }
+    }
+
+    /**
+     * Prints the results so far, the Elo difference and the SPRT log-likelihood ratio.
+     */
+    private void printStanding() {
+        int[] results = sprt.results();
+        double[] bounds = sprt.bounds();
+        System.out.printf("games %d: +%d =%d -%d, elo %.1f +- %.1f, llr %.2f (%.2f, %.2f)%n",
+                sprt.games(), results[0], results[1], results[2], sprt.elo(), sprt.eloError(),
+                sprt.llr(), bounds[0], bounds[1]);
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param round     number of the game, for the PGN.
+     * @param opening   position the game starts from.
+     * @param aIsWhite  <code>true</code> if player A has the white pieces.
+     * @return          score of player A.
+     */
+    private double playGame(int round, Opening opening, boolean aIsWhite) {
+        Search[] players = searches.get();
+        for(Search search : players) {
+            search.getTable().clear();
+            search.clearHistory();
+        }
+        players[0].setNodeLimit(a.nodes);
+        players[1].setNodeLimit(b.nodes);
+        players[0].setNetwork(a.network);
+        players[1].setNetwork(b.network);
+        players[0].setPruning(a.pruning);
+        players[1].setPruning(b.pruning);
+        Mcts[] mcts = trees.get();
+        for(int i = 0; i < 2; i++) {
+            if(mcts[i] != null) {
+                mcts[i].clear();
+                mcts[i].setPlayoutLimit((i == 0 ? a : b).playouts);
+            }
+        }
+        TimeManager timer = new TimeManager();
+        // seeded by the game, so a game between difficulty levels can be played again
+        Random random = new Random(round);
+
+        Position pos = Position.fromFen(opening.fen);
+        List<String> sans = new ArrayList<>();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        for(String uci : opening.moves) {
+            int move = parseUci(pos, uci);
+            sans.add(Moves.toSan(pos, move, buffer));
+            pos.makeMove(move);
+        }
+
+        String result;
+        String reason;
+        while(true) {
+            if(!MoveGenerator.hasLegalMove(pos, buffer)) {
+                if(pos.inCheck(pos.sideToMove)) {
+                    result = pos.sideToMove == Position.WHITE ? "0-1" : "1-0";
+                    reason = "checkmate";
+                } else {
+                    result = "1/2-1/2";
+                    reason = "stalemate";
+                }
+                break;
+            }
+            if(pos.repetitions() >= 2 || pos.isFiftyMoveDraw() || pos.isInsufficientMaterial()) {
+                result = "1/2-1/2";
+                reason = pos.isInsufficientMaterial() ? "insufficient material"
+                       : pos.isFiftyMoveDraw() ? "fifty-move rule" : "threefold repetition";
+                break;
+            }
+            if(sans.size() >= maxPlies) {
+                result = "1/2-1/2";
+                reason = "adjudicated after " + maxPlies + " plies";
+                break;
+            }
+
+            boolean aToMove = (pos.sideToMove == Position.WHITE) == aIsWhite;
+            Player player = aToMove ? a : b;
+            Search search = players[aToMove ? 0 : 1];
+            Mcts tree = mcts[aToMove ? 0 : 1];
+
+            TimeManager limit = null;
+            if(player.time > 0) {
+                timer.startFixed(player.time);
+                limit = timer;
+            }
+            int move;
+            if(player.level != null) {
+                move = player.level.chooseMove(search, pos, timer, random);
+            } else if(tree != null) {
+                move = tree.think(pos, limit);
+            } else {
+                move = search.think(pos, player.depth, limit);
+            }
+
+            sans.add(Moves.toSan(pos, move, buffer));
+            pos.makeMove(move);
+        }
+
+        if(pgn != null) {
+            writePgn(round, opening, aIsWhite, sans, result, reason);
+        }
+
+        if(result.equals("1/2-1/2")) {
+            return 0.5;
+        }
+        return result.equals("1-0") == aIsWhite ? 1 : 0;
+    }
+
+    /**
+     * Writes a game to the PGN file.
+     *
+     * @param round     number of the game.
+     * @param opening   position the game started from.
+     * @param aIsWhite  <code>true</code> if player A had the white pieces.
+     * @param sans      moves of the game, opening included, in standard algebraic notation.
+     * @param result    result tag, for example "1-0".
+     * @param reason    how the game ended, written as a comment.
+     */
+    private void writePgn(int round, Opening opening, boolean aIsWhite, List<String> sans, String result, String reason) {
+        StringBuilder game = new StringBuilder();
+        game.append("[Event \"Tournament\"]\n");
+        game.append("[Site \"?\"]\n");
+        game.append("[Date \"").append(LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd"))).append("\"]\n");
+        game.append("[Round \"").append(round).append("\"]\n");
+        game.append("[White \"").append(aIsWhite ? a.name : b.name).append("\"]\n");
+        game.append("[Black \"").append(aIsWhite ? b.name : a.name).append("\"]\n");
+        game.append("[Result \"").append(result).append("\"]\n");
+        if(!opening.fen.equals(Position.START_FEN)) {
+            game.append("[SetUp \"1\"]\n");
+            game.append("[FEN \"").append(opening.fen).append("\"]\n");
+        }
+        game.append('\n');
+
+        boolean white = Position.fromFen(opening.fen).sideToMove == Position.WHITE;
+        int number = opening.fullmove;
+        StringBuilder line = new StringBuilder();
+        for(int i = 0; i < sans.size(); i++) {
+            String token = "";
+            if(white) {
+                token = number + ". ";
+            } else if(i == 0) {
+                token = number + "... ";
+            }
+            token += sans.get(i);
+            if(!white) {
+                number++;
+            }
+            white = !white;
+
+            if(line.length() + token.length() + 1 > 79) {
+                game.append(line.toString().trim()).append('\n');
+                line.setLength(0);
+            }
+            line.append(token).append(' ');
+        }
+        line.append('{').append(reason).append("} ").append(result);
+        game.append(line.toString().trim()).append("\n\n");
+
+        synchronized(pgn) {
+            try {
+                pgn.write(game.toString());
+                pgn.flush();
+            } catch(IOException e) {
+                System.err.println("can't write game " + round + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Turns a move in coordinate notation into a packed move of the position.
+     *
+     * @param pos   position the move is played in.
+     * @param uci   move such as "e2e4" or "e7e8n".
+     * @return      the packed move.
+     * @throws      IllegalArgumentException if the move isn't legal in the position.
+     */
+    private static int parseUci(Position pos, String uci) {
+        int from = (uci.charAt(1) - '1') * 8 + (uci.charAt(0) - 'a');
+        int to = (uci.charAt(3) - '1') * 8 + (uci.charAt(2) - 'a');
+        int promotion = uci.length() > 4 ? Position.PIECE_LETTERS.indexOf(Character.toUpperCase(uci.charAt(4))) : 0;
+        int move = pos.moveFor(from, to, promotion);
+        if(!MoveGenerator.isPseudoLegal(pos, move) || !MoveGenerator.isLegal(pos, move)) {
+            throw new IllegalArgumentException("illegal opening move: " + uci);
+        }
+        return move;
+    }
+
+    /**
+     * @return  the built-in openings.
+     */
+    private static List<Opening> builtInOpenings() {
+        List<Opening> openings = new ArrayList<>();
+        for(String line : OPENINGS) {
+            openings.add(new Opening(Position.START_FEN, 1, List.of(line.split(" "))));
+        }
+        return openings;
+    }
+
+    /**
+     * Settings of one side of the match.
+     */
+    public static class Player {
+
+        /**
+         * name written to the PGN.
+         */
+        String name;
+
+        /**
+         * largest search depth.
+         */
+        int depth = Search.MAX_PLY - 1;
+
+        /**
+         * nodes per move, 0 for no limit.
+         */
+        long nodes;
+
+        /**
+         * milliseconds per move, 0 for no limit.
+         */
+        long time;
+
+        /**
+         * size of the transposition table in megabytes.
+         */
+        int hash = 8;
+
+        /**
+         * network to evaluate with, shared by every game since it is only read, <code>null</code> for
+         * the hand-written evaluation.
+         */
+        Network network;
+
+        /**
+         * <code>Search.setPruning</code> flags of the selective search techniques used.
+         */
+        int pruning = Search.ALL_PRUNING;
+
+        /**
+         * playouts per move with Monte Carlo tree search, 0 to use the alpha-beta search.
+         */
+        long playouts;
+
+        /**
+         * difficulty level played at, <code>null</code> to use the other settings.
+         */
+        Difficulty level;
+
+        /**
+         * Reads the settings of a player, for example "name=dev,nodes=20000". A player with no limit
+         * at all gets 20000 nodes per move.
+         *
+         * @param name  default name.
+         * @param spec  comma separated <code>key=value</code> settings.
+         * @return      the player.
+         * @throws      IOException if a network file can't be read.
+         * @throws      IllegalArgumentException on an unknown setting.
+         */
+        public static Player parse(String name, String spec) throws IOException {
+            Player player = new Player();
+            player.name = name;
+            for(String setting : spec.split(",")) {
+                if(setting.isEmpty()) {
+                    continue;
+                }
+                String[] pair = setting.split("=", 2);
+                String value = pair.length > 1 ? pair[1] : "";
+                switch(pair[0]) {
+                    case "name": player.name = value; break;
+                    case "depth": player.depth = Math.min(Integer.parseInt(value), Search.MAX_PLY - 1); break;
+                    case "nodes": player.nodes = Long.parseLong(value); break;
+                    case "time": player.time = Long.parseLong(value); break;
+                    case "hash": player.hash = Integer.parseInt(value); break;
+                    case "prune": player.pruning = Search.parsePruning(value); break;
+                    case "mcts": player.playouts = Long.parseLong(value); break;
+                    case "level": player.level = Difficulty.parse(value); break;
+                    case "nnue":
+                        player.network = value.equals("builtin") ? Network.fromEvaluation() : Network.load(Paths.get(value));
+                        break;
+                    default: throw new IllegalArgumentException("unknown player setting: " + pair[0]);
+                }
+            }
+            if(player.nodes == 0 && player.time == 0 && player.depth == Search.MAX_PLY - 1
+                    && player.playouts == 0 && player.level == null) {
+                player.nodes = 20000;
+            }
+            return player;
+        }
+    }
+
+    /**
+     * Position a game starts from: a FEN, and moves to play from it before the players take over.
+     */
+    public static class Opening {
+
+        /**
+         * starting position.
+         */
+        final String fen;
+
+        /**
+         * fullmove number of the starting position, for the PGN.
+         */
+        final int fullmove;
+
+        /**
+         * moves in coordinate notation played before the players take over.
+         */
+        final List<String> moves;
+
+        /**
+         * Constructor for an opening.
+         *
+         * @param fen       starting position.
+         * @param fullmove  fullmove number of the starting position.
+         * @param moves     moves in coordinate notation to play from it.
+         */
+        public Opening(String fen, int fullmove, List<String> moves) {
+            this.fen = fen;
+            this.fullmove = fullmove;
+            this.moves = moves;
+        }
+
+        /**
+         * Reads openings from a file with one FEN or EPD per line. Blank lines and lines starting
+         * with '#' are skipped, and EPD operations are ignored.
+         *
+         * @param file  path of the file.
+         * @return      the openings.
+         * @throws      IOException if the file can't be read.
+         */
+        public static List<Opening> read(String file) throws IOException {
+            List<Opening> openings = new ArrayList<>();
+            for(String line : Files.readAllLines(Paths.get(file))) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                String fen = String.join(" ", fields[0], fields[1], fields[2], fields[3]);
+                int halfmove = 0;
+                int fullmove = 1;
+                if(fields.length >= 6 && fields[4].matches("\\d+") && fields[5].matches("\\d+")) {
+                    halfmove = Integer.parseInt(fields[4]);
+                    fullmove = Integer.parseInt(fields[5]);
+                }
+                openings.add(new Opening(fen + " " + halfmove + " " + fullmove, fullmove, List.of()));
+            }
+            if(openings.isEmpty()) {
+                throw new IOException("no openings in " + file);
+            }
+            return openings;
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package tools;
+
+import engine.Evaluation;
+import engine.Position;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Texel-style tuner for the material, piece-square and mobility weights of <code>Evaluation</code>.
+ * <p>
+ * Each line of the data file is a position in FEN followed by the result of the game it came from,
+ * as <code>1-0</code>, <code>0-1</code> or <code>1/2-1/2</code> (for example as an EPD
+ * <code>c9 "1-0";</code>), or as a score for white such as <code>[0.5]</code>. The positions should
+ * be quiet, since the static evaluation is fitted to them without a search.
+ * <p>
+ * The tuned weights are linear in the evaluation, so each position is loaded once into compact
+ * primitive arrays: its game phase, its result, and for each weight how many more times white uses it
+ * than black (a piece on a square, a square a piece can move to). The terms that aren't tuned, such
+ * as king safety and pawn structure, are kept as one fixed score. The evaluation of a position is
+ * then just a sum over its few weights, blended by the phase like in <code>Evaluation.taper</code>.
+ * <p>
+ * The mean squared error between the results and <code>1 / (1 + 10^(-K * eval / 400))</code> is
+ * minimized by gradient descent with Adam steps, after fitting K to the current weights. Every
+ * epoch the positions are split across the cores, each summing the gradient of its share, and the
+ * sums are added up. The tuned weights are written as Java declarations laid out like the ones in
+ * <code>Evaluation</code>, so they can be pasted over them.
+ * <p>
+ * Usage: <code>java tools.Tuner [-epochs n] [-rate r] [-k k] [-threads n] [-out file] data.epd</code>
+ *
+ * @author  Bryle Tan
+ */
+public class Tuner {
+
+    /**
+     * index of the first piece-square weight; the material weights of pawn to queen come first.
+     */
+    private static final int PST = 5;
+
+    /**
+     * index of the first mobility weight, for knight to queen.
+     */
+    private static final int MOBILITY = PST + 6 * 64;
+
+    /**
+     * number of tuned weights, each of which has a middlegame and an endgame value.
+     */
+    private static final int TERMS = MOBILITY + 4;
+
+    /**
+     * number of lines read and loaded at once.
+     */
+    private static final int BATCH = 1 << 16;
+
+    /**
+     * pool the positions are loaded and the gradient worked out on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * number of positions loaded.
+     */
+    private int size;
+
+    /**
+     * game result of each position for white, in halves: 0 for a loss, 1 for a draw, 2 for a win.
+     */
+    private byte[] results = new byte[1024];
+
+    /**
+     * game phase of each position, capped at <code>Evaluation.TOTAL_PHASE</code>.
+     */
+    private byte[] phases = new byte[1024];
+
+    /**
+     * score of the terms that aren't tuned, in centipawns for white.
+     */
+    private short[] fixed = new short[1024];
+
+    /**
+     * index of the first entry of each position in <code>entries</code>, with one more at the end.
+     */
+    private int[] starts = new int[1025];
+
+    /**
+     * the weights each position uses: the weight's index in the high 16 bits, and how many more times
+     * white uses it than black in the low 16 bits.
+     */
+    private int[] entries = new int[1 << 16];
+
+    /**
+     * number of entries used.
+     */
+    private int entryCount;
+
+    /**
+     * Constructor for a tuner.
+     *
+     * @param pool  pool the positions are loaded and the gradient worked out on.
+     */
+    public Tuner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the options, tunes the weights on the data file and writes them.
+     *
+     * @param args  options and the path of the data, see the class description.
+     * @throws      IOException if the data can't be read or the weights can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int epochs = 500;
+        double rate = 1;
+        double k = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = "tuned.txt";
+        String file = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-epochs": epochs = Integer.parseInt(args[++i]); break;
+                case "-rate": rate = Double.parseDouble(args[++i]); break;
+                case "-k": k = Double.parseDouble(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-out": out = args[++i]; break;
+                default: file = args[i]; break;
+            }
+        }
+        if(file == null) {
+            throw new IllegalArgumentException("no data file given");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Tuner tuner = new Tuner(pool);
+        long start = System.nanoTime();
+        tuner.load(file);
+        System.out.printf("loaded %,d positions (%,d weights used) in %.1f s%n", tuner.size, tuner.entryCount,
+                (System.nanoTime() - start) / 1e9);
+        if(tuner.size == 0) {
+            throw new IllegalArgumentException("no positions in " + file);
+        }
+
+        double[] weights = currentWeights();
+        if(k == 0) {
+            k = tuner.fitK(weights);
+        }
+        double before = tuner.error(weights, k);
+        System.out.printf("K = %.3f, error %.6f%n", k, before);
+
+        start = System.nanoTime();
+        tuner.tune(weights, k, epochs, rate);
+        round(weights);
+        System.out.printf("error %.6f -> %.6f after %d epochs in %.1f s%n", before, tuner.error(weights, k), epochs,
+                (System.nanoTime() - start) / 1e9);
+
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(out)))) {
+            write(weights, writer);
+        }
+        System.out.println("tuned weights written to " + out);
+        pool.shutdown();
+    }
+
+    /**
+     * Loads the positions of a data file, a batch of lines at a time. The lines of a batch are split
+     * across the pool, and the parts added in order.
+     *
+     * @param file  path of the data.
+     * @throws      IOException if the data can't be read.
+     */
+    public void load(String file) throws IOException {
+        ThreadLocal<Evaluation> evaluations = ThreadLocal.withInitial(Evaluation::new);
+        int parts = pool.getParallelism();
+
+        try(BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+            List<String> lines = new ArrayList<>(BATCH);
+            boolean done = false;
+            while(!done) {
+                lines.clear();
+                String line;
+                while(lines.size() < BATCH && (line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if(!line.isEmpty() && !line.startsWith("#")) {
+                        lines.add(line);
+                    }
+                }
+                done = lines.size() < BATCH;
+
+                List<ForkJoinTask<Tuner>> tasks = new ArrayList<>();
+                for(int p = 0; p < parts; p++) {
+                    List<String> part = lines.subList(lines.size() * p / parts, lines.size() * (p + 1) / parts);
+                    tasks.add(pool.submit(() -> {
+                        Tuner loaded = new Tuner(pool);
+                        int[] counts = new int[TERMS];
+                        for(String text : part) {
+                            loaded.add(text, evaluations.get(), counts);
+                        }
+                        return loaded;
+                    }));
+                }
+                for(ForkJoinTask<Tuner> task : tasks) {
+                    append(task.join());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a line of the data file.
+     *
+     * @param line          position and result.
+     * @param evaluation    evaluation for the terms that aren't tuned.
+     * @param counts        scratch space of <code>TERMS</code> zeros, left as zeros.
+     * @throws              IllegalArgumentException if the line has no valid position or result.
+     */
+    private void add(String line, Evaluation evaluation, int[] counts) {
+        Position pos = Position.fromFen(line);
+        int result = parseResult(line);
+
+        int mg = 0;
+        int eg = 0;
+        if(size == results.length) {
+            results = Arrays.copyOf(results, size * 2);
+            phases = Arrays.copyOf(phases, size * 2);
+            fixed = Arrays.copyOf(fixed, size * 2);
+            starts = Arrays.copyOf(starts, size * 2 + 1);
+        }
+        starts[size] = entryCount;
+
+        for(int color = Position.WHITE; color <= Position.BLACK; color++) {
+            int sign = color == Position.WHITE ? 1 : -1;
+            long available = Evaluation.mobilityArea(pos, color);
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                for(long bb = pos.pieces[Position.piece(color, type)]; bb != 0; bb &= bb - 1) {
+                    int sq = Long.numberOfTrailingZeros(bb);
+                    // the tables are drawn with a8 first, like in Evaluation.rebuildTables
+                    int index = color == Position.WHITE ? sq ^ 56 : sq;
+                    if(type != Position.KING) {
+                        counts[type] += sign;
+                        mg += sign * Evaluation.MATERIAL_MG[type];
+                        eg += sign * Evaluation.MATERIAL_EG[type];
+                    }
+                    counts[PST + type * 64 + index] += sign;
+                    mg += sign * Evaluation.PST_MG[type][index];
+                    eg += sign * Evaluation.PST_EG[type][index];
+
+                    if(type != Position.PAWN && type != Position.KING) {
+                        int mobility = Long.bitCount(Evaluation.pieceAttacks(type, sq, pos.occupied) & available);
+                        counts[MOBILITY + type - 1] += sign * mobility;
+                        mg += sign * mobility * Evaluation.MOBILITY_MG[type];
+                        eg += sign * mobility * Evaluation.MOBILITY_EG[type];
+                    }
+                }
+            }
+        }
+
+        for(int term = 0; term < TERMS; term++) {
+            if(counts[term] != 0) {
+                if(entryCount == entries.length) {
+                    entries = Arrays.copyOf(entries, entryCount * 2);
+                }
+                entries[entryCount++] = term << 16 | (counts[term] & 0xFFFF);
+                counts[term] = 0;
+            }
+        }
+
+        // whatever the tuned weights don't explain comes from the terms that stay as they are
+        int score = evaluation.evaluate(pos);
+        int white = pos.sideToMove == Position.WHITE ? score : -score;
+        int rest = white - Evaluation.taper(mg, eg, pos.phase);
+
+        results[size] = (byte) result;
+        phases[size] = (byte) Math.min(pos.phase, Evaluation.TOTAL_PHASE);
+        fixed[size] = (short) Math.max(Math.min(rest, Short.MAX_VALUE), Short.MIN_VALUE);
+        size++;
+        starts[size] = entryCount;
+    }
+
+    /**
+     * Adds the positions loaded by another tuner after the ones of this one.
+     *
+     * @param other tuner holding the positions.
+     */
+    private void append(Tuner other) {
+        int newSize = size + other.size;
+        if(newSize > results.length) {
+            int capacity = Math.max(newSize, results.length * 2);
+            results = Arrays.copyOf(results, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            fixed = Arrays.copyOf(fixed, capacity);
+            starts = Arrays.copyOf(starts, capacity + 1);
+        }
+        if(entryCount + other.entryCount > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entryCount + other.entryCount, entries.length * 2));
+        }
+
+        System.arraycopy(other.results, 0, results, size, other.size);
+        System.arraycopy(other.phases, 0, phases, size, other.size);
+        System.arraycopy(other.fixed, 0, fixed, size, other.size);
+        System.arraycopy(other.entries, 0, entries, entryCount, other.entryCount);
+        for(int i = 1; i <= other.size; i++) {
+            starts[size + i] = entryCount + other.starts[i];
+        }
+        size = newSize;
+        entryCount += other.entryCount;
+    }
+
+    /**
+     * Reads the game result at the end of a line.
+     *
+     * @param line  position and result.
+     * @return      the result for white in halves: 0 for a loss, 1 for a draw, 2 for a win.
+     * @throws      IllegalArgumentException if the line doesn't end with a result.
+     */
+    static int parseResult(String line) {
+        String[] tokens = line.replaceAll("[\\[\\]\";|]", " ").trim().split("\\s+");
+        String last = tokens[tokens.length - 1];
+        switch(last) {
+            case "1-0": return 2;
+            case "0-1": return 0;
+            case "1/2-1/2": return 1;
+            default:
+                try {
+                    double score = Double.parseDouble(last);
+                    if(score == 0 || score == 0.5 || score == 1) {
+                        return (int) (score * 2);
+                    }
+                } catch(NumberFormatException e) {
+                    // reported below
+                }
+                throw new IllegalArgumentException("no game result: " + line);
+        }
+    }
+
+    /**
+     * Evaluates a loaded position with a set of weights.
+     *
+     * @param i         index of the position.
+     * @param weights   middlegame and endgame value of each weight, interleaved.
+     * @return          score in centipawns for white.
+     */
+    private double evaluate(int i, double[] weights) {
+        double mg = 0;
+        double eg = 0;
+        for(int e = starts[i]; e < starts[i + 1]; e++) {
+            int term = entries[e] >>> 16;
+            int count = (short) entries[e];
+            mg += count * weights[2 * term];
+            eg += count * weights[2 * term + 1];
+        }
+        int phase = phases[i];
+        return (mg * phase + eg * (Evaluation.TOTAL_PHASE - phase)) / Evaluation.TOTAL_PHASE + fixed[i];
+    }
+
+    /**
+     * @param k     scaling constant.
+     * @param score score in centipawns.
+     * @return      expected result of the score, from 0 to 1.
+     */
+    private static double sigmoid(double k, double score) {
+        return 1 / (1 + Math.pow(10, -k * score / 400));
+    }
+
+    /**
+     * Works out the mean squared error of the predicted results, with the positions split across the pool.
+     *
+     * @param weights   middlegame and endgame value of each weight, interleaved.
+     * @param k         scaling constant.
+     * @return          the error.
+     */
+    public double error(double[] weights, double k) {
+        double sum = 0;
+        for(double part : forEachPart((from, to) -> {
+            double error = 0;
+            for(int i = from; i < to; i++) {
+                double diff = results[i] / 2.0 - sigmoid(k, evaluate(i, weights));
+                error += diff * diff;
+            }
+            return new double[] {error};
+        }, 1)) {
+            sum += part;
+        }
+        return sum / size;
+    }
+
+    /**
+     * Works out the gradient of the error, with the positions split across the pool. Each part sums
+     * its own gradient, and the sums are added up.
+     *
+     * @param weights   middlegame and endgame value of each weight, interleaved.
+     * @param k         scaling constant.
+     * @return          the gradient, laid out like <code>weights</code>.
+     */
+    public double[] gradient(double[] weights, double k) {
+        double[] gradient = forEachPart((from, to) -> {
+            double[] sum = new double[2 * TERMS];
+            for(int i = from; i < to; i++) {
+                double predicted = sigmoid(k, evaluate(i, weights));
+                double slope = (predicted - results[i] / 2.0) * predicted * (1 - predicted);
+                double mgSlope = slope * phases[i];
+                double egSlope = slope * (Evaluation.TOTAL_PHASE - phases[i]);
+                for(int e = starts[i]; e < starts[i + 1]; e++) {
+                    int term = entries[e] >>> 16;
+                    int count = (short) entries[e];
+                    sum[2 * term] += mgSlope * count;
+                    sum[2 * term + 1] += egSlope * count;
+                }
+            }
+            return sum;
+        }, 2 * TERMS);
+
+        double scale = 2 * k * Math.log(10) / 400 / Evaluation.TOTAL_PHASE / size;
+        for(int j = 0; j < gradient.length; j++) {
+            gradient[j] *= scale;
+        }
+        return gradient;
+    }
+
+    /**
+     * Splits the positions into one part per thread of the pool and adds up what each part returns.
+     *
+     * @param work      work on the positions from one index up to another.
+     * @param length    length of the arrays the work returns.
+     * @return          the sums of the returned arrays.
+     */
+    private double[] forEachPart(Part work, int length) {
+        int parts = pool.getParallelism();
+        List<ForkJoinTask<double[]>> tasks = new ArrayList<>();
+        for(int p = 0; p < parts; p++) {
+            int from = (int) ((long) size * p / parts);
+            int to = (int) ((long) size * (p + 1) / parts);
+            tasks.add(pool.submit(() -> work.run(from, to)));
+        }
+
+        double[] total = new double[length];
+        for(ForkJoinTask<double[]> task : tasks) {
+            double[] part = task.join();
+            for(int j = 0; j < length; j++) {
+                total[j] += part[j];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Work on a range of the loaded positions.
+     */
+    private interface Part {
+
+        /**
+         * @param from  index of the first position.
+         * @param to    index after the last position.
+         * @return      the result for the range.
+         */
+        double[] run(int from, int to);
+    }
+
+    /**
+     * Finds the scaling constant that best fits the results to the current weights, by narrowing
+     * down a range around its minimum error.
+     *
+     * @param weights   middlegame and endgame value of each weight, interleaved.
+     * @return          the constant.
+     */
+    public double fitK(double[] weights) {
+        double low = 0.1;
+        double high = 3;
+        while(high - low > 0.001) {
+            double a = low + (high - low) / 3;
+            double b = high - (high - low) / 3;
+            if(error(weights, a) < error(weights, b)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Runs gradient descent with Adam steps, which adapts the step size of each weight to how
+     * steady its gradient is, so rare weights such as a queen on a8 still move.
+     *
+     * @param weights   middlegame and endgame value of each weight, interleaved, tuned in place.
+     * @param k         scaling constant.
+     * @param epochs    number of steps, each over all positions.
+     * @param rate      largest step of a weight, in centipawns.
+     */
+    public void tune(double[] weights, double k, int epochs, double rate) {
+        double beta1 = 0.9;
+        double beta2 = 0.999;
+        double[] momentum = new double[weights.length];
+        double[] velocity = new double[weights.length];
+
+        for(int epoch = 1; epoch <= epochs; epoch++) {
+            double[] gradient = gradient(weights, k);
+            double correction1 = 1 - Math.pow(beta1, epoch);
+            double correction2 = 1 - Math.pow(beta2, epoch);
+            for(int j = 0; j < weights.length; j++) {
+                momentum[j] = beta1 * momentum[j] + (1 - beta1) * gradient[j];
+                velocity[j] = beta2 * velocity[j] + (1 - beta2) * gradient[j] * gradient[j];
+                weights[j] -= rate * (momentum[j] / correction1) / (Math.sqrt(velocity[j] / correction2) + 1e-12);
+            }
+            if(epoch % 50 == 0 || epoch == epochs) {
+                System.out.printf("epoch %5d  error %.6f%n", epoch, error(weights, k));
+            }
+        }
+    }
+
+    /**
+     * @return  the weights <code>Evaluation</code> uses now, laid out for tuning.
+     */
+    private static double[] currentWeights() {
+        double[] weights = new double[2 * TERMS];
+        for(int type = Position.PAWN; type < Position.KING; type++) {
+            weights[2 * type] = Evaluation.MATERIAL_MG[type];
+            weights[2 * type + 1] = Evaluation.MATERIAL_EG[type];
+        }
+        for(int type = Position.PAWN; type <= Position.KING; type++) {
+            for(int index = 0; index < 64; index++) {
+                weights[2 * (PST + type * 64 + index)] = Evaluation.PST_MG[type][index];
+                weights[2 * (PST + type * 64 + index) + 1] = Evaluation.PST_EG[type][index];
+            }
+        }
+        for(int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+            weights[2 * (MOBILITY + type - 1)] = Evaluation.MOBILITY_MG[type];
+            weights[2 * (MOBILITY + type - 1) + 1] = Evaluation.MOBILITY_EG[type];
+        }
+        return weights;
+    }
+
+    /**
+     * Rounds the weights to whole centipawns, as <code>Evaluation</code> stores them.
+     *
+     * @param weights   the weights, rounded in place.
+     */
+    private static void round(double[] weights) {
+        for(int j = 0; j < weights.length; j++) {
+            weights[j] = Math.round(weights[j]);
+        }
+    }
+
+    /**
+     * Writes the weights as the declarations of <code>Evaluation</code>.
+     *
+     * @param weights   middlegame and endgame value of each weight, interleaved.
+     * @param out       where the declarations are written.
+     */
+    private static void write(double[] weights, PrintWriter out) {
+        for(int phase = 0; phase < 2; phase++) {
+            StringBuilder material = new StringBuilder();
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                material.append(type == 0 ? "" : ", ").append(type < Position.KING ? (long) weights[2 * type + phase] : 0);
+            }
+            out.println("    public static final int[] MATERIAL_" + (phase == 0 ? "MG" : "EG") + " = {" + material + "};");
+            out.println();
+        }
+        for(int phase = 0; phase < 2; phase++) {
+            StringBuilder mobility = new StringBuilder();
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                boolean mobile = type != Position.PAWN && type != Position.KING;
+                mobility.append(type == 0 ? "" : ", ").append(mobile ? (long) weights[2 * (MOBILITY + type - 1) + phase] : 0);
+            }
+            out.println("    public static final int[] MOBILITY_" + (phase == 0 ? "MG" : "EG") + " = {" + mobility + "};");
+            out.println();
+        }
+
+        for(int phase = 0; phase < 2; phase++) {
+            out.println("    public static final int[][] PST_" + (phase == 0 ? "MG" : "EG") + " = {");
+            for(int type = Position.PAWN; type <= Position.KING; type++) {
+                out.println("        {");
+                for(int row = 0; row < 8; row++) {
+                    StringBuilder line = new StringBuilder("            ");
+                    for(int column = 0; column < 8; column++) {
+                        long value = (long) weights[2 * (PST + type * 64 + row * 8 + column) + phase];
+                        line.append(String.format("%3d", value)).append(row == 7 && column == 7 ? "" : column == 7 ? "," : ", ");
+                    }
+                    out.println(line);
+                }
+                out.println(type == Position.KING ? "        }" : "        },");
+            }
+            out.println("    };");
+            out.println();
+        }
+    }
+}